@@ -0,0 +1,99 @@
+package ttsbot.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.cache.AudioCache;
+import ttsbot.cache.AudioCacheKey;
+import ttsbot.cache.DiskAudioStore;
+import ttsbot.cache.MemoryAudioCache;
+import ttsbot.speech.LookAheadSynthesizer;
+import ttsbot.speech.SpeechRequest;
+
+/**
+ * Audio cache lookups: key hashing, memory hits, disk hits and misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioCacheBenchmark {
+	private static final int CLIPS = 64;
+
+	private Path dir;
+	private AudioCache memoryCache;
+	private DiskAudioStore disk;
+	private final SpeechRequest[] requests = new SpeechRequest[CLIPS];
+	private final AudioCacheKey[] keys = new AudioCacheKey[CLIPS];
+	private AudioCacheKey missingKey;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		final StubTTSProvider provider = new StubTTSProvider("stub", 2000);
+		final PcmAudio clip = provider.synthesize("", null, null);
+
+		dir = Files.createTempDirectory("audio-cache-bench");
+		disk = new DiskAudioStore(dir, 64L * 1024 * 1024, 16 * 1024 * 1024);
+		memoryCache = new AudioCache(new MemoryAudioCache(64L * 1024 * 1024), null);
+		for (int i = 0; i < CLIPS; i++) {
+			requests[i] = new SpeechRequest(provider, "viewer", "chat message number " + i);
+			keys[i] = LookAheadSynthesizer.cacheKey(requests[i]);
+			memoryCache.put(keys[i], clip);
+			disk.put(keys[i], clip);
+		}
+		missingKey = AudioCacheKey.of("stub", "stub-voice", "de-DE", null, 0, 0, "never synthesized");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		disk.flush();
+		try (Stream<Path> files = Files.list(dir)) {
+			files.forEach(p -> p.toFile().delete());
+		}
+		Files.deleteIfExists(dir);
+	}
+
+	private int nextIndex() {
+		next = (next + 1) % CLIPS;
+		return next;
+	}
+
+	@Benchmark
+	public AudioCacheKey cacheKey() {
+		return LookAheadSynthesizer.cacheKey(requests[nextIndex()]);
+	}
+
+	@Benchmark
+	public PcmAudio memoryHit() {
+		return memoryCache.get(keys[nextIndex()]);
+	}
+
+	@Benchmark
+	public PcmAudio memoryMiss() {
+		return memoryCache.get(missingKey);
+	}
+
+	@Benchmark
+	public PcmAudio diskHit() {
+		return disk.get(keys[nextIndex()]);
+	}
+}
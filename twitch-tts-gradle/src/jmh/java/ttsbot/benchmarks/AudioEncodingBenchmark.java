@@ -0,0 +1,186 @@
+package ttsbot.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.cloud.texttospeech.v1.AudioEncoding;
+import com.google.protobuf.ByteString;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.loadtest.FakeBehavior;
+import ttsbot.loadtest.FakeGoogleTextToSpeech;
+import ttsbot.tts.GoogleTTSProvider;
+
+/**
+ * Compares the audio encodings of google synthesis: bytes on the wire, decode
+ * cpu and the time until the first chunk is ready for the audio engine when the
+ * response comes over a slow link.<br>
+ * By default only LINEAR16 runs, recorded offline through the
+ * {@link FakeGoogleTextToSpeech}. 'gradle jmh -PrecordGoogle' records the
+ * responses once from google (needs google-credentials.json) and compares
+ * LINEAR16 with MP3. The samples are kept in build/jmh-samples.<br>
+ * The link is simulated by reading the response at the given rate, like the
+ * unary gRPC call the whole response arrives before decoding starts.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioEncodingBenchmark {
+	private static final Path SAMPLES = Paths.get("build", "jmh-samples");
+	// bytes the audio engine reads per chunk
+	private static final int FIRST_CHUNK = 4 * 1024;
+	// set by 'gradle jmh -PrecordGoogle', forked vms get the same arguments
+	private static final String RECORD_GOOGLE = "jmh.recordGoogle";
+	// about the length google speaks the text
+	private static final int FAKE_AUDIO_MILLIS = 6000;
+
+	/** the fake answers LINEAR16 only, compressed encodings need -PrecordGoogle */
+	@Param({ "LINEAR16" })
+	public String encoding;
+
+	/** link rate in kbit/s, e.g. a congested upload of the streaming pc */
+	@Param({ "1000", "10000" })
+	public int linkKbps;
+
+	@Param({ "Hallo zusammen, willkommen im Stream. Heute spielen wir noch eine Runde und dann ist Schluss." })
+	public String text;
+
+	private byte[] response;
+	private final byte[] buffer = new byte[FIRST_CHUNK];
+
+	@Setup
+	public void setup() throws Exception {
+		final boolean live = Boolean.getBoolean(RECORD_GOOGLE);
+		final Path sample = SAMPLES.resolve(
+				(live ? "google-" : "fake-") + Integer.toHexString(text.hashCode()) + "-" + encoding);
+		if (!Files.isRegularFile(sample)) {
+			final ByteString audio = live ? recordGoogle(AudioEncoding.valueOf(encoding))
+					: recordFake(AudioEncoding.valueOf(encoding));
+			Files.createDirectories(SAMPLES);
+			Files.write(sample, audio.toByteArray());
+		}
+		response = Files.readAllBytes(sample);
+	}
+
+	private ByteString recordGoogle(AudioEncoding audioEncoding) throws Exception {
+		final GoogleTTSProvider google = new GoogleTTSProvider();
+		try {
+			return google.synthesizeRaw(text, "de-DE", null, audioEncoding);
+		} finally {
+			google.shutdown();
+		}
+	}
+
+	/**
+	 * Same provider code path as the live recording, over in-process gRPC.
+	 */
+	private ByteString recordFake(AudioEncoding audioEncoding) throws Exception {
+		if (audioEncoding != AudioEncoding.LINEAR16) {
+			throw new IllegalStateException(audioEncoding + " needs a recording from google, use -PrecordGoogle");
+		}
+		final FakeGoogleTextToSpeech fake = new FakeGoogleTextToSpeech(new FakeBehavior(0, 0, 0, FAKE_AUDIO_MILLIS))
+				.start();
+		final GoogleTTSProvider google = new GoogleTTSProvider(fake.getChannelProvider());
+		try {
+			return google.synthesizeRaw(text, "de-DE", null, audioEncoding);
+		} finally {
+			google.shutdown();
+			fake.stop();
+		}
+	}
+
+	/**
+	 * Decoding the whole response, as for the look-ahead synthesis and the audio
+	 * cache.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public PcmAudio decode() throws Exception {
+		return PcmAudio.decode(new ByteArrayInputStream(response));
+	}
+
+	/**
+	 * Transfer over the link plus decoding the first chunk, played while the rest
+	 * is decoded.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int timeToFirstSound() throws Exception {
+		final byte[] received;
+		try (InputStream link = new ThrottledInputStream(new ByteArrayInputStream(response), linkKbps)) {
+			received = readAll(link);
+		}
+		try (AudioInputStream ais = PcmAudio.openPcm(new ByteArrayInputStream(received))) {
+			int total = 0;
+			int read;
+			while (total < buffer.length && (read = ais.read(buffer, total, buffer.length - total)) > 0) {
+				total += read;
+			}
+			return total;
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		final byte[] data = new byte[in.available()];
+		int total = 0;
+		int read;
+		while (total < data.length && (read = in.read(data, total, data.length - total)) > 0) {
+			total += read;
+		}
+		return data;
+	}
+
+	/**
+	 * Delivers the bytes not faster than the given rate.
+	 */
+	static class ThrottledInputStream extends FilterInputStream {
+		// one tcp segment per read
+		private static final int SEGMENT = 1460;
+		private final double nanosPerByte;
+		private final long start = System.nanoTime();
+		private long delivered;
+
+		ThrottledInputStream(InputStream in, int kbps) {
+			super(in);
+			this.nanosPerByte = TimeUnit.SECONDS.toNanos(1) / (kbps * 1000 / 8.0);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int read = super.read(b, off, Math.min(len, SEGMENT));
+			if (read > 0) {
+				delivered += read;
+				final long due = start + (long) (delivered * nanosPerByte);
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package ttsbot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.tts.MaryEngine;
+import ttsbot.tts.VoiceInfo;
+
+/**
+ * Local MaryTTS synthesis throughput per bundled voice, runs offline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MarySynthesisBenchmark {
+	@Param({ "bits1-hsmm", "bits3-hsmm", "dfki-pavoque-neutral-hsmm", "cmu-rms-hsmm" })
+	public String voice;
+
+	@Param({ "Hallo zusammen, willkommen im Stream." })
+	public String text;
+
+	private MaryEngine engine;
+	private String lang;
+
+	@Setup
+	public void setup() throws Exception {
+		for (VoiceInfo v : MaryEngine.listVoices()) {
+			if (v.getName().equals(voice)) {
+				lang = v.getLanguageCodes().get(0);
+			}
+		}
+		if (lang == null) {
+			throw new IllegalStateException("voice not installed: " + voice);
+		}
+		engine = new MaryEngine();
+		// start the engine outside of the measurement
+		engine.synthesize(lang, voice, text);
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.shutdown();
+	}
+
+	@Benchmark
+	public PcmAudio synthesize() throws Exception {
+		return engine.synthesize(lang, voice, text);
+	}
+}
@@ -0,0 +1,142 @@
+package ttsbot.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+
+import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.tts.TTSProvider;
+import ttsbot.tts.VoiceInfo;
+
+/**
+ * Offline provider for benchmarks: synthesizes silence of a fixed length and
+ * plays nothing.
+ */
+public class StubTTSProvider implements TTSProvider {
+	public static final AudioFormat FORMAT = new AudioFormat(24000, 16, 1, true, false);
+
+	private final String name;
+	private final byte[] silence;
+	private float volume = DEFAULT_VOLUME;
+	private String lang = "de-DE";
+	private String voice = "stub-voice";
+
+	/**
+	 * @param clipMillis length of every synthesized clip, 0 for a provider which
+	 *                   only supports synthesize and play in one go
+	 */
+	public StubTTSProvider(String name, int clipMillis) {
+		this.name = name;
+		this.silence = new byte[(int) (FORMAT.getFrameRate() * clipMillis / 1000) * FORMAT.getFrameSize()];
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	public void setDefault() {
+	}
+
+	@Override
+	public boolean isSupported(TTSFeature f) {
+		return false;
+	}
+
+	@Override
+	public float getVolume() {
+		return volume;
+	}
+
+	@Override
+	public boolean setVolume(float value) {
+		volume = value;
+		return true;
+	}
+
+	@Override
+	public String getLang() {
+		return lang;
+	}
+
+	@Override
+	public boolean setLang(String value) {
+		lang = value;
+		return true;
+	}
+
+	@Override
+	public Collection<String> getKnownLanguages() {
+		return Arrays.asList("de-DE", "en-US");
+	}
+
+	@Override
+	public boolean setGender(String value) {
+		return false;
+	}
+
+	@Override
+	public String getGender() {
+		return null;
+	}
+
+	@Override
+	public void syntesizeAndPlay(String value) {
+	}
+
+	@Override
+	public void syntesizeAndPlay(String text, String langOverride, SsmlVoiceGender genderOverride) {
+	}
+
+	@Override
+	public PcmAudio synthesize(String text, String langOverride, SsmlVoiceGender genderOverride) {
+		return silence.length == 0 ? null : new PcmAudio(FORMAT, silence);
+	}
+
+	@Override
+	public String translate(String src, String dst, String txt) {
+		return txt;
+	}
+
+	@Override
+	public boolean isKnownLanguage(String lang) {
+		return getKnownLanguages().contains(lang);
+	}
+
+	@Override
+	public boolean isKnownVoice(String voice) {
+		return this.voice.equals(voice);
+	}
+
+	@Override
+	public Collection<String> listSupportedVoices(String lang) {
+		return Collections.singletonList(voice);
+	}
+
+	@Override
+	public List<VoiceInfo> loadVoices() {
+		return Collections.singletonList(new VoiceInfo(voice, new ArrayList<>(getKnownLanguages()), null));
+	}
+
+	@Override
+	public String getVoice() {
+		return voice;
+	}
+
+	@Override
+	public void setVoice(String item) {
+		voice = item;
+	}
+}
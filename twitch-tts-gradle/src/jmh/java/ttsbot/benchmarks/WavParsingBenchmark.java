@@ -0,0 +1,128 @@
+package ttsbot.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+
+import ttsbot.audio.AudioEngine;
+import ttsbot.audio.PcmAudio;
+import ttsbot.audio.PcmConverter;
+import ttsbot.audio.WavBuffer;
+import ttsbot.util.Utils;
+
+/**
+ * Parsing the .wav returned by Google LINEAR16 synthesis, as done by
+ * {@link Utils#playWAV(ByteString, float)} before playback.<br>
+ * Java sound parsing and conversion against {@link WavBuffer}, which reads the
+ * response buffers in place. 'gradle jmh' runs with the gc profiler, see
+ * gc.alloc.rate.norm for the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavParsingBenchmark {
+	@Param({ "1000", "5000" })
+	public int clipMillis;
+
+	private ByteString wav;
+	private final byte[] buffer = new byte[8 * 1024];
+
+	@Setup
+	public void setup() throws Exception {
+		final PcmAudio pcm = new StubTTSProvider("stub", clipMillis).synthesize("", null, null);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(pcm.getData()), pcm.getFormat(),
+				pcm.getData().length / pcm.getFormat().getFrameSize())) {
+			AudioSystem.write(ais, AudioFileFormat.Type.WAVE, out);
+		}
+		wav = ByteString.copyFrom(out.toByteArray());
+	}
+
+	/**
+	 * Header parsing and streaming through the samples.
+	 */
+	@Benchmark
+	public long openAndDrain() throws Exception {
+		long total = 0;
+		try (AudioInputStream ais = Utils.openWAV(wav)) {
+			int read;
+			while ((read = ais.read(buffer)) > 0) {
+				total += read;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Header parsing and copying the samples into memory, as for the look-ahead
+	 * synthesis and the audio cache.
+	 */
+	@Benchmark
+	public PcmAudio decodeToPcm() throws Exception {
+		try (AudioInputStream ais = Utils.openWAV(wav)) {
+			return PcmAudio.fromStream(ais);
+		}
+	}
+
+	/**
+	 * Same as {@link #decodeToPcm()}, header parsed in place and the samples
+	 * copied once.
+	 */
+	@Benchmark
+	public PcmAudio bufferToPcm() {
+		return WavBuffer.parse(wav.asReadOnlyByteBufferList()).toPcmAudio();
+	}
+
+	/**
+	 * Conversion to the output format by java sound, as the audio engine does for
+	 * streams.
+	 */
+	@Benchmark
+	public long convertToOutput() throws Exception {
+		long total = 0;
+		try (AudioInputStream ais = AudioSystem.getAudioInputStream(AudioEngine.OUTPUT_FORMAT, Utils.openWAV(wav))) {
+			int read;
+			while ((read = ais.read(buffer)) > 0) {
+				total += read;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Conversion to the output format straight from the response buffers, as the
+	 * audio engine does for {@link WavBuffer}.
+	 */
+	@Benchmark
+	public long bufferConvertToOutput() {
+		final PcmConverter converter = new PcmConverter(WavBuffer.parse(wav.asReadOnlyByteBufferList()),
+				AudioEngine.OUTPUT_FORMAT);
+		long total = 0;
+		int read;
+		while ((read = converter.read(buffer, 0, buffer.length)) > 0) {
+			total += read;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,98 @@
+package ttsbot.twitch;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ttsbot.benchmarks.StubTTSProvider;
+
+/**
+ * Chat message parsing and command dispatch, the work done for every chat
+ * line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParsingBenchmark {
+	/** typical chat: mostly plain messages, some commands */
+	private static final String[] MESSAGES = { //
+			"hello chat, how is everyone doing today?", //
+			"!s guten morgen zusammen", //
+			"LUL", //
+			"!speak this is a longer message which should be read out loud by the bot", //
+			"!vol", //
+			"!lang", //
+			"!unknowncommand with some text", //
+			"gg wp", //
+	};
+
+	private TwitchBot bot;
+	private CommandDispatcher dispatcher;
+	private int next;
+
+	@Setup
+	public void setup() {
+		dispatcher = new CommandDispatcher();
+		for (String command : new String[] { "!vol", "!lang", "!gender", "!voice", "!tts", "!speak", "!s" }) {
+			dispatcher.register(command, (username, isMod, cmd, args) -> {
+			});
+		}
+		bot = new TwitchBot(Collections.singletonList(new StubTTSProvider("stub", 0))) {
+			@Override
+			protected void sendMsg(String msg) {
+				// not connected
+			}
+		};
+	}
+
+	@TearDown
+	public void tearDown() {
+		bot.getSpeechPipeline().shutdown();
+	}
+
+	private String nextMessage() {
+		next = (next + 1) % MESSAGES.length;
+		return MESSAGES[next];
+	}
+
+	/**
+	 * Rejecting plain chat, done for every message.
+	 */
+	@Benchmark
+	public boolean isCommand() {
+		return CommandDispatcher.isCommand(nextMessage());
+	}
+
+	/**
+	 * Trie lookup and argument extraction with no-op handlers.
+	 */
+	@Benchmark
+	public boolean dispatch() {
+		return dispatcher.dispatch("viewer", false, nextMessage());
+	}
+
+	/**
+	 * Full dispatch including the bot's handlers.
+	 */
+	@Benchmark
+	public void parseMessage(Blackhole bh) {
+		final String message = nextMessage();
+		bot.parseMessage("viewer", false, "#channel", message);
+		bh.consume(message);
+	}
+}
@@ -0,0 +1,73 @@
+package ttsbot.loadtest;
+
+/**
+ * One recorded chat message.<br>
+ * Read from 'user: message' lines or from raw Twitch IRC lines
+ * ('@tags :user!user@user.tmi.twitch.tv PRIVMSG #channel :message'), whose
+ * tags are kept for the replay.
+ */
+public class ChatLine {
+	private final String user;
+	private final String message;
+	private final String tags;
+
+	public ChatLine(String user, String message, String tags) {
+		this.user = user;
+		this.message = message;
+		this.tags = tags;
+	}
+
+	/**
+	 * @return null for comments and lines which are no chat message
+	 */
+	public static ChatLine parse(String line) {
+		if (line.isEmpty() || line.startsWith("#")) {
+			return null;
+		}
+		if (line.startsWith("@")) {
+			final int space = line.indexOf(' ');
+			final int privmsg = line.indexOf(" PRIVMSG #");
+			if (space < 0 || privmsg < 0 || line.charAt(space + 1) != ':') {
+				return null;
+			}
+			final int bang = line.indexOf('!', space);
+			final int text = line.indexOf(" :", privmsg);
+			if (bang < 0 || text < 0) {
+				return null;
+			}
+			return new ChatLine(line.substring(space + 2, bang).toLowerCase(), line.substring(text + 2),
+					line.substring(1, space));
+		}
+		final int colon = line.indexOf(": ");
+		if (colon <= 0) {
+			return null;
+		}
+		final String user = line.substring(0, colon).trim().toLowerCase();
+		return new ChatLine(user, line.substring(colon + 2).trim(),
+				"badges=;color=;display-name=" + user + ";emotes=;mod=0;subscriber=0;turbo=0;user-type=");
+	}
+
+	/**
+	 * Login of the sender, lower case.
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * The IRC line as Twitch sends it to a client of the channel.
+	 */
+	public String toPrivmsg(String channel) {
+		return "@" + tags + ";tmi-sent-ts=" + System.currentTimeMillis() + " :" + user + "!" + user + "@" + user
+				+ ".tmi.twitch.tv PRIVMSG #" + channel + " :" + message;
+	}
+
+	@Override
+	public String toString() {
+		return user + ": " + message;
+	}
+}
@@ -0,0 +1,146 @@
+package ttsbot.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ttsbot.tts.AmazonPollyTTSProvider;
+import ttsbot.util.Utils;
+
+/**
+ * Local HTTP stand-in for Amazon Polly and Amazon Translate.<br>
+ * Implements just enough of the wire protocols for
+ * {@link AmazonPollyTTSProvider}: DescribeVoices and SynthesizeSpeech (pcm),
+ * and TranslateText, which returns the text with the target language as
+ * prefix. Signatures are not checked.
+ */
+public class FakeAwsServer {
+	/** any credentials work */
+	public static final AWSCredentials CREDENTIALS = new BasicAWSCredentials("fake", "fake");
+
+	private static final int SAMPLE_RATE = 16000;
+	private static final Pattern TEXT = Pattern.compile("\"Text\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+	private static final Pattern TARGET = Pattern.compile("\"TargetLanguageCode\"\\s*:\\s*\"([^\"]*)\"");
+	private static final Pattern SOURCE = Pattern.compile("\"SourceLanguageCode\"\\s*:\\s*\"([^\"]*)\"");
+
+	private static final String VOICES = "{\"Voices\":[" //
+			+ "{\"Gender\":\"Female\",\"Id\":\"Marlene\",\"LanguageCode\":\"de-DE\",\"LanguageName\":\"German\",\"Name\":\"Marlene\"}," //
+			+ "{\"Gender\":\"Male\",\"Id\":\"Hans\",\"LanguageCode\":\"de-DE\",\"LanguageName\":\"German\",\"Name\":\"Hans\"}," //
+			+ "{\"Gender\":\"Female\",\"Id\":\"Joanna\",\"LanguageCode\":\"en-US\",\"LanguageName\":\"US English\",\"Name\":\"Joanna\"}" //
+			+ "]}";
+
+	private final FakeBehavior behavior;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * @param threads concurrent requests the server handles
+	 */
+	public FakeAwsServer(FakeBehavior behavior, int threads) throws IOException {
+		this.behavior = behavior;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.executor = Executors.newFixedThreadPool(threads, Utils.namedThreadFactory("fake-aws"));
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	public FakeAwsServer start() {
+		server.start();
+		return this;
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the endpoint for
+	 * {@link AmazonPollyTTSProvider#AmazonPollyTTSProvider(String, AWSCredentials)}.
+	 */
+	public String getEndpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public FakeBehavior getBehavior() {
+		return behavior;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			final String body = read(exchange.getRequestBody());
+			final String path = exchange.getRequestURI().getPath();
+			final String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+
+			if ("GET".equals(exchange.getRequestMethod()) && path.startsWith("/v1/voices")) {
+				send(exchange, 200, "application/json", VOICES.getBytes(StandardCharsets.UTF_8));
+			} else if (path.startsWith("/v1/speech")) {
+				if (!behavior.call()) {
+					sendError(exchange, 503, "ServiceFailureException");
+					return;
+				}
+				send(exchange, 200, "audio/pcm", behavior.pcm(SAMPLE_RATE));
+			} else if (target != null && target.endsWith(".TranslateText")) {
+				if (!behavior.call()) {
+					sendError(exchange, 503, "ServiceUnavailableException");
+					return;
+				}
+				final String dst = find(TARGET, body);
+				final String json = "{\"TranslatedText\":\"" + dst + ": " + find(TEXT, body)
+						+ "\",\"SourceLanguageCode\":\"" + find(SOURCE, body) + "\",\"TargetLanguageCode\":\"" + dst
+						+ "\"}";
+				send(exchange, 200, "application/x-amz-json-1.1", json.getBytes(StandardCharsets.UTF_8));
+			} else {
+				sendError(exchange, 400, "UnknownOperationException");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(exchange, 500, "InternalFailure");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static String find(Pattern pattern, String body) {
+		final Matcher m = pattern.matcher(body);
+		return m.find() ? m.group(1) : "";
+	}
+
+	private static String read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String type) throws IOException {
+		exchange.getResponseHeaders().set("x-amzn-ErrorType", type);
+		send(exchange, status, "application/json",
+				("{\"__type\":\"" + type + "\",\"message\":\"fake error\"}").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.getResponseHeaders().set("x-amzn-RequestId", Long.toHexString(System.nanoTime()));
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package ttsbot.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How a fake service behaves: latency, error rate and the length of the
+ * returned audio.<br>
+ * The latency is a fixed part plus an exponentially distributed part, which
+ * gives the long tail real services have.
+ */
+public class FakeBehavior {
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private final double errorRate;
+	private final int audioMillis;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	/**
+	 * @param latencyMillis fixed latency of each call
+	 * @param jitterMillis  mean of the random extra latency
+	 * @param errorRate     0..1, share of calls which fail
+	 * @param audioMillis   length of the returned audio
+	 */
+	public FakeBehavior(long latencyMillis, long jitterMillis, double errorRate, int audioMillis) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+		this.errorRate = errorRate;
+		this.audioMillis = audioMillis;
+	}
+
+	/**
+	 * Waits for the latency of one call.
+	 *
+	 * @return false if the call should fail
+	 */
+	public boolean call() throws InterruptedException {
+		requests.increment();
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long millis = latencyMillis;
+		if (jitterMillis > 0) {
+			millis += (long) (-jitterMillis * Math.log(1 - random.nextDouble()));
+		}
+		if (millis > 0) {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		}
+		if (random.nextDouble() < errorRate) {
+			errors.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns silent 16 bit mono pcm of the configured length.
+	 */
+	public byte[] pcm(int sampleRate) {
+		return new byte[(int) ((long) sampleRate * audioMillis / 1000) * 2];
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("requests:%s errors:%s", getRequests(), getErrors());
+	}
+}
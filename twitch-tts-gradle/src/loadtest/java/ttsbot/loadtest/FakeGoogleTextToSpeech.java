@@ -0,0 +1,117 @@
+package ttsbot.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.texttospeech.v1.ListVoicesRequest;
+import com.google.cloud.texttospeech.v1.ListVoicesResponse;
+import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechRequest;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
+import com.google.cloud.texttospeech.v1.TextToSpeechGrpc;
+import com.google.cloud.texttospeech.v1.Voice;
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import ttsbot.tts.GoogleTTSProvider;
+
+/**
+ * In-process gRPC stand-in for the google Text-to-Speech service.<br>
+ * Answers with silent LINEAR16 wav audio, see {@link FakeBehavior}. Use
+ * {@link #getChannelProvider()} with
+ * {@link GoogleTTSProvider#GoogleTTSProvider(TransportChannelProvider)}.
+ */
+public class FakeGoogleTextToSpeech extends TextToSpeechGrpc.TextToSpeechImplBase {
+	private static final int SAMPLE_RATE = 24000;
+
+	private final FakeBehavior behavior;
+	private final String name = "fake-tts-" + System.nanoTime();
+	private Server server;
+	private ManagedChannel channel;
+
+	public FakeGoogleTextToSpeech(FakeBehavior behavior) {
+		this.behavior = behavior;
+	}
+
+	public FakeGoogleTextToSpeech start() throws IOException {
+		server = InProcessServerBuilder.forName(name).addService(this).build().start();
+		channel = InProcessChannelBuilder.forName(name).usePlaintext().build();
+		return this;
+	}
+
+	public void stop() {
+		if (channel != null) {
+			channel.shutdownNow();
+		}
+		if (server != null) {
+			server.shutdownNow();
+		}
+	}
+
+	public TransportChannelProvider getChannelProvider() {
+		return FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel));
+	}
+
+	public FakeBehavior getBehavior() {
+		return behavior;
+	}
+
+	@Override
+	public void listVoices(ListVoicesRequest request, StreamObserver<ListVoicesResponse> response) {
+		response.onNext(ListVoicesResponse.newBuilder() //
+				.addVoices(voice("de-DE-Wavenet-B", "de-DE", SsmlVoiceGender.MALE)) //
+				.addVoices(voice("de-DE-Wavenet-A", "de-DE", SsmlVoiceGender.FEMALE)) //
+				.addVoices(voice("en-US-Wavenet-D", "en-US", SsmlVoiceGender.MALE)) //
+				.build());
+		response.onCompleted();
+	}
+
+	private static Voice voice(String name, String lang, SsmlVoiceGender gender) {
+		return Voice.newBuilder().setName(name).addLanguageCodes(lang).setSsmlGender(gender)
+				.setNaturalSampleRateHertz(SAMPLE_RATE).build();
+	}
+
+	@Override
+	public void synthesizeSpeech(SynthesizeSpeechRequest request, StreamObserver<SynthesizeSpeechResponse> response) {
+		try {
+			if (!behavior.call()) {
+				response.onError(Status.UNAVAILABLE.withDescription("fake error").asRuntimeException());
+				return;
+			}
+			response.onNext(SynthesizeSpeechResponse.newBuilder().setAudioContent(ByteString.copyFrom(wav()))
+					.build());
+			response.onCompleted();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response.onError(Status.DEADLINE_EXCEEDED.asRuntimeException());
+		} catch (IOException e) {
+			response.onError(e);
+		}
+	}
+
+	/**
+	 * LINEAR16 responses are wav files, like the real service returns them.
+	 */
+	private byte[] wav() throws IOException {
+		final byte[] pcm = behavior.pcm(SAMPLE_RATE);
+		final AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(pcm.length + 44);
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2),
+				AudioFileFormat.Type.WAVE, out);
+		return out.toByteArray();
+	}
+}
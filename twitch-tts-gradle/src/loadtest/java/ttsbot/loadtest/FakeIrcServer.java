@@ -0,0 +1,178 @@
+package ttsbot.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal Twitch IRC server for load tests, serves one client at a time.<br>
+ * Answers the capability negotiation, the registration, JOIN and PING like
+ * tmi.twitch.tv does, and sends chat lines with Twitch tags through
+ * {@link #send(ChatLine)}. Messages of the client are counted and dropped.
+ */
+public class FakeIrcServer {
+	private final static Logger log = LoggerFactory.getLogger(FakeIrcServer.class);
+
+	private static final String HOST = "tmi.twitch.tv";
+
+	private final String channel;
+	private final ServerSocket serverSocket;
+	private final CountDownLatch joined = new CountDownLatch(1);
+	private final LongAdder received = new LongAdder();
+	private volatile Writer out;
+	private volatile boolean running = true;
+
+	/**
+	 * @param channel channel name without '#'
+	 */
+	public FakeIrcServer(String channel) throws IOException {
+		this.channel = channel.toLowerCase();
+		this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+	}
+
+	public FakeIrcServer start() {
+		final Thread t = new Thread(this::serve, "fake-irc");
+		t.setDaemon(true);
+		t.start();
+		return this;
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			log.debug(e.getMessage(), e);
+		}
+	}
+
+	public String getHost() {
+		return serverSocket.getInetAddress().getHostAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Waits until the client joined the channel.
+	 */
+	public boolean awaitJoin(long timeout, TimeUnit unit) throws InterruptedException {
+		return joined.await(timeout, unit);
+	}
+
+	/**
+	 * Sends the chat line to the connected client.
+	 *
+	 * @return false if no client is connected
+	 */
+	public boolean send(ChatLine line) {
+		return sendRaw(line.toPrivmsg(channel));
+	}
+
+	/**
+	 * Returns the number of PRIVMSGs the client sent.
+	 */
+	public long getReceived() {
+		return received.sum();
+	}
+
+	private void serve() {
+		while (running) {
+			try (Socket socket = serverSocket.accept()) {
+				socket.setTcpNoDelay(true);
+				out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+				handle(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+			} catch (SocketException e) {
+				// closed
+			} catch (IOException e) {
+				log.warn("fake irc client failed: {}", e.toString());
+			} finally {
+				out = null;
+			}
+		}
+	}
+
+	private void handle(BufferedReader in) throws IOException {
+		String nick = "justinfan";
+		boolean capNegotiation = false;
+		boolean user = false;
+		boolean registered = false;
+		String line;
+		while ((line = in.readLine()) != null) {
+			final String[] parts = line.split(" ", 3);
+			final String command = parts[0].toUpperCase();
+			if (command.equals("CAP") && parts.length > 1) {
+				final String sub = parts[1].toUpperCase();
+				if (sub.equals("LS")) {
+					capNegotiation = true;
+					sendRaw(":" + HOST + " CAP * LS :twitch.tv/tags twitch.tv/commands twitch.tv/membership");
+				} else if (sub.equals("REQ") && parts.length > 2) {
+					sendRaw(":" + HOST + " CAP * ACK " + parts[2]);
+				} else if (sub.equals("END")) {
+					capNegotiation = false;
+				}
+			} else if (command.equals("NICK") && parts.length > 1) {
+				nick = parts[1].toLowerCase();
+			} else if (command.equals("USER")) {
+				user = true;
+			} else if (command.equals("PING")) {
+				sendRaw(":" + HOST + " PONG " + HOST + " " + (parts.length > 1 ? parts[1] : ":" + HOST));
+			} else if (command.equals("JOIN") && parts.length > 1) {
+				final String prefix = ":" + nick + "!" + nick + "@" + nick + "." + HOST;
+				sendRaw(prefix + " JOIN " + parts[1]);
+				sendRaw(":" + nick + "." + HOST + " 353 " + nick + " = " + parts[1] + " :" + nick);
+				sendRaw(":" + nick + "." + HOST + " 366 " + nick + " " + parts[1] + " :End of /NAMES list");
+				joined.countDown();
+			} else if (command.equals("WHO") && parts.length > 1) {
+				sendRaw(":" + HOST + " 315 " + nick + " " + parts[1] + " :End of /WHO list.");
+			} else if (command.equals("PRIVMSG")) {
+				received.increment();
+			} else if (command.equals("QUIT")) {
+				return;
+			}
+
+			// registration waits for the end of the capability negotiation
+			if (!registered && user && !capNegotiation) {
+				registered = true;
+				sendRaw(":" + HOST + " 001 " + nick + " :Welcome, GLHF!");
+				sendRaw(":" + HOST + " 002 " + nick + " :Your host is " + HOST);
+				sendRaw(":" + HOST + " 003 " + nick + " :This server is rather new");
+				sendRaw(":" + HOST + " 004 " + nick + " " + HOST + " fake-1.0 i o");
+				sendRaw(":" + HOST + " 375 " + nick + " :-");
+				sendRaw(":" + HOST + " 372 " + nick + " :You are in a maze of twisty passages.");
+				sendRaw(":" + HOST + " 376 " + nick + " :>");
+			}
+		}
+	}
+
+	private boolean sendRaw(String line) {
+		final Writer w = out;
+		if (w == null) {
+			return false;
+		}
+		try {
+			synchronized (w) {
+				w.write(line);
+				w.write("\r\n");
+				w.flush();
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
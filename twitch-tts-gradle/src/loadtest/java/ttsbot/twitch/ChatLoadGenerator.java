@@ -0,0 +1,285 @@
+package ttsbot.twitch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import ttsbot.cache.AudioCache;
+import ttsbot.loadtest.ChatLine;
+import ttsbot.loadtest.FakeAwsServer;
+import ttsbot.loadtest.FakeBehavior;
+import ttsbot.loadtest.FakeGoogleTextToSpeech;
+import ttsbot.loadtest.FakeIrcServer;
+import ttsbot.speech.PipelineStage;
+import ttsbot.speech.SpeechCoalescer;
+import ttsbot.speech.SpeechPipeline;
+import ttsbot.speech.SpeechRateLimiter;
+import ttsbot.tts.AmazonPollyTTSProvider;
+import ttsbot.tts.GoogleTTSProvider;
+import ttsbot.tts.TTSProvider;
+import ttsbot.util.Settings;
+
+/**
+ * Replays recorded chat through the bot against offline stand-ins of the cloud
+ * services and reports throughput and latency.<br>
+ * Messages are sent open-loop at a fixed rate, a slow bot does not slow down
+ * the load. They are handed to the bot's ingest queue, or with 'irc=true' sent
+ * by a local {@link FakeIrcServer} through the PircBotX listener path. The
+ * latency of a message is measured from sending it until its audio is ready
+ * for playback.<br>
+ * Arguments as key=value, see {@link #DEFAULTS}, e.g.<br>
+ * gradle loadtest -Pargs="provider=amazon rate=50 seconds=60 errors=0.01"
+ */
+public class ChatLoadGenerator {
+	private static final Map<String, String> DEFAULTS = new HashMap<>();
+	static {
+		DEFAULTS.put("provider", "google"); // google or amazon
+		DEFAULTS.put("rate", "20"); // chat messages per second
+		DEFAULTS.put("seconds", "30");
+		DEFAULTS.put("chat", ""); // recorded chat, see ChatLine
+		DEFAULTS.put("irc", "false"); // send through a local irc server
+		DEFAULTS.put("latency", "150"); // fixed service latency in ms
+		DEFAULTS.put("jitter", "50"); // mean random extra latency in ms
+		DEFAULTS.put("errors", "0"); // share of failing service calls
+		DEFAULTS.put("audio", "2000"); // audio length in ms
+		DEFAULTS.put("play", "false"); // play the audio
+		DEFAULTS.put("dedup", "true");
+		DEFAULTS.put("ratelimit", "false");
+	}
+
+	private final Map<String, String> args;
+	private final LongAdder spoken = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private long[] latencies;
+	private final AtomicInteger latencyCount = new AtomicInteger();
+	private volatile long lastDone;
+	// user + text -> send times of messages not spoken yet
+	private final Map<String, Deque<Long>> sendTimes = new ConcurrentHashMap<>();
+
+	public ChatLoadGenerator(Map<String, String> args) {
+		this.args = args;
+	}
+
+	public static void main(String[] argv) throws Exception {
+		final Map<String, String> args = new HashMap<>(DEFAULTS);
+		for (String arg : argv) {
+			final int eq = arg.indexOf('=');
+			if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+				System.err.println("unknown argument " + arg + ", known: " + DEFAULTS.keySet());
+				System.exit(1);
+			}
+			args.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		new ChatLoadGenerator(args).run();
+		System.exit(0);
+	}
+
+	private String arg(String key) {
+		return args.get(key);
+	}
+
+	public void run() throws Exception {
+		Settings.set(SpeechPipeline.PLAYBACK_ENABLED, arg("play"));
+		Settings.set(SpeechCoalescer.ENABLED, arg("dedup"));
+		Settings.set(SpeechRateLimiter.ENABLED, arg("ratelimit"));
+		// repeated lines may hit the memory cache, but nothing is written to disk
+		Settings.set(AudioCache.DISK_BYTES, "0");
+
+		final FakeBehavior behavior = new FakeBehavior(Long.parseLong(arg("latency")), Long.parseLong(arg("jitter")),
+				Double.parseDouble(arg("errors")), Integer.parseInt(arg("audio")));
+		final List<ChatLine> chat = loadChat(arg("chat"));
+		final double rate = Double.parseDouble(arg("rate"));
+		final long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(arg("seconds")));
+		latencies = new long[(int) (rate * durationNanos / 1e9) + 16];
+
+		FakeGoogleTextToSpeech google = null;
+		FakeAwsServer aws = null;
+		final TTSProvider provider;
+		if ("amazon".equals(arg("provider"))) {
+			aws = new FakeAwsServer(behavior, 64).start();
+			provider = new AmazonPollyTTSProvider(aws.getEndpoint(), FakeAwsServer.CREDENTIALS);
+		} else {
+			google = new FakeGoogleTextToSpeech(behavior).start();
+			provider = new GoogleTTSProvider(google.getChannelProvider());
+		}
+		provider.setDefault();
+		if (!provider.isAvailable()) {
+			throw new IllegalStateException(provider.getName() + " not available");
+		}
+
+		FakeIrcServer irc = null;
+		if (Boolean.parseBoolean(arg("irc"))) {
+			irc = new FakeIrcServer("loadtest").start();
+			Settings.set(Settings.SERVER, irc.getHost());
+			Settings.set(Settings.PORT, String.valueOf(irc.getPort()));
+			Settings.set(Settings.CHANNEL, "loadtest");
+		}
+
+		final TwitchBot bot = new TwitchBot(Collections.singletonList(provider)) {
+			@Override
+			protected void sendMsg(String msg) {
+				// not connected
+			}
+		};
+		final SpeechPipeline pipeline = bot.getSpeechPipeline();
+		pipeline.setPlaybackListener(request -> {
+			final long now = System.nanoTime();
+			final Deque<Long> times = sendTimes.get(key(request.getUser(), request.getText()));
+			final Long sent = times == null ? null : times.pollFirst();
+			final int i = latencyCount.getAndIncrement();
+			if (i < latencies.length) {
+				latencies[i] = now - (sent == null ? request.getCreatedNanos() : sent);
+			}
+			spoken.increment();
+			lastDone = now;
+		});
+		pipeline.setErrorListener((request, e) -> {
+			failed.increment();
+			lastDone = System.nanoTime();
+		});
+
+		if (irc != null) {
+			final Thread t = new Thread(bot::connect, "irc-bot");
+			t.setDaemon(true);
+			t.start();
+			if (!irc.awaitJoin(10, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("bot did not join the fake irc server");
+			}
+		}
+
+		System.out.printf("%s: %s msg/s for %ss, %s%n", provider.getName(), arg("rate"), arg("seconds"), args);
+		final long start = System.nanoTime();
+		final long period = (long) (1e9 / rate);
+		long sent = 0;
+		long dropped = 0;
+		for (long due = start; due - start < durationNanos; due += period) {
+			final long wait = due - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			final ChatLine line = chat.get((int) (sent % chat.size()));
+			sent++;
+			sendTimes.computeIfAbsent(key(line.getUser(), speechText(line.getMessage())),
+					k -> new ConcurrentLinkedDeque<>()).addLast(System.nanoTime());
+			if (irc != null) {
+				if (!irc.send(line)) {
+					dropped++;
+				}
+			} else if (!pipeline.ingest(() -> bot.parseMessage(line.getUser(), false, "#loadtest", line.getMessage()))) {
+				dropped++;
+			}
+		}
+		final long sendEnd = System.nanoTime();
+		awaitIdle(pipeline, TimeUnit.SECONDS.toNanos(30));
+
+		report(sent, dropped, start, sendEnd, pipeline, behavior);
+		if (irc != null) {
+			bot.disconnect();
+			irc.stop();
+		}
+		provider.shutdown();
+		pipeline.shutdown();
+		if (google != null) {
+			google.stop();
+		}
+		if (aws != null) {
+			aws.stop();
+		}
+	}
+
+	/**
+	 * Waits until the queues are empty and nothing finished for a second.
+	 */
+	private void awaitIdle(SpeechPipeline pipeline, long timeoutNanos) throws InterruptedException {
+		final long deadline = System.nanoTime() + timeoutNanos;
+		while (System.nanoTime() - deadline < 0) {
+			boolean empty = true;
+			for (PipelineStage<?> stage : pipeline.getStages()) {
+				empty &= stage.getDepth() == 0;
+			}
+			if (empty && System.nanoTime() - lastDone > TimeUnit.SECONDS.toNanos(1)) {
+				return;
+			}
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		System.out.println("pipeline not idle after timeout");
+	}
+
+	private void report(long sent, long dropped, long start, long sendEnd, SpeechPipeline pipeline,
+			FakeBehavior behavior) {
+		final int n = Math.min(latencyCount.get(), latencies.length);
+		final long[] sorted = Arrays.copyOf(latencies, n);
+		Arrays.sort(sorted);
+		final double seconds = (Math.max(lastDone, sendEnd) - start) / 1e9;
+
+		System.out.printf("sent:%s (%.1f/s) ingest dropped:%s%n", sent, sent / ((sendEnd - start) / 1e9), dropped);
+		System.out.printf("spoken:%s (%.1f/s) failed:%s merged:%s%n", spoken.sum(), spoken.sum() / seconds,
+				failed.sum(), pipeline.getCoalescer() == null ? 0
+						: pipeline.getCoalescer().getExactMerged() + pipeline.getCoalescer().getSimilarMerged());
+		System.out.printf("latency chat message -> audio ready, ms p50:%.1f p90:%.1f p99:%.1f p99.9:%.1f max:%.1f%n", percentile(sorted, 50),
+				percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 99.9), percentile(sorted, 100));
+		System.out.printf("service %s%n", behavior);
+		System.out.println(pipeline);
+		System.out.println(pipeline.getAudioCache());
+	}
+
+	private static String key(String user, String text) {
+		return user + "\n" + text;
+	}
+
+	/**
+	 * The text of a message as spoken, the arguments of the command.
+	 */
+	private static String speechText(String message) {
+		final int space = message.indexOf(' ');
+		return space < 0 ? "" : message.substring(space + 1).trim();
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int idx = (int) Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6;
+	}
+
+	/**
+	 * Reads the chat lines, the bundled sample if no file is given.
+	 */
+	static List<ChatLine> loadChat(String file) throws IOException {
+		final List<ChatLine> chat = new ArrayList<>();
+		try (InputStream in = file.isEmpty() ? ChatLoadGenerator.class.getResourceAsStream("/chat-sample.txt")
+				: Files.newInputStream(Paths.get(file));
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final ChatLine chatLine = ChatLine.parse(line);
+				// plain chat never reaches the bot's command handling
+				if (chatLine != null && CommandDispatcher.isCommand(chatLine.getMessage())) {
+					chat.add(chatLine);
+				}
+			}
+		}
+		if (chat.isEmpty()) {
+			throw new IOException("no commands in " + (file.isEmpty() ? "chat-sample.txt" : file));
+		}
+		return chat;
+	}
+}
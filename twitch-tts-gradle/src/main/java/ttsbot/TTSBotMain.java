@@ -9,8 +9,10 @@ import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ttsbot.metrics.MetricsHttpServer;
 import ttsbot.twitch.TwitchBot;
 import ttsbot.ui.SwingUI;
+import ttsbot.util.StartupTimer;
 
 /**
  * Main class which starts the twitch bot and UI.
@@ -28,9 +30,12 @@ public class TTSBotMain {
 		try {
 			TwitchBot bot;
 			bot = new TwitchBot();
+			StartupTimer.mark("bot created");
+			MetricsHttpServer.startFromSettings();
 
 			ui = new SwingUI(bot);
 			ui.setVisible(true);
+			StartupTimer.mark("ui visible");
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
@@ -38,6 +43,7 @@ public class TTSBotMain {
 	}
 
 	public static void main(String[] args) {
+		StartupTimer.mark("main");
 		startupCheck();
 
 		TTSBotMain bot = new TTSBotMain();
@@ -0,0 +1,19 @@
+package ttsbot.audio;
+
+/**
+ * Inputs of the {@link AudioMixer}, each plays its streams one after another
+ * while the channels play concurrently.
+ */
+public enum AudioChannel {
+	/** text to speech, ducks the effects while it plays */
+	SPEECH,
+	/** media commands, sound effects */
+	EFFECTS;
+
+	/**
+	 * Name used in settings and metrics, e.g. 'audioGainDb.effects'.
+	 */
+	public String getKey() {
+		return name().toLowerCase();
+	}
+}
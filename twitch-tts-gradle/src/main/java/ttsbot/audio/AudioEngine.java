@@ -0,0 +1,535 @@
+package ttsbot.audio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.util.Settings;
+
+/**
+ * Long lived audio output: one {@link SourceDataLine} is opened once and fed
+ * by an output thread, which mixes the {@link AudioChannel}s with an
+ * {@link AudioMixer}.<br>
+ * Streams are converted to the fixed output format, gain is applied in
+ * software, and the first chunk is audible while the rest of the stream is
+ * still being read. Per channel only one stream is fed at a time, the next one
+ * waits; speech and effects play at the same time.<br>
+ * 16 bit pcm held in buffers ({@link WavBuffer}) is converted straight into
+ * the feed chunk, without the java sound conversion chain.
+ */
+public class AudioEngine {
+	private final static Logger log = LoggerFactory.getLogger(AudioEngine.class);
+
+	public static final String BUFFER_MILLIS = "audioBufferMillis";
+	public static final String LINE_BUFFER_MILLIS = "audioLineBufferMillis";
+	/** per channel, e.g. 'audioGainDb.effects=-6' */
+	public static final String CHANNEL_GAIN = "audioGainDb";
+	public static final String DUCKING_DB = "audioDuckingDb";
+	public static final String DUCKING_ATTACK_MILLIS = "audioDuckingAttackMillis";
+	public static final String DUCKING_RELEASE_MILLIS = "audioDuckingReleaseMillis";
+
+	/** 44.1 kHz, 16 bit, stereo, signed little endian */
+	public static final AudioFormat OUTPUT_FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+	private static final int CHUNK_BYTES = 4096;
+	private static final long FULL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+	private static AudioEngine instance;
+
+	private final AudioMixer mixer;
+	private final Feed[] feeds;
+	private final int lineBufferBytes;
+	private final int frameSize = OUTPUT_FORMAT.getFrameSize();
+
+	private volatile SourceDataLine line;
+	private volatile Thread outputThread;
+	private volatile boolean flushRequested = false;
+
+	// the output thread sleeps on it while all channels are empty
+	private final ReentrantLock outputLock = new ReentrantLock();
+	private final Condition audioQueued = outputLock.newCondition();
+	private volatile boolean outputIdle = false;
+	private boolean wakeUp = false;
+
+	private final Timer firstChunkTiming = Metrics.get().timer("audio_first_chunk_seconds");
+
+	public AudioEngine(int bufferMillis, int lineBufferMillis) {
+		this(bufferMillis, lineBufferMillis, 0, 1, 1);
+	}
+
+	/**
+	 * @param duckingDb effects gain change while speech plays, see
+	 *                  {@link AudioMixer}
+	 */
+	public AudioEngine(int bufferMillis, int lineBufferMillis, float duckingDb, int attackMillis, int releaseMillis) {
+		this.mixer = new AudioMixer(bytesFor(bufferMillis), frameSize, (int) OUTPUT_FORMAT.getFrameRate(), duckingDb,
+				attackMillis, releaseMillis);
+		this.feeds = new Feed[AudioChannel.values().length];
+		for (AudioChannel c : AudioChannel.values()) {
+			feeds[c.ordinal()] = new Feed(mixer.getInput(c));
+		}
+		this.lineBufferBytes = bytesFor(lineBufferMillis);
+	}
+
+	/**
+	 * Returns the shared engine, configured from settings.properties.
+	 */
+	public static synchronized AudioEngine get() {
+		if (instance == null) {
+			instance = fromSettings();
+		}
+		return instance;
+	}
+
+	private static AudioEngine fromSettings() {
+		final AudioEngine engine = new AudioEngine(Settings.getInt(BUFFER_MILLIS, 500),
+				Settings.getInt(LINE_BUFFER_MILLIS, 100), (float) Settings.getDouble(DUCKING_DB, -12),
+				Settings.getInt(DUCKING_ATTACK_MILLIS, 50), Settings.getInt(DUCKING_RELEASE_MILLIS, 400));
+		for (AudioChannel c : AudioChannel.values()) {
+			final AudioMixer.Input input = engine.mixer.getInput(c);
+			input.setGainDb((float) Settings.getDouble(CHANNEL_GAIN + "." + c.getKey(), 0));
+			Metrics.get().gauge("audio_queued_bytes", input::available, "channel", c.getKey());
+		}
+		Metrics.get().gauge("audio_ducking", () -> engine.mixer.isDucking() ? 1 : 0);
+		return engine;
+	}
+
+	private int bytesFor(int millis) {
+		final int frames = (int) (OUTPUT_FORMAT.getFrameRate() * millis / 1000);
+		return Math.max(1, frames) * OUTPUT_FORMAT.getFrameSize();
+	}
+
+	/**
+	 * Opens the output line and starts the output thread, if not done yet.
+	 */
+	public synchronized void start() throws LineUnavailableException {
+		if (line != null) {
+			return;
+		}
+		SourceDataLine l = AudioSystem.getSourceDataLine(OUTPUT_FORMAT);
+		l.open(OUTPUT_FORMAT, lineBufferBytes);
+		l.start();
+		line = l;
+
+		Thread t = new Thread(this::output, "audio-out");
+		t.setDaemon(true);
+		t.setPriority(Thread.MAX_PRIORITY);
+		outputThread = t;
+		t.start();
+		log.info("audio output started: {}, line buffer:{} bytes, ring:{} bytes per channel", OUTPUT_FORMAT,
+				l.getBufferSize(), mixer.getInput(AudioChannel.SPEECH).capacity());
+	}
+
+	public synchronized void shutdown() {
+		Thread t = outputThread;
+		outputThread = null;
+		if (t != null) {
+			t.interrupt();
+		}
+		if (line != null) {
+			line.stop();
+			line.close();
+			line = null;
+		}
+	}
+
+	/**
+	 * Streams the speech into the output, returns once the last chunk is queued.
+	 *
+	 * @param gainDb volume change in decibel, -80 .. +6
+	 * @return the output position after the last byte, see
+	 *         {@link #awaitPlayed(long, long)}
+	 */
+	public long play(AudioInputStream audio, float gainDb) throws LineUnavailableException, IOException {
+		return play(audio, gainDb, null);
+	}
+
+	/**
+	 * Streams the speech into the output, returns once the last chunk is queued.
+	 *
+	 * @param onFirstChunk called on the feeding thread once the first chunk is
+	 *                     queued for output, may be null
+	 */
+	public long play(AudioInputStream audio, float gainDb, Runnable onFirstChunk)
+			throws LineUnavailableException, IOException {
+		return play(AudioChannel.SPEECH, audio, gainDb, onFirstChunk);
+	}
+
+	/**
+	 * Streams the audio into the channel, returns once the last chunk is queued.
+	 *
+	 * @param onFirstChunk see {@link #play(AudioInputStream, float, Runnable)}
+	 * @return the channel position after the last byte, see
+	 *         {@link #awaitPlayed(AudioChannel, long, long)}
+	 */
+	public long play(AudioChannel channel, AudioInputStream audio, float gainDb, Runnable onFirstChunk)
+			throws LineUnavailableException, IOException {
+		start();
+		final long startNanos = System.nanoTime();
+		final Feed feed = feeds[channel.ordinal()];
+
+		feed.lock.lock();
+		try (AudioInputStream in = toOutputFormat(audio)) {
+			return feed(feed, in::read, gainDb, startNanos, onFirstChunk);
+		} finally {
+			feed.lock.unlock();
+		}
+	}
+
+	/**
+	 * Streams the speech samples into the output, returns once the last chunk is
+	 * queued.<br>
+	 * They are converted from the buffers into the feed chunk, no other copy is
+	 * made.
+	 *
+	 * @param onFirstChunk see {@link #play(AudioInputStream, float, Runnable)}
+	 */
+	public long play(WavBuffer wav, float gainDb, Runnable onFirstChunk) throws LineUnavailableException, IOException {
+		return play(AudioChannel.SPEECH, wav, gainDb, onFirstChunk);
+	}
+
+	/**
+	 * Streams the samples into the channel, see
+	 * {@link #play(WavBuffer, float, Runnable)}.
+	 */
+	public long play(AudioChannel channel, WavBuffer wav, float gainDb, Runnable onFirstChunk)
+			throws LineUnavailableException, IOException {
+		start();
+		final long startNanos = System.nanoTime();
+		final PcmConverter converter = new PcmConverter(wav, OUTPUT_FORMAT);
+		final Feed feed = feeds[channel.ordinal()];
+
+		feed.lock.lock();
+		try {
+			return feed(feed, converter::read, gainDb, startNanos, onFirstChunk);
+		} finally {
+			feed.lock.unlock();
+		}
+	}
+
+	/**
+	 * Moves the source in output format chunk by chunk into the channel, called
+	 * while holding the lock of the feed.
+	 */
+	private long feed(Feed feed, ChunkSource in, float gainDb, long startNanos, Runnable onFirstChunk)
+			throws IOException {
+		final double gain = gainFactor(gainDb);
+		final byte[] buffer = feed.buffer;
+		final int gen = feed.generation;
+		boolean first = true;
+		int pending = 0;
+		int read;
+		feed.input.setFeeding(true);
+		try {
+			while ((read = in.read(buffer, pending, buffer.length - pending)) > 0) {
+				pending += read;
+				// only whole frames, a partial frame stays for the next round
+				final int length = pending - pending % frameSize;
+				applyGain(buffer, length, gain);
+				if (!write(feed, length, gen)) {
+					log.debug("playback flushed");
+					break;
+				}
+				if (first) {
+					firstChunkTiming.recordSince(startNanos);
+					first = false;
+					if (onFirstChunk != null) {
+						onFirstChunk.run();
+					}
+				}
+				System.arraycopy(buffer, length, buffer, 0, pending - length);
+				pending -= length;
+			}
+		} finally {
+			feed.input.setFeeding(false);
+		}
+		return feed.input.getWritePosition();
+	}
+
+	/**
+	 * Streams the speech and waits until it has been played.
+	 */
+	public void playAndWait(AudioInputStream audio, float gainDb)
+			throws LineUnavailableException, IOException, InterruptedException {
+		playAndWait(audio, gainDb, null);
+	}
+
+	/**
+	 * Streams the speech and waits until it has been played.
+	 *
+	 * @param onFirstChunk see {@link #play(AudioInputStream, float, Runnable)}
+	 */
+	public void playAndWait(AudioInputStream audio, float gainDb, Runnable onFirstChunk)
+			throws LineUnavailableException, IOException, InterruptedException {
+		final long end = play(audio, gainDb, onFirstChunk);
+		awaitPlayed(AudioChannel.SPEECH, end, TimeUnit.SECONDS.toMillis(10));
+	}
+
+	/**
+	 * Streams the speech samples and waits until they have been played.
+	 *
+	 * @param onFirstChunk see {@link #play(AudioInputStream, float, Runnable)}
+	 */
+	public void playAndWait(WavBuffer wav, float gainDb, Runnable onFirstChunk)
+			throws LineUnavailableException, IOException, InterruptedException {
+		final long end = play(wav, gainDb, onFirstChunk);
+		awaitPlayed(AudioChannel.SPEECH, end, TimeUnit.SECONDS.toMillis(10));
+	}
+
+	/**
+	 * Waits until the speech has played up to the given position, see
+	 * {@link #awaitPlayed(AudioChannel, long, long)}.
+	 */
+	public void awaitPlayed(long position, long timeoutMillis) throws InterruptedException {
+		awaitPlayed(AudioChannel.SPEECH, position, timeoutMillis);
+	}
+
+	/**
+	 * Waits until the channel has played up to the given position, or longer than
+	 * expected plus the timeout.
+	 */
+	public void awaitPlayed(AudioChannel channel, long position, long timeoutMillis) throws InterruptedException {
+		final long bytesPerSecond = (long) (OUTPUT_FORMAT.getFrameRate() * frameSize);
+		final Feed feed = feeds[channel.ordinal()];
+		long remaining = position - getPlayedPosition(channel);
+		final long deadline = System.currentTimeMillis() + remaining * 1000 / bytesPerSecond + timeoutMillis;
+		final int gen = feed.generation;
+		while ((remaining = position - getPlayedPosition(channel)) > 0 && gen == feed.generation) {
+			if (System.currentTimeMillis() > deadline) {
+				log.warn("playback did not finish in time, {} bytes left", remaining);
+				return;
+			}
+			Thread.sleep(Math.max(1, Math.min(20, remaining * 1000 / bytesPerSecond)));
+		}
+	}
+
+	/**
+	 * Position of the last speech byte which has left the speaker, see
+	 * {@link #getPlayedPosition(AudioChannel)}.
+	 */
+	public long getPlayedPosition() {
+		return getPlayedPosition(AudioChannel.SPEECH);
+	}
+
+	/**
+	 * Position of the last byte of the channel which has left the speaker,
+	 * comparable to the positions returned by
+	 * {@link #play(AudioChannel, AudioInputStream, float, Runnable)}.
+	 */
+	public long getPlayedPosition(AudioChannel channel) {
+		final long read = mixer.getInput(channel).getReadPosition();
+		final SourceDataLine l = line;
+		if (l == null) {
+			return read;
+		}
+		// everything mixed went into the line, minus what it still buffers
+		return read - (l.getBufferSize() - l.available());
+	}
+
+	/**
+	 * Drops all queued audio and aborts the streams currently being fed.
+	 */
+	public synchronized void flush() {
+		for (AudioChannel c : AudioChannel.values()) {
+			flush(c);
+		}
+		flushRequested = true;
+		wakeOutput(true);
+	}
+
+	/**
+	 * Drops the queued audio of the channel and aborts its stream, the other
+	 * channels keep playing.
+	 */
+	public synchronized void flush(AudioChannel channel) {
+		final Feed feed = feeds[channel.ordinal()];
+		feed.generation++;
+		feed.input.flush();
+		// the flush is done by the next mix
+		wakeOutput(true);
+	}
+
+	/**
+	 * Copies the feed chunk into the channel, waits while it is full.
+	 *
+	 * @return false if the channel was flushed meanwhile
+	 */
+	private boolean write(Feed feed, int length, int gen) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			if (gen != feed.generation) {
+				return false;
+			}
+			if (outputThread == null) {
+				throw new IOException("audio output stopped");
+			}
+			final int n = feed.input.write(feed.buffer, offset, length - offset);
+			if (n == 0) {
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+			} else {
+				wakeOutput(false);
+			}
+			offset += n;
+		}
+		return true;
+	}
+
+	/**
+	 * Output thread: mixes whole frames of the channels into the line.
+	 */
+	private void output() {
+		final byte[] chunk = new byte[CHUNK_BYTES];
+		while (outputThread == Thread.currentThread()) {
+			final SourceDataLine l = line;
+			if (l == null) {
+				break;
+			}
+			final boolean flushLine = flushRequested;
+			final int n = mixer.mix(chunk, chunk.length);
+			if (flushLine) {
+				// after the mix, which dropped the queued audio
+				flushRequested = false;
+				l.flush();
+			}
+			if (n == 0) {
+				try {
+					awaitAudio();
+				} catch (InterruptedException e) {
+					break;
+				}
+				continue;
+			}
+			// blocks while the line buffer is full
+			l.write(chunk, 0, n);
+		}
+	}
+
+	/**
+	 * Sleeps until a producer queues audio or a flush is requested.<br>
+	 * The idle flag is set before the channels are checked and producers check
+	 * it after writing, so a write is never missed.
+	 */
+	private void awaitAudio() throws InterruptedException {
+		outputLock.lockInterruptibly();
+		try {
+			outputIdle = true;
+			while (!wakeUp && mixer.available() == 0) {
+				audioQueued.await();
+			}
+			wakeUp = false;
+		} finally {
+			outputIdle = false;
+			outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Wakes the output thread if it sleeps.
+	 *
+	 * @param always also if no audio is queued, e.g. to flush
+	 */
+	private void wakeOutput(boolean always) {
+		if (!always && !outputIdle) {
+			return;
+		}
+		outputLock.lock();
+		try {
+			wakeUp = true;
+			audioQueued.signal();
+		} finally {
+			outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Converts the stream to {@link #OUTPUT_FORMAT}, resampling and up mixing
+	 * mono if needed.
+	 */
+	static AudioInputStream toOutputFormat(AudioInputStream audio) {
+		final AudioFormat format = audio.getFormat();
+		if (format.matches(OUTPUT_FORMAT)) {
+			return audio;
+		}
+		AudioInputStream pcm = audio;
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())) {
+			pcm = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, audio);
+		}
+		return AudioSystem.getAudioInputStream(OUTPUT_FORMAT, pcm);
+	}
+
+	/**
+	 * @param gainDb clamped to -80 .. +6 like the old line gain control
+	 */
+	static double gainFactor(float gainDb) {
+		final double db = Math.max(-79.9, Math.min(5.9, gainDb));
+		return Math.pow(10, db / 20);
+	}
+
+	/**
+	 * Scales 16 bit signed little endian samples in place.
+	 */
+	static void applyGain(byte[] data, int length, double gain) {
+		if (gain == 1.0) {
+			return;
+		}
+		for (int i = 0; i + 1 < length; i += 2) {
+			int sample = (short) ((data[i] & 0xff) | (data[i + 1] << 8));
+			sample = (int) Math.round(sample * gain);
+			sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+			data[i] = (byte) sample;
+			data[i + 1] = (byte) (sample >> 8);
+		}
+	}
+
+	/**
+	 * Source of samples in output format, see
+	 * {@link java.io.InputStream#read(byte[], int, int)}.
+	 */
+	private interface ChunkSource {
+		int read(byte[] b, int off, int len) throws IOException;
+	}
+
+	/**
+	 * Feeding side of a channel, the buffer is only used while holding the lock.
+	 */
+	private static class Feed {
+		private final AudioMixer.Input input;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final byte[] buffer = new byte[CHUNK_BYTES];
+		private volatile int generation = 0;
+
+		Feed(AudioMixer.Input input) {
+			this.input = input;
+		}
+	}
+
+	public AudioMixer getMixer() {
+		return mixer;
+	}
+
+	public Timer getFirstChunkTiming() {
+		return firstChunkTiming;
+	}
+
+	public int getQueuedBytes() {
+		return mixer.available();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("audio engine[%s %s]", mixer, firstChunkTiming);
+	}
+}
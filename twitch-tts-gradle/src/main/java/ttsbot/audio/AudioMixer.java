@@ -0,0 +1,227 @@
+package ttsbot.audio;
+
+import java.util.Arrays;
+
+/**
+ * Software mixer for 16 bit signed little endian pcm: one lock free
+ * {@link PcmRingBuffer} per {@link AudioChannel} between its producer and the
+ * output thread, which sums the channels with their gain.<br>
+ * While speech is queued or being fed, the effects are ducked: their gain
+ * ramps down within the attack time and back up within the release time, so
+ * the ducking does not click.
+ */
+public class AudioMixer {
+	private final int frameSize;
+	private final Input[] inputs;
+	private final Input speech;
+
+	// effects gain factor while ducked
+	private final double duckFactor;
+	private final double attackPerFrame;
+	private final double releasePerFrame;
+
+	// output thread only
+	private double duck = 1.0;
+	private int[] sum = new int[0];
+	private byte[] scratch = new byte[0];
+
+	/**
+	 * @param ringBytes     queue size per channel
+	 * @param duckingDb     effects gain change while speech plays, 0 = no ducking
+	 * @param attackMillis  ramp down time of the ducking
+	 * @param releaseMillis ramp up time after the speech
+	 */
+	public AudioMixer(int ringBytes, int frameSize, int frameRate, float duckingDb, int attackMillis,
+			int releaseMillis) {
+		this.frameSize = frameSize;
+		this.inputs = new Input[AudioChannel.values().length];
+		for (AudioChannel c : AudioChannel.values()) {
+			inputs[c.ordinal()] = new Input(c, ringBytes);
+		}
+		this.speech = inputs[AudioChannel.SPEECH.ordinal()];
+		this.duckFactor = Math.min(1.0, Math.pow(10, duckingDb / 20.0));
+		this.attackPerFrame = (1.0 - duckFactor) / Math.max(1.0, frameRate * attackMillis / 1000.0);
+		this.releasePerFrame = (1.0 - duckFactor) / Math.max(1.0, frameRate * releaseMillis / 1000.0);
+	}
+
+	public Input getInput(AudioChannel channel) {
+		return inputs[channel.ordinal()];
+	}
+
+	/**
+	 * Returns the number of bytes queued in all channels.
+	 */
+	public int available() {
+		int total = 0;
+		for (Input in : inputs) {
+			total += in.ring.available();
+		}
+		return total;
+	}
+
+	/**
+	 * Returns true if the effects are (being) ducked.
+	 */
+	public boolean isDucking() {
+		return duck < 1.0;
+	}
+
+	/**
+	 * Mixes whole frames of all channels into the output, only called by the
+	 * output thread. A channel with less data than the others is padded with
+	 * silence.
+	 *
+	 * @return the number of bytes written, 0 if no channel has data
+	 */
+	public int mix(byte[] out, int maxLength) {
+		int length = 0;
+		for (Input in : inputs) {
+			if (in.flushRequested) {
+				in.flushRequested = false;
+				in.ring.skipAll();
+			}
+			length = Math.max(length, Math.min(maxLength, in.ring.available()));
+		}
+		final boolean speaking = speech.feeding || speech.ring.available() > 0;
+		length -= length % frameSize;
+		if (length == 0) {
+			// nothing audible, no need to ramp
+			duck = speaking ? duckFactor : 1.0;
+			return 0;
+		}
+
+		final int samples = length / 2;
+		if (sum.length < samples) {
+			sum = new int[samples];
+			scratch = new byte[length];
+		}
+		Arrays.fill(sum, 0, samples, 0);
+
+		final double duckStart = duck;
+		rampDuck(speaking, length / frameSize);
+		for (Input in : inputs) {
+			int n = Math.min(length, in.ring.available());
+			n = in.ring.read(scratch, 0, n - n % frameSize);
+			if (n == 0) {
+				continue;
+			}
+			final double gain = in.gain;
+			if (in.channel == AudioChannel.EFFECTS) {
+				addRamped(scratch, n / 2, gain * duckStart, gain * duck, samples);
+			} else {
+				addRamped(scratch, n / 2, gain, gain, samples);
+			}
+		}
+
+		for (int i = 0; i < samples; i++) {
+			final int s = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+			out[i * 2] = (byte) s;
+			out[i * 2 + 1] = (byte) (s >> 8);
+		}
+		return length;
+	}
+
+	/**
+	 * Adds the samples, the gain changes linearly over the whole output chunk.
+	 */
+	private void addRamped(byte[] data, int count, double from, double to, int chunkSamples) {
+		if (from == 1.0 && to == 1.0) {
+			for (int i = 0; i < count; i++) {
+				sum[i] += (short) ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8));
+			}
+			return;
+		}
+		final double step = (to - from) / chunkSamples;
+		for (int i = 0; i < count; i++) {
+			final int sample = (short) ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8));
+			sum[i] += (int) Math.round(sample * (from + step * i));
+		}
+	}
+
+	private void rampDuck(boolean speaking, int frames) {
+		if (speaking) {
+			duck = Math.max(duckFactor, duck - attackPerFrame * frames);
+		} else {
+			duck = Math.min(1.0, duck + releasePerFrame * frames);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("mixer[");
+		for (Input in : inputs) {
+			sb.append(in.channel.getKey()).append(':').append(in.ring.available()).append(" bytes ");
+		}
+		return sb.append("ducking:").append(isDucking()).append(']').toString();
+	}
+
+	/**
+	 * One channel: written by its producer, read by the output thread.
+	 */
+	public static class Input {
+		private final AudioChannel channel;
+		private final PcmRingBuffer ring;
+		private volatile double gain = 1.0;
+		private volatile boolean feeding = false;
+		private volatile boolean flushRequested = false;
+
+		Input(AudioChannel channel, int ringBytes) {
+			this.channel = channel;
+			this.ring = new PcmRingBuffer(ringBytes);
+		}
+
+		public AudioChannel getChannel() {
+			return channel;
+		}
+
+		/**
+		 * Copies as many bytes as fit into the queue, see
+		 * {@link PcmRingBuffer#write(byte[], int, int)}.
+		 */
+		public int write(byte[] src, int offset, int length) {
+			return ring.write(src, offset, length);
+		}
+
+		/**
+		 * Marks the channel as playing a stream, speech ducks the effects from the
+		 * first byte on, even if the queue runs empty in between.
+		 */
+		public void setFeeding(boolean feeding) {
+			this.feeding = feeding;
+		}
+
+		/**
+		 * Drops the queued audio with the next mix.
+		 */
+		public void flush() {
+			flushRequested = true;
+		}
+
+		/**
+		 * @param gainDb channel volume in decibel, -80 .. +6
+		 */
+		public void setGainDb(float gainDb) {
+			this.gain = AudioEngine.gainFactor(gainDb);
+		}
+
+		public double getGain() {
+			return gain;
+		}
+
+		public int available() {
+			return ring.available();
+		}
+
+		public int capacity() {
+			return ring.capacity();
+		}
+
+		public long getWritePosition() {
+			return ring.getWritePosition();
+		}
+
+		public long getReadPosition() {
+			return ring.getReadPosition();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package ttsbot.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decoded audio held in memory, ready to be played.
+ */
+public class PcmAudio {
+	private final AudioFormat format;
+	private final byte[] data;
+
+	public PcmAudio(AudioFormat format, byte[] data) {
+		this.format = format;
+		this.data = data;
+	}
+
+	/**
+	 * Reads the whole stream into memory.
+	 */
+	public static PcmAudio fromStream(AudioInputStream ais) throws IOException {
+		return new PcmAudio(ais.getFormat(), readAll(ais));
+	}
+
+	/**
+	 * Decodes a whole audio file into memory, see {@link #openPcm(InputStream)}.
+	 */
+	public static PcmAudio decode(InputStream in) throws UnsupportedAudioFileException, IOException {
+		try (AudioInputStream ais = openPcm(in)) {
+			return fromStream(ais);
+		}
+	}
+
+	/**
+	 * Opens an audio file (wav, or mp3 / ogg through the installed java sound
+	 * SPIs) as 16 bit signed pcm.<br>
+	 * Compressed audio is decoded while the stream is read, so playback can start
+	 * before the whole file is decoded.
+	 *
+	 * @param in has to support mark / reset for the file type detection
+	 */
+	public static AudioInputStream openPcm(InputStream in) throws UnsupportedAudioFileException, IOException {
+		final AudioInputStream source = AudioSystem.getAudioInputStream(in);
+		final AudioFormat f = source.getFormat();
+		if (AudioFormat.Encoding.PCM_SIGNED.equals(f.getEncoding())) {
+			return source;
+		}
+		final AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, f.getSampleRate(), 16,
+				f.getChannels(), f.getChannels() * 2, f.getSampleRate(), false);
+		try {
+			return AudioSystem.getAudioInputStream(pcm, source);
+		} catch (IllegalArgumentException e) {
+			source.close();
+			throw new UnsupportedAudioFileException("no decoder for " + f);
+		}
+	}
+
+	static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, in.available()));
+		byte[] buffer = new byte[8 * 1024];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int size() {
+		return data.length;
+	}
+
+	/**
+	 * Returns the playing time in milliseconds.
+	 */
+	public long getDurationMillis() {
+		float bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+		if (bytesPerSecond <= 0) {
+			return 0;
+		}
+		return (long) (data.length * 1000L / bytesPerSecond);
+	}
+
+	/**
+	 * Returns a new stream over the audio data.
+	 */
+	public AudioInputStream toAudioInputStream() {
+		int frameSize = Math.max(1, format.getFrameSize());
+		return new AudioInputStream(new ByteArrayInputStream(data), format, data.length / frameSize);
+	}
+}
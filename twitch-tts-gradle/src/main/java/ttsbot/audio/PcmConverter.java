@@ -0,0 +1,92 @@
+package ttsbot.audio;
+
+import java.nio.ByteBuffer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts the samples of a {@link WavBuffer} to a 16 bit stereo output
+ * format while reading them: mono is up mixed, other sample rates are
+ * resampled by linear interpolation.<br>
+ * Reads straight from the buffer slices into the caller's chunk, nothing is
+ * allocated per chunk. Not thread safe, one converter per playback.
+ */
+public class PcmConverter {
+	private final ByteBuffer[] data;
+	private final int channels;
+	private final long frames;
+	// source frames per output frame
+	private final double step;
+	private final boolean sameRate;
+
+	// next output frame, in source frames
+	private double position;
+	// cursor of the slice holding the last read byte
+	private int slice;
+	private long sliceStart;
+
+	public PcmConverter(WavBuffer wav, AudioFormat output) {
+		if (output.getChannels() != 2 || output.getSampleSizeInBits() != 16 || output.isBigEndian()) {
+			throw new IllegalArgumentException("16 bit stereo little endian expected: " + output);
+		}
+		this.data = wav.getData();
+		this.channels = wav.getFormat().getChannels();
+		this.frames = wav.getFrames();
+		this.step = wav.getFormat().getSampleRate() / output.getSampleRate();
+		this.sameRate = wav.getFormat().getSampleRate() == output.getSampleRate();
+	}
+
+	/**
+	 * Writes whole output frames.
+	 *
+	 * @return the number of bytes written, -1 at the end
+	 */
+	public int read(byte[] dst, int offset, int length) {
+		int written = 0;
+		while (written + 4 <= length && position < frames) {
+			final long frame = (long) position;
+			int left = sample(frame, 0);
+			int right = channels == 1 ? left : sample(frame, 1);
+			if (!sameRate && frame + 1 < frames) {
+				final double frac = position - frame;
+				final int nextLeft = sample(frame + 1, 0);
+				final int nextRight = channels == 1 ? nextLeft : sample(frame + 1, 1);
+				left += (int) Math.round((nextLeft - left) * frac);
+				right += (int) Math.round((nextRight - right) * frac);
+			}
+			final int i = offset + written;
+			dst[i] = (byte) left;
+			dst[i + 1] = (byte) (left >> 8);
+			dst[i + 2] = (byte) right;
+			dst[i + 3] = (byte) (right >> 8);
+			written += 4;
+			position = sameRate ? frame + 1 : position + step;
+		}
+		return written == 0 && position >= frames ? -1 : written;
+	}
+
+	/**
+	 * Returns the output size in bytes.
+	 */
+	public long getOutputLength() {
+		return (long) Math.ceil(frames / step) * 4;
+	}
+
+	private int sample(long frame, int channel) {
+		final long pos = (frame * channels + channel) * 2;
+		return (short) (byteAt(pos) | byteAt(pos + 1) << 8);
+	}
+
+	private int byteAt(long pos) {
+		// samples are read in order, so the cursor moves forward almost always
+		while (pos >= sliceStart + data[slice].limit() && slice < data.length - 1) {
+			sliceStart += data[slice].limit();
+			slice++;
+		}
+		while (pos < sliceStart) {
+			slice--;
+			sliceStart -= data[slice].limit();
+		}
+		return data[slice].get((int) (pos - sliceStart)) & 0xff;
+	}
+}
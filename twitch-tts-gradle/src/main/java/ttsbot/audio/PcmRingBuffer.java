@@ -0,0 +1,93 @@
+package ttsbot.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free byte ring buffer for exactly one writer and one reader thread.<br>
+ * Positions are absolute byte counts which only grow, so the writer can tell
+ * when the reader has passed a certain byte.
+ */
+public class PcmRingBuffer {
+	private final byte[] buffer;
+	private final int mask;
+
+	// written by the writer only
+	private final AtomicLong writePosition = new AtomicLong();
+	// written by the reader only
+	private final AtomicLong readPosition = new AtomicLong();
+
+	/**
+	 * @param capacity rounded up to the next power of two
+	 */
+	public PcmRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.buffer = new byte[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Copies as many bytes as fit into the buffer.
+	 *
+	 * @return the number of bytes written, 0 if the buffer is full
+	 */
+	public int write(byte[] src, int offset, int length) {
+		final long write = writePosition.get();
+		final int n = (int) Math.min(length, buffer.length - (write - readPosition.get()));
+		if (n <= 0) {
+			return 0;
+		}
+		final int start = (int) (write & mask);
+		final int first = Math.min(n, buffer.length - start);
+		System.arraycopy(src, offset, buffer, start, first);
+		System.arraycopy(src, offset + first, buffer, 0, n - first);
+		// a full store, the writer checks whether the reader sleeps next
+		writePosition.set(write + n);
+		return n;
+	}
+
+	/**
+	 * Copies up to length bytes out of the buffer.
+	 *
+	 * @return the number of bytes read, 0 if the buffer is empty
+	 */
+	public int read(byte[] dst, int offset, int length) {
+		final long read = readPosition.get();
+		final int n = (int) Math.min(length, writePosition.get() - read);
+		if (n <= 0) {
+			return 0;
+		}
+		final int start = (int) (read & mask);
+		final int first = Math.min(n, buffer.length - start);
+		System.arraycopy(buffer, start, dst, offset, first);
+		System.arraycopy(buffer, 0, dst, offset + first, n - first);
+		readPosition.lazySet(read + n);
+		return n;
+	}
+
+	/**
+	 * Drops everything written so far, may only be called by the reader.
+	 */
+	public void skipAll() {
+		readPosition.lazySet(writePosition.get());
+	}
+
+	public int available() {
+		return (int) (writePosition.get() - readPosition.get());
+	}
+
+	public int free() {
+		return buffer.length - available();
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	public long getWritePosition() {
+		return writePosition.get();
+	}
+
+	public long getReadPosition() {
+		return readPosition.get();
+	}
+}
@@ -0,0 +1,199 @@
+package ttsbot.audio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A 16 bit pcm .wav file parsed in place: the RIFF header is read from the
+ * given buffers (e.g. {@code ByteString.asReadOnlyByteBufferList()}) and the
+ * samples stay there, as read-only slices of the data chunk.<br>
+ * Feed it to {@link AudioEngine#play(WavBuffer, float, Runnable)} or copy it
+ * once with {@link #toPcmAudio()}.
+ */
+public class WavBuffer {
+	private static final int RIFF = 0x46464952; // "RIFF" little endian
+	private static final int WAVE = 0x45564157;
+	private static final int FMT = 0x20746d66;
+	private static final int DATA = 0x61746164;
+	private static final int FORMAT_PCM = 1;
+	private static final int FORMAT_EXTENSIBLE = 0xfffe;
+
+	private final AudioFormat format;
+	private final ByteBuffer[] data;
+	private final long dataLength;
+
+	private WavBuffer(AudioFormat format, ByteBuffer[] data, long dataLength) {
+		this.format = format;
+		this.data = data;
+		this.dataLength = dataLength;
+	}
+
+	/**
+	 * Parses the header, the buffers are not copied.
+	 *
+	 * @return null if this is no 16 bit pcm mono / stereo .wav, use
+	 *         {@link javax.sound.sampled.AudioSystem} for those
+	 */
+	public static WavBuffer parse(List<ByteBuffer> buffers) {
+		final Reader r = new Reader(buffers);
+		if (r.length < 12 || r.int32(0) != RIFF || r.int32(8) != WAVE) {
+			return null;
+		}
+		AudioFormat format = null;
+		long pos = 12;
+		while (pos + 8 <= r.length) {
+			final int id = r.int32(pos);
+			final long size = r.int32(pos + 4) & 0xffffffffL;
+			final long body = pos + 8;
+			if (id == FMT && size >= 16) {
+				format = parseFormat(r, body);
+				if (format == null) {
+					return null;
+				}
+			} else if (id == DATA) {
+				if (format == null) {
+					return null;
+				}
+				// streamed wavs may have an unknown size, take what is there
+				long end = Math.min(r.length, body + size);
+				end -= (end - body) % format.getFrameSize();
+				return new WavBuffer(format, r.slice(body, end), end - body);
+			}
+			// chunks are padded to an even size
+			pos = body + size + (size & 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Wraps decoded audio, without copying.
+	 *
+	 * @return null if it is no 16 bit pcm mono / stereo little endian
+	 */
+	public static WavBuffer wrap(PcmAudio audio) {
+		final AudioFormat f = audio.getFormat();
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(f.getEncoding()) || f.getSampleSizeInBits() != 16
+				|| f.isBigEndian() || f.getChannels() < 1 || f.getChannels() > 2) {
+			return null;
+		}
+		final int length = audio.size() - audio.size() % f.getFrameSize();
+		return new WavBuffer(f, new ByteBuffer[] { ByteBuffer.wrap(audio.getData(), 0, length).asReadOnlyBuffer() },
+				length);
+	}
+
+	private static AudioFormat parseFormat(Reader r, long pos) {
+		final int tag = r.int16(pos);
+		final int channels = r.int16(pos + 2);
+		final int sampleRate = r.int32(pos + 4);
+		final int bits = r.int16(pos + 14);
+		if ((tag != FORMAT_PCM && tag != FORMAT_EXTENSIBLE) || bits != 16 || channels < 1 || channels > 2
+				|| sampleRate <= 0) {
+			return null;
+		}
+		return new AudioFormat(sampleRate, 16, channels, true, false);
+	}
+
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the read-only slices of the data chunk, in order.
+	 */
+	ByteBuffer[] getData() {
+		return data;
+	}
+
+	public long getDataLength() {
+		return dataLength;
+	}
+
+	public long getFrames() {
+		return dataLength / format.getFrameSize();
+	}
+
+	public long getDurationMillis() {
+		return (long) (getFrames() * 1000 / format.getFrameRate());
+	}
+
+	/**
+	 * Copies the samples into memory, e.g. for the audio cache.
+	 */
+	public PcmAudio toPcmAudio() {
+		final byte[] pcm = new byte[(int) dataLength];
+		int offset = 0;
+		for (ByteBuffer b : data) {
+			final int n = b.remaining();
+			b.duplicate().get(pcm, offset, n);
+			offset += n;
+		}
+		return new PcmAudio(format, pcm);
+	}
+
+	/**
+	 * Reads little endian values at absolute positions across the buffers.
+	 */
+	private static class Reader {
+		private final List<ByteBuffer> buffers;
+		private final long[] starts;
+		private final long length;
+
+		Reader(List<ByteBuffer> buffers) {
+			this.buffers = buffers;
+			this.starts = new long[buffers.size()];
+			long total = 0;
+			for (int i = 0; i < starts.length; i++) {
+				starts[i] = total;
+				total += buffers.get(i).remaining();
+			}
+			this.length = total;
+		}
+
+		private int indexOf(long pos) {
+			int i = starts.length - 1;
+			while (i > 0 && starts[i] > pos) {
+				i--;
+			}
+			return i;
+		}
+
+		int int8(long pos) {
+			if (pos >= length) {
+				return 0;
+			}
+			final int i = indexOf(pos);
+			final ByteBuffer b = buffers.get(i);
+			return b.get(b.position() + (int) (pos - starts[i])) & 0xff;
+		}
+
+		int int16(long pos) {
+			return int8(pos) | int8(pos + 1) << 8;
+		}
+
+		int int32(long pos) {
+			return int16(pos) | int16(pos + 2) << 16;
+		}
+
+		/**
+		 * Returns read-only views of the range, without copying.
+		 */
+		ByteBuffer[] slice(long from, long to) {
+			final List<ByteBuffer> slices = new ArrayList<>();
+			for (int i = 0; i < starts.length; i++) {
+				final ByteBuffer b = buffers.get(i);
+				final long start = Math.max(from, starts[i]);
+				final long end = Math.min(to, starts[i] + b.remaining());
+				if (start < end) {
+					final ByteBuffer s = b.asReadOnlyBuffer();
+					s.position(b.position() + (int) (start - starts[i]));
+					s.limit(b.position() + (int) (end - starts[i]));
+					slices.add(s.slice());
+				}
+			}
+			return slices.toArray(new ByteBuffer[slices.size()]);
+		}
+	}
+}
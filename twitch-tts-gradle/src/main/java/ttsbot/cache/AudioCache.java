@@ -0,0 +1,125 @@
+package ttsbot.cache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.util.Settings;
+
+/**
+ * Two level cache for synthesized clips: a memory LRU in front of the
+ * persistent {@link DiskAudioStore}.<br>
+ * Clips found on disk are promoted to memory.
+ */
+public class AudioCache {
+	private final static Logger log = LoggerFactory.getLogger(AudioCache.class);
+
+	public static final String ENABLED = "audioCacheEnabled";
+	public static final String MEMORY_BYTES = "audioCacheMemoryMB";
+	public static final String DISK_BYTES = "audioCacheDiskMB";
+	public static final String DISK_DIR = "audioCacheDir";
+
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final MemoryAudioCache memory;
+	private final DiskAudioStore disk;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public AudioCache(MemoryAudioCache memory, DiskAudioStore disk) {
+		this.memory = memory;
+		this.disk = disk;
+	}
+
+	/**
+	 * Creates the cache from settings.properties.
+	 *
+	 * @return null if the cache is disabled
+	 */
+	public static AudioCache fromSettings() {
+		if (!Settings.getBoolean(ENABLED, true)) {
+			return null;
+		}
+		final long mb = 1024 * 1024;
+		MemoryAudioCache memory = new MemoryAudioCache(Settings.getLong(MEMORY_BYTES, 32) * mb);
+
+		DiskAudioStore disk = null;
+		final long diskBytes = Settings.getLong(DISK_BYTES, 256) * mb;
+		if (diskBytes > 0) {
+			try {
+				disk = new DiskAudioStore(Paths.get(Settings.getString(DISK_DIR, "cache/audio")), diskBytes,
+						SEGMENT_SIZE);
+			} catch (IOException e) {
+				log.error("disk audio cache not available", e);
+			}
+		}
+		return new AudioCache(memory, disk);
+	}
+
+	public PcmAudio get(AudioCacheKey key) {
+		PcmAudio audio = memory.get(key);
+		if (audio != null) {
+			memoryHits.incrementAndGet();
+			return audio;
+		}
+		if (disk != null) {
+			audio = disk.get(key);
+			if (audio != null) {
+				diskHits.incrementAndGet();
+				memory.put(key, audio);
+				return audio;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(AudioCacheKey key, PcmAudio audio) {
+		memory.put(key, audio);
+		if (disk != null) {
+			disk.put(key, audio);
+		}
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getMemoryEvictions() {
+		return memory.getEvictions();
+	}
+
+	public long getDiskEvictions() {
+		return disk == null ? 0 : disk.getEvictions();
+	}
+
+	public MemoryAudioCache getMemory() {
+		return memory;
+	}
+
+	public DiskAudioStore getDisk() {
+		return disk;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"audio cache[memory hits:%s disk hits:%s misses:%s | memory:%s clips %s KB evictions:%s | disk:%s clips evictions:%s]",
+				getMemoryHits(), getDiskHits(), getMisses(), memory.getCount(), memory.getBytes() / 1024,
+				getMemoryEvictions(), disk == null ? 0 : disk.getCount(), getDiskEvictions());
+	}
+}
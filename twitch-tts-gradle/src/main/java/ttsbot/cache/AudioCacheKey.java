@@ -0,0 +1,83 @@
+package ttsbot.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Identifies a synthesized clip by everything that influences the audio:
+ * provider, voice, language, gender, speaking rate, pitch and the normalized
+ * text.<br>
+ * Keys are compared by their SHA-256 digest, which is also used as address in
+ * the {@link DiskAudioStore}.
+ */
+public final class AudioCacheKey {
+	public static final int DIGEST_LENGTH = 32;
+
+	private final byte[] digest;
+	private final int hash;
+
+	private AudioCacheKey(byte[] digest) {
+		this.digest = digest;
+		this.hash = Arrays.hashCode(digest);
+	}
+
+	public static AudioCacheKey of(String provider, String voice, String lang, String gender, double rate,
+			double pitch, String text) {
+		final String key = String.join("\u0000", //
+				String.valueOf(provider), String.valueOf(voice), String.valueOf(lang), String.valueOf(gender), //
+				Double.toString(rate), Double.toString(pitch), normalize(text));
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return new AudioCacheKey(md.digest(key.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE has to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static AudioCacheKey fromDigest(byte[] digest) {
+		return new AudioCacheKey(digest.clone());
+	}
+
+	/**
+	 * Collapses whitespace and unicode variants, so 'gg ' and ' gg' share one clip.
+	 */
+	public static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		return Normalizer.normalize(text, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ");
+	}
+
+	byte[] getDigest() {
+		return digest;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AudioCacheKey)) {
+			return false;
+		}
+		return Arrays.equals(digest, ((AudioCacheKey) obj).digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			sb.append(String.format("%02x", digest[i]));
+		}
+		return sb.toString();
+	}
+}
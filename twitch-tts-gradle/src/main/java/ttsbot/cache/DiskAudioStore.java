@@ -0,0 +1,218 @@
+package ttsbot.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.audio.PcmAudio;
+
+/**
+ * Persistent clip store made of a fixed ring of memory-mapped segment
+ * files.<br>
+ * Clips are appended to the current segment. When all segments are full, the
+ * oldest segment is reused and its clips are forgotten. On startup the segments
+ * are scanned to rebuild the index, so cached clips survive restarts.
+ *
+ * <pre>
+ * segment: [long sequence] [record] [record] ... [int 0]
+ * record:  [int magic] [32 byte key digest] [float sampleRate] [int bits]
+ *          [int channels] [byte signed] [byte bigEndian] [int length] [data]
+ * </pre>
+ *
+ * The magic is written last, so a record interrupted by a crash is ignored.
+ */
+public class DiskAudioStore {
+	private final static Logger log = LoggerFactory.getLogger(DiskAudioStore.class);
+
+	private static final int MAGIC = 0x54545331; // TTS1
+	private static final int SEGMENT_HEADER = 8;
+	private static final int RECORD_HEADER = 4 + AudioCacheKey.DIGEST_LENGTH + 4 + 4 + 4 + 1 + 1 + 4;
+
+	private final int segmentSize;
+	private final List<Segment> segments = new ArrayList<>();
+	private final Map<AudioCacheKey, Location> index = new HashMap<>();
+	private Segment current;
+	private long evictions = 0;
+
+	/**
+	 * @param maxBytes    total size of all segment files
+	 * @param segmentSize size of a single segment file
+	 */
+	public DiskAudioStore(Path dir, long maxBytes, int segmentSize) throws IOException {
+		this.segmentSize = segmentSize;
+		Files.createDirectories(dir);
+
+		final int segmentCount = (int) Math.max(2, maxBytes / segmentSize);
+		for (int i = 0; i < segmentCount; i++) {
+			segments.add(new Segment(dir.resolve(String.format("segment-%03d.dat", i)), segmentSize));
+		}
+
+		// continue writing after the newest segment
+		segments.sort(Comparator.comparingLong(s -> s.sequence));
+		for (Segment s : segments) {
+			s.scan(index);
+		}
+		current = segments.get(segments.size() - 1);
+		if (current.sequence == 0) {
+			current.reset(1);
+		}
+		log.info("disk audio cache: {} clips in {} segments of {} MB", index.size(), segmentCount,
+				segmentSize / (1024 * 1024));
+	}
+
+	public synchronized PcmAudio get(AudioCacheKey key) {
+		Location location = index.get(key);
+		if (location == null) {
+			return null;
+		}
+		ByteBuffer buffer = location.segment.buffer.duplicate();
+		buffer.position(location.dataOffset);
+		byte[] data = new byte[location.length];
+		buffer.get(data);
+		return new PcmAudio(location.format, data);
+	}
+
+	/**
+	 * Appends the clip, reusing the oldest segment if the current one is full.
+	 * Clips larger than a segment are not stored.
+	 */
+	public synchronized void put(AudioCacheKey key, PcmAudio audio) {
+		final int recordSize = RECORD_HEADER + audio.size();
+		if (SEGMENT_HEADER + recordSize + 4 > segmentSize || index.containsKey(key)) {
+			return;
+		}
+		if (current.writePosition + recordSize + 4 > segmentSize) {
+			rollSegment();
+		}
+		index.put(key, current.append(key, audio));
+	}
+
+	private void rollSegment() {
+		final long nextSequence = current.sequence + 1;
+		// segments are sorted oldest first
+		Segment oldest = segments.remove(0);
+		Iterator<Location> it = index.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().segment == oldest) {
+				it.remove();
+				evictions++;
+			}
+		}
+		oldest.reset(nextSequence);
+		segments.add(oldest);
+		current = oldest;
+	}
+
+	public synchronized int getCount() {
+		return index.size();
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void flush() {
+		for (Segment s : segments) {
+			s.buffer.force();
+		}
+	}
+
+	private static class Location {
+		final Segment segment;
+		final int dataOffset;
+		final int length;
+		final AudioFormat format;
+
+		Location(Segment segment, int dataOffset, int length, AudioFormat format) {
+			this.segment = segment;
+			this.dataOffset = dataOffset;
+			this.length = length;
+			this.format = format;
+		}
+	}
+
+	private static class Segment {
+		final MappedByteBuffer buffer;
+		long sequence;
+		int writePosition;
+
+		Segment(Path file, int size) throws IOException {
+			try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+				if (raf.length() != size) {
+					// new segment, or the segment size has changed
+					raf.setLength(0);
+					raf.setLength(size);
+				}
+				// the mapping stays valid after the channel is closed
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			sequence = buffer.getLong(0);
+			writePosition = SEGMENT_HEADER;
+		}
+
+		/**
+		 * Reads all complete records into the index.
+		 */
+		void scan(Map<AudioCacheKey, Location> index) {
+			int pos = SEGMENT_HEADER;
+			while (sequence > 0 && pos + RECORD_HEADER <= buffer.capacity() && buffer.getInt(pos) == MAGIC) {
+				byte[] digest = new byte[AudioCacheKey.DIGEST_LENGTH];
+				ByteBuffer b = buffer.duplicate();
+				b.position(pos + 4);
+				b.get(digest);
+				AudioFormat format = new AudioFormat(b.getFloat(), b.getInt(), b.getInt(), b.get() != 0, b.get() != 0);
+				int length = b.getInt();
+				if (length < 0 || b.position() + length > buffer.capacity()) {
+					break;
+				}
+				index.put(AudioCacheKey.fromDigest(digest), new Location(this, b.position(), length, format));
+				pos = b.position() + length;
+			}
+			writePosition = pos;
+		}
+
+		void reset(long newSequence) {
+			sequence = newSequence;
+			buffer.putLong(0, newSequence);
+			buffer.putInt(SEGMENT_HEADER, 0);
+			writePosition = SEGMENT_HEADER;
+		}
+
+		Location append(AudioCacheKey key, PcmAudio audio) {
+			final int start = writePosition;
+			final AudioFormat format = audio.getFormat();
+			ByteBuffer b = buffer.duplicate();
+			b.position(start + 4);
+			b.put(key.getDigest());
+			b.putFloat(format.getSampleRate());
+			b.putInt(format.getSampleSizeInBits());
+			b.putInt(format.getChannels());
+			b.put((byte) (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ? 1 : 0));
+			b.put((byte) (format.isBigEndian() ? 1 : 0));
+			b.putInt(audio.size());
+			final int dataOffset = b.position();
+			b.put(audio.getData());
+			writePosition = b.position();
+
+			// end marker first, then the magic which makes the record valid
+			buffer.putInt(writePosition, 0);
+			buffer.putInt(start, MAGIC);
+			return new Location(this, dataOffset, audio.size(), format);
+		}
+	}
+}
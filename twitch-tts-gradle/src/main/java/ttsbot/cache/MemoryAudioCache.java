@@ -0,0 +1,69 @@
+package ttsbot.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ttsbot.audio.PcmAudio;
+
+/**
+ * In-memory LRU cache of clips, bounded by the total size of the audio data.
+ */
+public class MemoryAudioCache {
+	private final long maxBytes;
+	private final LinkedHashMap<AudioCacheKey, PcmAudio> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long bytes = 0;
+	private long evictions = 0;
+
+	public MemoryAudioCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized PcmAudio get(AudioCacheKey key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Adds the clip and evicts the least recently used clips until the cache fits
+	 * into its size limit again. Clips larger than the limit are not cached.
+	 */
+	public synchronized void put(AudioCacheKey key, PcmAudio audio) {
+		if (audio.size() > maxBytes) {
+			return;
+		}
+		PcmAudio previous = entries.put(key, audio);
+		if (previous != null) {
+			bytes -= previous.size();
+		}
+		bytes += audio.size();
+
+		Iterator<Map.Entry<AudioCacheKey, PcmAudio>> it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<AudioCacheKey, PcmAudio> eldest = it.next();
+			bytes -= eldest.getValue().size();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+}
@@ -0,0 +1,245 @@
+package ttsbot.media;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.util.Settings;
+
+/**
+ * In memory index of the media directory, maps a media command ('!airhorn')
+ * to its file without touching the file system.<br>
+ * The index is kept current by a {@link WatchService}. Small wav / ogg / mp3
+ * files are decoded once and kept in memory, so they play without VLC.
+ */
+public class MediaLibrary {
+	private final static Logger log = LoggerFactory.getLogger(MediaLibrary.class);
+
+	public static final String DIR = "mediaDir";
+	public static final String PRELOAD_MAX_KB = "mediaPreloadMaxKB";
+
+	/** if a name exists with several extensions, the first one wins */
+	public static final List<String> EXTENSIONS = Arrays.asList("mp3", "mp4", "wmv", "avi", "mpg", "wav", "ogg",
+			"gif", "png", "jpg", "bmp");
+	private static final List<String> PRELOAD_EXTENSIONS = Arrays.asList("wav", "ogg", "mp3");
+
+	private final Path dir;
+	private final long preloadMaxBytes;
+
+	// lower case file name -> path, all media files
+	private final Map<String, Path> files = new ConcurrentHashMap<>();
+	// lower case name without extension -> resolved file
+	private final Map<String, MediaFile> index = new ConcurrentHashMap<>();
+
+	private WatchService watchService;
+
+	public MediaLibrary(Path dir, long preloadMaxBytes) {
+		this.dir = dir;
+		this.preloadMaxBytes = preloadMaxBytes;
+	}
+
+	/**
+	 * Creates the library from settings.properties.
+	 */
+	public static MediaLibrary fromSettings() {
+		return new MediaLibrary(Paths.get(Settings.getString(DIR, "media")),
+				Settings.getLong(PRELOAD_MAX_KB, 512) * 1024);
+	}
+
+	/**
+	 * Scans the directory and starts watching it.
+	 */
+	public synchronized void start() {
+		if (!Files.isDirectory(dir)) {
+			log.info("media directory {} not found, media commands disabled", dir.toAbsolutePath());
+			return;
+		}
+		try {
+			watchService = dir.getFileSystem().newWatchService();
+			dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			log.error("could not watch media directory, changes need a restart", e);
+		}
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path p : stream) {
+				fileChanged(p.getFileName());
+			}
+		} catch (IOException e) {
+			log.error("could not read media directory", e);
+		}
+		log.info("media library: {} commands from {}", index.size(), dir.toAbsolutePath());
+
+		if (watchService != null) {
+			Thread t = new Thread(this::watch, "media-watch");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	public synchronized void stop() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Returns the file for the media name (command without '!'), or null.
+	 */
+	public MediaFile resolve(String name) {
+		return name == null ? null : index.get(name.toLowerCase());
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	private void watch() {
+		final WatchService ws = watchService;
+		try {
+			while (true) {
+				WatchKey key = ws.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						rescan();
+					} else {
+						fileChanged((Path) event.context());
+					}
+				}
+				if (!key.reset()) {
+					log.warn("media directory {} no longer accessible", dir);
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private synchronized void rescan() {
+		files.clear();
+		index.clear();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path p : stream) {
+				fileChanged(p.getFileName());
+			}
+		} catch (IOException e) {
+			log.error("could not read media directory", e);
+		}
+	}
+
+	/**
+	 * Updates the index for the name of a created, modified or deleted file.
+	 */
+	private synchronized void fileChanged(Path fileName) {
+		final String lower = fileName.toString().toLowerCase();
+		final int dot = lower.lastIndexOf('.');
+		if (dot <= 0 || !EXTENSIONS.contains(lower.substring(dot + 1))) {
+			return;
+		}
+		final Path path = dir.resolve(fileName);
+		if (Files.isRegularFile(path)) {
+			files.put(lower, path);
+		} else {
+			files.remove(lower);
+		}
+
+		final String name = lower.substring(0, dot);
+		for (String ext : EXTENSIONS) {
+			Path p = files.get(name + "." + ext);
+			if (p != null) {
+				index.put(name, new MediaFile(name, p, preload(p, ext)));
+				return;
+			}
+		}
+		index.remove(name);
+	}
+
+	private PcmAudio preload(Path path, String ext) {
+		if (!PRELOAD_EXTENSIONS.contains(ext)) {
+			return null;
+		}
+		try {
+			if (Files.size(path) > preloadMaxBytes) {
+				return null;
+			}
+			return decode(path);
+		} catch (Exception e) {
+			log.info("could not preload {}, played with VLC: {}", path.getFileName(), e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the file into 16 bit signed pcm.
+	 */
+	static PcmAudio decode(Path path) throws Exception {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+			return PcmAudio.decode(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("media library[%s commands, %s preloaded]", index.size(),
+				index.values().stream().filter(m -> m.getClip() != null).count());
+	}
+
+	/**
+	 * A resolved media file.
+	 */
+	public static class MediaFile {
+		private final String name;
+		private final Path path;
+		private final PcmAudio clip;
+
+		MediaFile(String name, Path path, PcmAudio clip) {
+			this.name = name;
+			this.path = path;
+			this.clip = clip;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns the decoded audio, null if the file is not preloaded.
+		 */
+		public PcmAudio getClip() {
+			return clip;
+		}
+
+		@Override
+		public String toString() {
+			return path.toString() + (clip == null ? "" : " (preloaded)");
+		}
+	}
+}
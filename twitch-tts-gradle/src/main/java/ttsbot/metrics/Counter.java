@@ -0,0 +1,54 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Monotonic count, either incremented directly or read from an existing
+ * counter of a component (e.g. the dropped items of a pipeline stage).
+ */
+public class Counter extends Metric implements CounterMXBean {
+	private final LongAdder count = new LongAdder();
+	private final LongSupplier source;
+
+	public Counter(String name, String... labels) {
+		this(name, null, labels);
+	}
+
+	/**
+	 * @param source read on export, null to count with {@link #increment()}
+	 */
+	public Counter(String name, LongSupplier source, String... labels) {
+		super(name, labels);
+		this.source = source;
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long n) {
+		count.add(n);
+	}
+
+	@Override
+	public long getCount() {
+		return source == null ? count.sum() : source.getAsLong();
+	}
+
+	@Override
+	public long getValue() {
+		return getCount();
+	}
+
+	@Override
+	public String getType() {
+		return "counter";
+	}
+
+	@Override
+	void writeSamples(String exportName, Appendable out) throws IOException {
+		writeSample(out, exportName, null, null, getCount());
+	}
+}
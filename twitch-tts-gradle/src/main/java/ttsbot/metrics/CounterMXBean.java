@@ -0,0 +1,8 @@
+package ttsbot.metrics;
+
+/**
+ * JMX view of a {@link Counter}.
+ */
+public interface CounterMXBean {
+	long getCount();
+}
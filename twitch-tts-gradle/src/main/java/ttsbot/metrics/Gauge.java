@@ -0,0 +1,31 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+/**
+ * Current value of a component, e.g. a queue depth, read on export.
+ */
+public class Gauge extends Metric implements GaugeMXBean {
+	private final LongSupplier source;
+
+	public Gauge(String name, LongSupplier source, String... labels) {
+		super(name, labels);
+		this.source = source;
+	}
+
+	@Override
+	public long getValue() {
+		return source.getAsLong();
+	}
+
+	@Override
+	public String getType() {
+		return "gauge";
+	}
+
+	@Override
+	void writeSamples(String exportName, Appendable out) throws IOException {
+		writeSample(out, exportName, null, null, getValue());
+	}
+}
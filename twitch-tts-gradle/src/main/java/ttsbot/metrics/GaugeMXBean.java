@@ -0,0 +1,8 @@
+package ttsbot.metrics;
+
+/**
+ * JMX view of a {@link Gauge}.
+ */
+public interface GaugeMXBean {
+	long getValue();
+}
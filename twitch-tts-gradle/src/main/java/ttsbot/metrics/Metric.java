@@ -0,0 +1,160 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Base of the metrics in the {@link Metrics} registry: a name plus label
+ * pairs, e.g. 'synthesis_seconds' provider=google voice=de-DE-Wavenet-C.
+ */
+public abstract class Metric {
+	private final String name;
+	private final String[] labels;
+	private final String key;
+
+	/**
+	 * @param labels name, value, name, value, ...
+	 */
+	protected Metric(String name, String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("labels are name value pairs: " + name);
+		}
+		this.name = name;
+		this.labels = labels.clone();
+		this.key = key(name, labels);
+	}
+
+	/**
+	 * Identifies the metric, the series name of the Prometheus format.
+	 */
+	static String key(String name, String... labels) {
+		final StringBuilder sb = new StringBuilder(name);
+		appendLabels(sb, labels, null, null);
+		return sb.toString();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the label value, null if the metric has no such label.
+	 */
+	public String getLabel(String labelName) {
+		for (int i = 0; i < labels.length; i += 2) {
+			if (labels[i].equals(labelName)) {
+				return labels[i + 1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the labels as 'name=value, name=value' for display.
+	 */
+	public String getLabelText() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(labels[i]).append('=').append(labels[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Prometheus metric type.
+	 */
+	public abstract String getType();
+
+	/**
+	 * Main value for display: the count of timers and counters, the value of
+	 * gauges.
+	 */
+	public abstract long getValue();
+
+	/**
+	 * Writes the samples of this metric in the Prometheus text format.
+	 *
+	 * @param exportName name including the prefix
+	 */
+	abstract void writeSamples(String exportName, Appendable out) throws IOException;
+
+	/**
+	 * Writes one sample line, the extra label may be null.
+	 */
+	protected void writeSample(Appendable out, String exportName, String extraLabel, String extraValue,
+			Object value) throws IOException {
+		final StringBuilder sb = new StringBuilder(exportName);
+		appendLabels(sb, labels, extraLabel, extraValue);
+		out.append(sb).append(' ').append(String.valueOf(value)).append('\n');
+	}
+
+	private static void appendLabels(StringBuilder sb, String[] labels, String extraLabel, String extraValue) {
+		sb.append('{');
+		for (int i = 0; i < labels.length; i += 2) {
+			appendLabel(sb, labels[i], labels[i + 1]);
+		}
+		if (extraLabel != null) {
+			appendLabel(sb, extraLabel, extraValue);
+		}
+		if (sb.charAt(sb.length() - 1) == ',') {
+			sb.setLength(sb.length() - 1);
+		}
+		sb.append('}');
+	}
+
+	private static void appendLabel(StringBuilder sb, String labelName, String value) {
+		sb.append(labelName).append("=\"");
+		final String v = value == null ? "" : value;
+		for (int i = 0; i < v.length(); i++) {
+			final char c = v.charAt(i);
+			if (c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append("\",");
+	}
+
+	/**
+	 * JMX name, e.g. 'ttsbot:type=Timer,name=synthesis_seconds,provider=google'.
+	 */
+	ObjectName getObjectName(String domain) throws MalformedObjectNameException {
+		final Hashtable<String, String> properties = new Hashtable<>();
+		properties.put("type", getClass().getSimpleName());
+		properties.put("name", name);
+		for (int i = 0; i < labels.length; i += 2) {
+			properties.put(labels[i], quoteIfNeeded(labels[i + 1]));
+		}
+		return new ObjectName(domain, properties);
+	}
+
+	private static String quoteIfNeeded(String value) {
+		if (value == null || value.isEmpty()) {
+			return "\"\"";
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (",=:\"*?\n".indexOf(value.charAt(i)) >= 0) {
+				return ObjectName.quote(value);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+}
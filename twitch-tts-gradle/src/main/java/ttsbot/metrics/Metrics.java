@@ -0,0 +1,163 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.util.Settings;
+
+/**
+ * Registry of the timers, counters and gauges of the bot.<br>
+ * A metric is identified by its name and labels, e.g. 'synthesis_seconds'
+ * provider=google. Every metric is registered as MXBean under 'ttsbot:type=..'
+ * and can be exported in the Prometheus text format, see
+ * {@link MetricsHttpServer}.<br>
+ * The lookup is meant for setup: callers keep the returned metric and record
+ * into it directly.
+ */
+public class Metrics {
+	private final static Logger log = LoggerFactory.getLogger(Metrics.class);
+
+	public static final String JMX_ENABLED = "metricsJmxEnabled";
+	public static final String DOMAIN = "ttsbot";
+	/** prefix of the exported names */
+	public static final String PREFIX = "ttsbot_";
+
+	private static Metrics instance;
+
+	private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+	private final MBeanServer mbeanServer;
+
+	/**
+	 * @param mbeanServer null to skip the JMX registration
+	 */
+	public Metrics(MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	/**
+	 * Returns the shared registry, registered at the platform MBean server unless
+	 * disabled in settings.properties.
+	 */
+	public static synchronized Metrics get() {
+		if (instance == null) {
+			instance = new Metrics(
+					Settings.getBoolean(JMX_ENABLED, true) ? ManagementFactory.getPlatformMBeanServer() : null);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the timer, creates it on first use.
+	 *
+	 * @param labels name, value, name, value, ...
+	 */
+	public Timer timer(String name, String... labels) {
+		return getOrCreate(Timer.class, name, labels, () -> new Timer(name, labels));
+	}
+
+	/**
+	 * Returns the counter, creates it on first use.
+	 */
+	public Counter counter(String name, String... labels) {
+		return getOrCreate(Counter.class, name, labels, () -> new Counter(name, labels));
+	}
+
+	/**
+	 * Registers a counter which is read from the source, replaces an existing
+	 * one.
+	 */
+	public Counter counter(String name, LongSupplier source, String... labels) {
+		return replace(new Counter(name, source, labels));
+	}
+
+	/**
+	 * Registers a gauge which is read from the source, replaces an existing one.
+	 */
+	public Gauge gauge(String name, LongSupplier source, String... labels) {
+		return replace(new Gauge(name, source, labels));
+	}
+
+	private <T extends Metric> T getOrCreate(Class<T> type, String name, String[] labels, Supplier<T> factory) {
+		final Metric metric = metrics.computeIfAbsent(Metric.key(name, labels), k -> register(factory.get()));
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException(metric + " is a " + metric.getType());
+		}
+		return type.cast(metric);
+	}
+
+	private synchronized <T extends Metric> T replace(T metric) {
+		final Metric old = metrics.put(metric.getKey(), metric);
+		if (old != null) {
+			unregister(old);
+		}
+		return register(metric);
+	}
+
+	private <T extends Metric> T register(T metric) {
+		if (mbeanServer == null) {
+			return metric;
+		}
+		try {
+			final ObjectName name = metric.getObjectName(DOMAIN);
+			if (mbeanServer.isRegistered(name)) {
+				mbeanServer.unregisterMBean(name);
+			}
+			mbeanServer.registerMBean(metric, name);
+		} catch (JMException e) {
+			log.warn("could not register {} at JMX: {}", metric, e.toString());
+		}
+		return metric;
+	}
+
+	private void unregister(Metric metric) {
+		if (mbeanServer == null) {
+			return;
+		}
+		try {
+			mbeanServer.unregisterMBean(metric.getObjectName(DOMAIN));
+		} catch (JMException e) {
+			// not registered
+		}
+	}
+
+	/**
+	 * Returns all metrics, sorted by name and labels.
+	 */
+	public List<Metric> getMetrics() {
+		return new ArrayList<>(new TreeMap<>(metrics).values());
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text format (version 0.0.4).
+	 */
+	public void writePrometheus(Appendable out) throws IOException {
+		String lastName = null;
+		for (Metric m : getMetrics()) {
+			final String exportName = PREFIX + m.getName();
+			if (!m.getName().equals(lastName)) {
+				out.append("# TYPE ").append(exportName).append(' ').append(m.getType()).append('\n');
+				lastName = m.getName();
+			}
+			m.writeSamples(exportName, out);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "metrics[" + metrics.size() + "]";
+	}
+}
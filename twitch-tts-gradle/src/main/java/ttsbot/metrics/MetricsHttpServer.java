@@ -0,0 +1,105 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Serves the {@link Metrics} in the Prometheus text format on
+ * http://localhost:port/metrics.<br>
+ * Bound to the loopback address only, the metrics are not meant to leave the
+ * streaming pc.
+ */
+public class MetricsHttpServer {
+	private final static Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+	public static final String PORT = "metricsHttpPort";
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Metrics metrics;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * @param port 0 for any free port
+	 */
+	public MetricsHttpServer(Metrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newSingleThreadExecutor(Utils.namedThreadFactory("metrics-http"));
+		server.setExecutor(executor);
+		server.createContext("/metrics", this::handle);
+	}
+
+	/**
+	 * Starts the server for the shared metrics on the port from
+	 * settings.properties.
+	 *
+	 * @return null if disabled (port 0) or the port is in use
+	 */
+	public static MetricsHttpServer startFromSettings() {
+		final int port = Settings.getInt(PORT, 9404);
+		if (port <= 0) {
+			return null;
+		}
+		try {
+			MetricsHttpServer server = new MetricsHttpServer(Metrics.get(), port).start();
+			log.info("metrics on http://localhost:{}/metrics", server.getPort());
+			return server;
+		} catch (IOException e) {
+			log.warn("could not start metrics server on port {}: {}", port, e.toString());
+			return null;
+		}
+	}
+
+	public MetricsHttpServer start() {
+		server.start();
+		return this;
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			final String method = exchange.getRequestMethod();
+			if (!"GET".equals(method) && !"HEAD".equals(method)) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			final StringBuilder sb = new StringBuilder(8192);
+			metrics.writePrometheus(sb);
+			final byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if ("HEAD".equals(method)) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package ttsbot.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Distribution of measured durations.<br>
+ * Values are kept in microseconds in an HdrHistogram with 3 significant
+ * digits, so recording is a few atomic increments and percentiles are exact
+ * enough without keeping the samples. The distribution covers the whole run.
+ */
+public class Timer extends Metric implements TimerMXBean {
+	/** exported quantiles */
+	static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final Histogram micros = new ConcurrentHistogram(3);
+	private final LongAdder sumNanos = new LongAdder();
+
+	public Timer(String name, String... labels) {
+		super(name, labels);
+	}
+
+	/**
+	 * Records the time elapsed since startNanos (from {@link System#nanoTime()}).
+	 *
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long recordSince(long startNanos) {
+		final long elapsed = System.nanoTime() - startNanos;
+		record(elapsed);
+		return elapsed;
+	}
+
+	public void record(long nanos) {
+		final long n = Math.max(0, nanos);
+		micros.recordValue(TimeUnit.NANOSECONDS.toMicros(n));
+		sumNanos.add(n);
+	}
+
+	@Override
+	public long getCount() {
+		return micros.getTotalCount();
+	}
+
+	@Override
+	public long getValue() {
+		return getCount();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		final long count = getCount();
+		return count == 0 ? 0 : toMillis(sumNanos.sum()) / count;
+	}
+
+	/**
+	 * @param percentile 0 .. 100
+	 */
+	public double getPercentileMillis(double percentile) {
+		return micros.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return getPercentileMillis(50);
+	}
+
+	@Override
+	public double getP90Millis() {
+		return getPercentileMillis(90);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return getPercentileMillis(99);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return micros.getMaxValue() / 1000.0;
+	}
+
+	@Override
+	public String getType() {
+		return "summary";
+	}
+
+	@Override
+	void writeSamples(String exportName, Appendable out) throws IOException {
+		for (double q : QUANTILES) {
+			writeSample(out, exportName, "quantile", String.valueOf(q), getPercentileMillis(q * 100) / 1000);
+		}
+		writeSample(out, exportName + "_sum", null, null, sumNanos.sum() / 1e9);
+		writeSample(out, exportName + "_count", null, null, getCount());
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[count:%s avg:%.1fms p50:%.1fms p99:%.1fms max:%.1fms]", getKey(), getCount(),
+				getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+	}
+}
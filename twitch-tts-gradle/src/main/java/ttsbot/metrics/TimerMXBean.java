@@ -0,0 +1,18 @@
+package ttsbot.metrics;
+
+/**
+ * JMX view of a {@link Timer}, durations in milliseconds.
+ */
+public interface TimerMXBean {
+	long getCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+}
@@ -0,0 +1,27 @@
+package ttsbot.speech;
+
+/**
+ * What a {@link PipelineStage} does when its queue is full.
+ */
+public enum BackpressurePolicy {
+	/** discard the oldest queued item to make room for the new one */
+	DROP_OLDEST,
+	/** discard the new item, keep the queue as it is */
+	DROP_NEWEST,
+	/** wait until there is room in the queue */
+	BLOCK;
+
+	/**
+	 * Parses a policy name like 'drop-oldest' or 'DROP_OLDEST'.
+	 */
+	public static BackpressurePolicy parse(String value, BackpressurePolicy defaultValue) {
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return valueOf(value.trim().toUpperCase().replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package ttsbot.speech;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling a provider which keeps failing.<br>
+ * The outcomes of the last calls are kept in a ring; when the failure rate
+ * reaches the threshold the breaker opens and rejects calls. After the open
+ * time a single trial call is let through (half open): success closes the
+ * breaker, failure opens it again.
+ */
+public class CircuitBreaker {
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN;
+	}
+
+	private final boolean[] failed;
+	private final int minCalls;
+	private final double failureRate;
+	private final long openNanos;
+
+	// guarded by this
+	private int size;
+	private int next;
+	private int failures;
+	private State state = State.CLOSED;
+	private long openedAt;
+	private boolean trialRunning;
+
+	/**
+	 * @param window      number of recent calls the failure rate is computed on
+	 * @param minCalls    calls needed before the breaker can open
+	 * @param failureRate 0 .. 1, e.g. 0.5 opens at half the calls failing
+	 * @param openMillis  time calls are rejected before the trial call
+	 */
+	public CircuitBreaker(int window, int minCalls, double failureRate, long openMillis) {
+		this.failed = new boolean[Math.max(1, window)];
+		this.minCalls = Math.max(1, Math.min(minCalls, failed.length));
+		this.failureRate = failureRate;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+
+	/**
+	 * Returns true if a call may be made, the caller has to report its outcome.
+	 * In half open state only the first caller gets the trial.
+	 *
+	 * @param now {@link System#nanoTime()}
+	 */
+	public synchronized boolean tryAcquire(long now) {
+		switch (state) {
+		case OPEN:
+			if (now - openedAt < openNanos) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			trialRunning = true;
+			return true;
+		case HALF_OPEN:
+			if (trialRunning) {
+				return false;
+			}
+			trialRunning = true;
+			return true;
+		case CLOSED:
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Returns true if {@link #tryAcquire(long)} would let a call through, without
+	 * taking the trial.
+	 */
+	public synchronized boolean isCallPermitted(long now) {
+		switch (state) {
+		case OPEN:
+			return now - openedAt >= openNanos;
+		case HALF_OPEN:
+			return !trialRunning;
+		case CLOSED:
+		default:
+			return true;
+		}
+	}
+
+	public synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			reset();
+		} else if (state == State.CLOSED) {
+			record(false);
+		}
+	}
+
+	public synchronized void onFailure(long now) {
+		if (state == State.HALF_OPEN) {
+			open(now);
+		} else if (state == State.CLOSED) {
+			record(true);
+			if (size >= minCalls && failures >= failureRate * size) {
+				open(now);
+			}
+		}
+	}
+
+	/**
+	 * Reports a call which was abandoned, e.g. the loser of a hedged request. Its
+	 * outcome says nothing about the provider, a half open circuit lets the next
+	 * trial through.
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN) {
+			trialRunning = false;
+		}
+	}
+
+	private void record(boolean failure) {
+		if (size == failed.length) {
+			if (failed[next]) {
+				failures--;
+			}
+		} else {
+			size++;
+		}
+		failed[next] = failure;
+		if (failure) {
+			failures++;
+		}
+		next = (next + 1) % failed.length;
+	}
+
+	private void open(long now) {
+		state = State.OPEN;
+		openedAt = now;
+		trialRunning = false;
+	}
+
+	private void reset() {
+		state = State.CLOSED;
+		trialRunning = false;
+		size = 0;
+		next = 0;
+		failures = 0;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s[failures:%s/%s]", state, failures, size);
+	}
+}
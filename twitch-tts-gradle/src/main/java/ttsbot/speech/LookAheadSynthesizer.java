@@ -0,0 +1,185 @@
+package ttsbot.speech;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.cache.AudioCache;
+import ttsbot.cache.AudioCacheKey;
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Metrics;
+import ttsbot.speech.ProviderRouter.RoutedAudio;
+import ttsbot.tts.TTSProvider;
+import ttsbot.util.Utils;
+
+/**
+ * Synthesizes up to N queued messages in parallel while the current message is
+ * playing.<br>
+ * Each submitted request occupies a slot until the player has picked up its
+ * audio ({@link #await}) or the request has been discarded ({@link #release}),
+ * so at most N clips are synthesized or waiting in memory at any time. A
+ * cancelled request interrupts its synthesis, which cancels the provider
+ * call.<br>
+ * {@link SpeechPriority#IMMEDIATE} requests do not wait for a slot, they are
+ * synthesized on a spare thread right away.<br>
+ * Clips are looked up in the {@link AudioCache} first, so repeated phrases are
+ * synthesized only once. Synthesis itself goes through the
+ * {@link ProviderRouter}, which falls back to another provider if the
+ * requested one fails.
+ */
+public class LookAheadSynthesizer {
+	private final int lookAhead;
+	private final Semaphore slots;
+	// request -> synthesis task
+	private final Map<SpeechRequest, Future<?>> inFlight = new ConcurrentHashMap<>();
+	// requests holding a slot
+	private final Set<SpeechRequest> slotted = ConcurrentHashMap.newKeySet();
+	private final ExecutorService executor;
+	private final AudioCache cache;
+	private final ProviderRouter router;
+	private final Counter cacheHits = Metrics.get().counter("audio_cache_requests_total", "result", "hit");
+	private final Counter cacheMisses = Metrics.get().counter("audio_cache_requests_total", "result", "miss");
+
+	/**
+	 * @param cache may be null
+	 */
+	public LookAheadSynthesizer(int lookAhead, AudioCache cache, ProviderRouter router) {
+		this.cache = cache;
+		this.router = router;
+		this.lookAhead = Math.max(1, lookAhead);
+		this.slots = new Semaphore(this.lookAhead);
+		// one spare thread for immediate requests
+		this.executor = Executors.newFixedThreadPool(this.lookAhead + 1, Utils.namedThreadFactory("tts-synth"));
+	}
+
+	/**
+	 * Starts synthesizing the request in the background, waits for a free slot
+	 * first unless the request is immediate.
+	 */
+	public void submit(SpeechRequest request) throws InterruptedException {
+		if (request.getPriority() != SpeechPriority.IMMEDIATE) {
+			slots.acquire();
+			slotted.add(request);
+		}
+
+		CompletableFuture<PcmAudio> audio = new CompletableFuture<>();
+		request.setAudio(audio);
+		final FutureTask<Void> task = new FutureTask<>(() -> {
+			if (request.isCancelled()) {
+				audio.cancel(false);
+				return;
+			}
+			try {
+				audio.complete(synthesize(request));
+			} catch (Throwable e) {
+				audio.completeExceptionally(e);
+			}
+		}, null);
+		// registered before it runs, so a cancel right after the start finds it
+		inFlight.put(request, task);
+		executor.execute(task);
+	}
+
+	private PcmAudio synthesize(SpeechRequest request) throws Exception {
+		final TTSProvider provider = request.getProvider();
+		final AudioCacheKey key = cache == null ? null : cacheKey(request);
+		if (key != null) {
+			PcmAudio cached = cache.get(key);
+			if (cached != null) {
+				cacheHits.increment();
+				return cached;
+			}
+			cacheMisses.increment();
+		}
+
+		final RoutedAudio routed = router.synthesize(request);
+		final PcmAudio audio = routed.getAudio();
+		// audio of a fallback provider does not match the key
+		if (key != null && audio != null && routed.getProvider() == provider) {
+			cache.put(key, audio);
+		}
+		return audio;
+	}
+
+	public static AudioCacheKey cacheKey(SpeechRequest request) {
+		final TTSProvider p = request.getProvider();
+		final String lang = request.getLangOverride() != null ? request.getLangOverride() : p.getLang();
+		final String gender = request.getGenderOverride() != null ? request.getGenderOverride().name()
+				: p.getGender();
+		return AudioCacheKey.of(p.getName(), p.getVoice(), lang, gender, p.getSpeakingRate(), p.getPitch(),
+				request.getText());
+	}
+
+	public AudioCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Waits until the audio of the request is ready and frees its slot.
+	 *
+	 * @return the audio, or null if the provider can only play directly
+	 */
+	public PcmAudio await(SpeechRequest request) throws Exception {
+		try {
+			return request.getAudio().get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			release(request);
+		}
+	}
+
+	/**
+	 * Frees the slot of a request which will not be played.
+	 */
+	public void release(SpeechRequest request) {
+		inFlight.remove(request);
+		if (slotted.remove(request)) {
+			slots.release();
+		}
+	}
+
+	/**
+	 * Stops the synthesis of a request which will not be played: interrupts the
+	 * provider call and frees the slot.
+	 */
+	public void cancel(SpeechRequest request) {
+		// before the interrupt, else the interrupted call completes it with an error
+		final CompletableFuture<PcmAudio> audio = request.getAudio();
+		if (audio != null) {
+			audio.cancel(true);
+		}
+		final Future<?> task = inFlight.get(request);
+		if (task != null) {
+			task.cancel(true);
+		}
+		release(request);
+	}
+
+	public int getLookAhead() {
+		return lookAhead;
+	}
+
+	/**
+	 * Returns the number of requests which are being synthesized or wait for
+	 * playback.
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
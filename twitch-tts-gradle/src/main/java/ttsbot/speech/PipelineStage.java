@@ -0,0 +1,344 @@
+package ttsbot.speech;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.util.Utils;
+
+/**
+ * A bounded queue with its own worker thread.<br>
+ * Items are handed to the consumer one by one in queue order. When the queue
+ * is full, the {@link BackpressurePolicy} decides what happens to new items.<br>
+ * A stage may have several lanes, e.g. one per {@link SpeechPriority}: the
+ * worker always takes the oldest item of the first non empty lane. Each lane
+ * has its own capacity, so a flood of items in one lane neither drops nor
+ * blocks the items of another.
+ */
+public class PipelineStage<T> {
+	private final static Logger log = LoggerFactory.getLogger(PipelineStage.class);
+
+	private final String name;
+	private final int capacity;
+	private final BackpressurePolicy policy;
+	private final long blockTimeoutMillis;
+	private final Consumer<T> consumer;
+	private final ToIntFunction<? super T> laneOf;
+
+	// one fifo per lane, guarded by the lock
+	private final List<ArrayDeque<T>> lanes;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private int size = 0;
+	private boolean paused = false;
+
+	private final ExecutorService executor;
+	private volatile boolean running = false;
+	private volatile Consumer<T> discardListener = t -> {
+	};
+
+	// metrics
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	/**
+	 * @param blockTimeoutMillis only used with {@link BackpressurePolicy#BLOCK},
+	 *                           0 waits forever
+	 */
+	public PipelineStage(String name, int capacity, BackpressurePolicy policy, long blockTimeoutMillis,
+			Consumer<T> consumer) {
+		this(name, capacity, policy, blockTimeoutMillis, 1, t -> 0, consumer);
+	}
+
+	/**
+	 * @param capacity           per lane
+	 * @param blockTimeoutMillis only used with {@link BackpressurePolicy#BLOCK},
+	 *                           0 waits forever
+	 * @param laneCount          number of lanes
+	 * @param laneOf             lane of an item, 0 is taken first
+	 */
+	public PipelineStage(String name, int capacity, BackpressurePolicy policy, long blockTimeoutMillis,
+			int laneCount, ToIntFunction<? super T> laneOf, Consumer<T> consumer) {
+		this.name = name;
+		this.capacity = Math.max(1, capacity);
+		this.policy = policy;
+		this.blockTimeoutMillis = blockTimeoutMillis;
+		this.consumer = consumer;
+		this.laneOf = laneOf;
+		this.lanes = new ArrayList<>();
+		for (int i = 0; i < Math.max(1, laneCount); i++) {
+			lanes.add(new ArrayDeque<>());
+		}
+		this.executor = Executors.newSingleThreadExecutor(Utils.namedThreadFactory("tts-" + name));
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		executor.execute(this::work);
+	}
+
+	public void shutdown() {
+		running = false;
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Sets a listener which is called for every item that is dropped or cleared
+	 * and therefore never reaches the consumer.
+	 */
+	public void setDiscardListener(Consumer<T> discardListener) {
+		this.discardListener = discardListener;
+	}
+
+	/**
+	 * Adds an item to its lane, applying the backpressure policy if the lane is
+	 * full.
+	 *
+	 * @return false if the item was dropped
+	 */
+	public boolean offer(T item) {
+		final ArrayDeque<T> lane = lanes.get(laneIndex(item));
+		boolean added = true;
+		T oldest = null;
+		int depth = 0;
+		lock.lock();
+		try {
+			switch (policy) {
+			case DROP_OLDEST:
+				if (lane.size() >= capacity) {
+					oldest = lane.pollFirst();
+					size--;
+				}
+				break;
+			case BLOCK:
+				long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+				while (added && lane.size() >= capacity) {
+					if (blockTimeoutMillis <= 0) {
+						notFull.await();
+					} else if (nanos > 0) {
+						nanos = notFull.awaitNanos(nanos);
+					} else {
+						added = false;
+					}
+				}
+				break;
+			case DROP_NEWEST:
+			default:
+				added = lane.size() < capacity;
+				break;
+			}
+			if (added) {
+				lane.addLast(item);
+				depth = ++size;
+				notEmpty.signal();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			added = false;
+		} finally {
+			lock.unlock();
+		}
+
+		// listeners are called outside the lock
+		if (oldest != null) {
+			onDropped(oldest);
+		}
+		if (!added) {
+			onDropped(item);
+			return false;
+		}
+		accepted.incrementAndGet();
+		maxDepth.accumulateAndGet(depth, Math::max);
+		return true;
+	}
+
+	/**
+	 * Removes all queued items.
+	 *
+	 * @return number of removed items
+	 */
+	public int clear() {
+		final List<T> removed = new ArrayList<>();
+		lock.lock();
+		try {
+			for (ArrayDeque<T> lane : lanes) {
+				removed.addAll(lane);
+				lane.clear();
+			}
+			size = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		removed.forEach(discardListener);
+		return removed.size();
+	}
+
+	/**
+	 * Stops handing items to the consumer, the item being consumed is finished.
+	 * New items are still queued.
+	 */
+	public void pause() {
+		lock.lock();
+		try {
+			paused = true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void resume() {
+		lock.lock();
+		try {
+			paused = false;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isPaused() {
+		lock.lock();
+		try {
+			return paused;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int laneIndex(T item) {
+		return Math.max(0, Math.min(lanes.size() - 1, laneOf.applyAsInt(item)));
+	}
+
+	/**
+	 * Waits for the oldest item of the first non empty lane.
+	 */
+	private T take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (size == 0 || paused) {
+				notEmpty.await();
+			}
+			for (ArrayDeque<T> lane : lanes) {
+				final T item = lane.pollFirst();
+				if (item != null) {
+					size--;
+					// waiting producers may wait for different lanes
+					notFull.signalAll();
+					return item;
+				}
+			}
+			throw new IllegalStateException(name + " queue size out of sync");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onDropped(T item) {
+		dropped.incrementAndGet();
+		log.debug("{} queue full ({}), dropped: {}", name, policy, item);
+		discardListener.accept(item);
+	}
+
+	private void work() {
+		while (running) {
+			T item;
+			try {
+				item = take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				consumer.accept(item);
+			} catch (Throwable e) {
+				// the stage has a single worker, it must survive any failure
+				failed.incrementAndGet();
+				log.error(name + " failed: " + e.getMessage(), e);
+			} finally {
+				processed.incrementAndGet();
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public BackpressurePolicy getPolicy() {
+		return policy;
+	}
+
+	public int getDepth() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of items queued in one lane.
+	 */
+	public int getDepth(int lane) {
+		lock.lock();
+		try {
+			return lanes.get(lane).size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLaneCount() {
+		return lanes.size();
+	}
+
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[depth:%s/%s max:%s accepted:%s dropped:%s processed:%s failed:%s]", name,
+				getDepth(), capacity, getMaxDepth(), getAccepted(), getDropped(), getProcessed(), getFailed());
+	}
+}
@@ -0,0 +1,410 @@
+package ttsbot.speech;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Metrics;
+import ttsbot.tts.TTSProvider;
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Routes the synthesis of a request over the available TTS providers.<br>
+ * Latency and errors are tracked per provider. A provider which keeps failing
+ * is skipped by its {@link CircuitBreaker}, a failed or timed out call falls
+ * back to the next provider (the configured fallback, or the next one in
+ * preference order). With hedging enabled, the fallback is asked as well when
+ * the primary takes longer than its recent p95, the first audio wins.<br>
+ * Calls run on their own threads and are bounded by a timeout, so a hanging
+ * provider never blocks the pipeline.
+ */
+public class ProviderRouter {
+	private final static Logger log = LoggerFactory.getLogger(ProviderRouter.class);
+
+	public static final String ENABLED = "routingEnabled";
+	public static final String TIMEOUT = "routingTimeoutSeconds";
+	public static final String FALLBACK = "routingFallback";
+	public static final String HEDGE_ENABLED = "routingHedgeEnabled";
+	public static final String HEDGE_PERCENTILE = "routingHedgePercentile";
+	public static final String HEDGE_MIN_MILLIS = "routingHedgeMinMillis";
+	public static final String HEDGE_DEFAULT_MILLIS = "routingHedgeDefaultMillis";
+	public static final String BREAKER_WINDOW = "circuitBreakerWindow";
+	public static final String BREAKER_MIN_CALLS = "circuitBreakerMinCalls";
+	public static final String BREAKER_FAILURE_RATE = "circuitBreakerFailureRate";
+	public static final String BREAKER_OPEN_SECONDS = "circuitBreakerOpenSeconds";
+
+	/** successful calls the hedge delay is computed on */
+	private static final int LATENCY_WINDOW = 64;
+	private static final int MIN_LATENCY_SAMPLES = 10;
+
+	private final boolean enabled = Settings.getBoolean(ENABLED, true);
+	private final long timeoutNanos = TimeUnit.SECONDS.toNanos(Settings.getLong(TIMEOUT, 10));
+	private final String fallbackName = Settings.getString(FALLBACK, "");
+	private final boolean hedgeEnabled = Settings.getBoolean(HEDGE_ENABLED, false);
+	private final double hedgePercentile = Settings.getDouble(HEDGE_PERCENTILE, 95);
+	private final long hedgeMinNanos = TimeUnit.MILLISECONDS.toNanos(Settings.getLong(HEDGE_MIN_MILLIS, 250));
+	private final long hedgeDefaultNanos = TimeUnit.MILLISECONDS
+			.toNanos(Settings.getLong(HEDGE_DEFAULT_MILLIS, 1500));
+
+	// available providers in preference order
+	private volatile List<TTSProvider> providers = Collections.emptyList();
+	private final Map<String, Route> routes = new ConcurrentHashMap<>();
+	private final ExecutorService executor = Executors.newCachedThreadPool(Utils.namedThreadFactory("tts-route"));
+
+	/**
+	 * Sets the providers which can take over, a live list in preference order.
+	 */
+	public void setProviders(List<TTSProvider> providers) {
+		this.providers = providers;
+	}
+
+	/**
+	 * Synthesizes the request with its provider, or a fallback if the provider is
+	 * failing or slow.
+	 *
+	 * @return the audio and the provider which made it
+	 */
+	public RoutedAudio synthesize(SpeechRequest request) throws Exception {
+		final TTSProvider primary = request.getProvider();
+		final Route route = route(primary);
+		if (!enabled) {
+			return new RoutedAudio(primary, route.synthesize(primary, request));
+		}
+
+		final long start = System.nanoTime();
+		final TTSProvider fallback = findFallback(primary, start);
+		if (!route.breaker.tryAcquire(start)) {
+			final Call call = fallback == null ? null : start(fallback, request);
+			if (call == null) {
+				throw new IOException(primary.getName() + " is unavailable, circuit " + route.breaker);
+			}
+			log.debug("{} circuit {}, using {}", primary.getName(), route.breaker, fallback.getName());
+			route.fallbacks.increment();
+			return await(call.future, call);
+		}
+
+		final Call first = new Call(route, primary, request);
+		if (fallback == null) {
+			return await(first.future, first);
+		}
+
+		final long hedgeDelay = hedgeEnabled ? route.getHedgeDelayNanos() : timeoutNanos;
+		try {
+			return first.future.get(hedgeDelay, TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			final Call second = start(fallback, request);
+			if (second == null) {
+				throw unwrap(e);
+			}
+			log.warn("{} failed, falling back to {}: {}", primary.getName(), fallback.getName(), e.getCause());
+			route.fallbacks.increment();
+			return await(second.future, second);
+		} catch (TimeoutException e) {
+			if (!hedgeEnabled) {
+				first.timeout();
+			}
+		}
+
+		// primary is slow: ask the fallback as well, the first audio wins
+		final Call second = start(fallback, request);
+		if (second == null) {
+			return await(first.future, first);
+		}
+		if (hedgeEnabled) {
+			log.info("{} slower than {} ms, hedging with {}", primary.getName(),
+					TimeUnit.NANOSECONDS.toMillis(hedgeDelay), fallback.getName());
+			route.hedges.increment();
+		} else {
+			log.warn("{} timed out, falling back to {}", primary.getName(), fallback.getName());
+			route.fallbacks.increment();
+		}
+		final RoutedAudio result = await(firstSuccess(first.future, second.future), first, second);
+		if (result.getProvider() == fallback) {
+			route(fallback).hedgeWins.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * Starts a call if the circuit of the provider lets it through.
+	 *
+	 * @return null if the provider is unavailable
+	 */
+	private Call start(TTSProvider provider, SpeechRequest request) {
+		final Route route = route(provider);
+		if (!route.breaker.tryAcquire(System.nanoTime())) {
+			return null;
+		}
+		return new Call(route, provider, request);
+	}
+
+	/**
+	 * Waits for the audio, cancels the calls which are not needed anymore.
+	 */
+	private RoutedAudio await(CompletableFuture<RoutedAudio> future, Call... calls) throws Exception {
+		try {
+			return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (TimeoutException e) {
+			for (Call c : calls) {
+				c.timeout();
+			}
+			throw new TimeoutException(
+					"no audio within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms from " + Arrays.toString(calls));
+		} finally {
+			for (Call c : calls) {
+				c.cancel();
+			}
+		}
+	}
+
+	private static Exception unwrap(ExecutionException e) {
+		return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+	}
+
+	/**
+	 * Completes with the first successful result, or the last failure.
+	 */
+	private static CompletableFuture<RoutedAudio> firstSuccess(CompletableFuture<RoutedAudio> a,
+			CompletableFuture<RoutedAudio> b) {
+		final CompletableFuture<RoutedAudio> result = new CompletableFuture<>();
+		final AtomicInteger failures = new AtomicInteger();
+		for (CompletableFuture<RoutedAudio> f : Arrays.asList(a, b)) {
+			f.whenComplete((audio, e) -> {
+				if (e == null) {
+					result.complete(audio);
+				} else if (failures.incrementAndGet() == 2) {
+					result.completeExceptionally(e);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the provider which takes over from the primary: the configured
+	 * fallback if it is available, else the first available one.
+	 */
+	private TTSProvider findFallback(TTSProvider primary, long now) {
+		TTSProvider first = null;
+		for (TTSProvider p : providers) {
+			if (p.getName().equals(primary.getName()) || !route(p).breaker.isCallPermitted(now)) {
+				continue;
+			}
+			if (p.getName().equals(fallbackName)) {
+				return p;
+			}
+			if (first == null) {
+				first = p;
+			}
+		}
+		return first;
+	}
+
+	private Route route(TTSProvider provider) {
+		return routes.computeIfAbsent(provider.getName(), Route::new);
+	}
+
+	/**
+	 * Returns the circuit state of the provider.
+	 */
+	public CircuitBreaker.State getState(String provider) {
+		final Route route = routes.get(provider);
+		return route == null ? CircuitBreaker.State.CLOSED : route.breaker.getState();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("routing[");
+		for (Route r : routes.values()) {
+			sb.append(r.name).append(':').append(r.breaker).append(' ');
+		}
+		return sb.toString().trim() + "]";
+	}
+
+	/**
+	 * Result of {@link ProviderRouter#synthesize(SpeechRequest)}.
+	 */
+	public static class RoutedAudio {
+		private final TTSProvider provider;
+		private final PcmAudio audio;
+
+		RoutedAudio(TTSProvider provider, PcmAudio audio) {
+			this.provider = provider;
+			this.audio = audio;
+		}
+
+		/**
+		 * Returns the provider which synthesized the audio, not the requested one
+		 * after a fallback.
+		 */
+		public TTSProvider getProvider() {
+			return provider;
+		}
+
+		/**
+		 * Returns the audio, null if the provider can only play directly.
+		 */
+		public PcmAudio getAudio() {
+			return audio;
+		}
+	}
+
+	/**
+	 * Circuit breaker, recent latencies and counters of one provider.
+	 */
+	private class Route {
+		final String name;
+		final CircuitBreaker breaker;
+		final Counter failures;
+		final Counter timeouts;
+		final Counter fallbacks;
+		final Counter hedges;
+		final Counter hedgeWins;
+
+		// recent successful calls, guarded by this
+		private final long[] latencies = new long[LATENCY_WINDOW];
+		private int latencyCount;
+		private int next;
+
+		Route(String name) {
+			this.name = name;
+			this.breaker = new CircuitBreaker(Settings.getInt(BREAKER_WINDOW, 20),
+					Settings.getInt(BREAKER_MIN_CALLS, 5), Settings.getDouble(BREAKER_FAILURE_RATE, 0.5),
+					TimeUnit.SECONDS.toMillis(Settings.getLong(BREAKER_OPEN_SECONDS, 30)));
+			final Metrics metrics = Metrics.get();
+			failures = metrics.counter("routing_failures_total", "provider", name);
+			timeouts = metrics.counter("routing_timeouts_total", "provider", name);
+			fallbacks = metrics.counter("routing_fallbacks_total", "provider", name);
+			hedges = metrics.counter("routing_hedges_total", "provider", name);
+			hedgeWins = metrics.counter("routing_hedge_wins_total", "provider", name);
+			metrics.gauge("circuit_breaker_state", () -> breaker.getState().ordinal(), "provider", name);
+		}
+
+		/**
+		 * Calls the provider on the current thread and records the latency.
+		 */
+		PcmAudio synthesize(TTSProvider provider, SpeechRequest request) throws Exception {
+			final long start = System.nanoTime();
+			final boolean primary = provider == request.getProvider();
+			String lang = request.getLangOverride();
+			if (!primary && lang != null && !provider.isKnownLanguage(lang)) {
+				// the fallback speaks its own language then
+				lang = null;
+			}
+			final PcmAudio audio = provider.synthesize(request.getText(), lang, request.getGenderOverride());
+			if (audio == null && !primary) {
+				throw new IOException(provider.getName() + " can not synthesize without playing");
+			}
+			final long elapsed = System.nanoTime() - start;
+			Metrics.get().timer("synthesis_seconds", "provider", name, "voice", provider.getVoice()).record(elapsed);
+			addLatency(elapsed);
+			return audio;
+		}
+
+		synchronized void addLatency(long nanos) {
+			latencies[next] = nanos;
+			next = (next + 1) % latencies.length;
+			latencyCount = Math.min(latencyCount + 1, latencies.length);
+		}
+
+		/**
+		 * Returns the recent latency percentile, clamped to the min. delay and the
+		 * timeout.
+		 */
+		synchronized long getHedgeDelayNanos() {
+			if (latencyCount < MIN_LATENCY_SAMPLES) {
+				return hedgeDefaultNanos;
+			}
+			final long[] sorted = Arrays.copyOf(latencies, latencyCount);
+			Arrays.sort(sorted);
+			final int idx = (int) Math.ceil(hedgePercentile / 100 * sorted.length) - 1;
+			final long p = sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+			return Math.max(hedgeMinNanos, Math.min(timeoutNanos, p));
+		}
+	}
+
+	/**
+	 * One synthesis call on the executor, reports its outcome to the circuit
+	 * breaker exactly once.
+	 */
+	private class Call {
+		final Route route;
+		final TTSProvider provider;
+		final CompletableFuture<RoutedAudio> future = new CompletableFuture<>();
+		private final AtomicBoolean reported = new AtomicBoolean();
+		private final Future<?> task;
+
+		Call(Route route, TTSProvider provider, SpeechRequest request) {
+			this.route = route;
+			this.provider = provider;
+			this.task = executor.submit(() -> {
+				try {
+					final PcmAudio audio = route.synthesize(provider, request);
+					if (reported.compareAndSet(false, true)) {
+						route.breaker.onSuccess();
+					}
+					future.complete(new RoutedAudio(provider, audio));
+				} catch (Throwable e) {
+					if (reported.compareAndSet(false, true)) {
+						route.failures.increment();
+						route.breaker.onFailure(System.nanoTime());
+					}
+					future.completeExceptionally(e);
+				}
+			});
+		}
+
+		/**
+		 * Counts the call as failed, it may still complete later.
+		 */
+		void timeout() {
+			if (reported.compareAndSet(false, true)) {
+				route.timeouts.increment();
+				route.breaker.onFailure(System.nanoTime());
+			}
+		}
+
+		/**
+		 * Interrupts the call if it is still running, also after a timeout. Counts
+		 * it as neither failed nor successful if nothing was reported yet.
+		 */
+		void cancel() {
+			if (future.isDone()) {
+				return;
+			}
+			if (reported.compareAndSet(false, true)) {
+				route.breaker.onIgnored();
+			}
+			task.cancel(true);
+		}
+
+		@Override
+		public String toString() {
+			return provider.getName();
+		}
+	}
+}
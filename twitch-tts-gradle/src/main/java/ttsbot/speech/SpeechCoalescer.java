@@ -0,0 +1,215 @@
+package ttsbot.speech;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ttsbot.util.Settings;
+
+/**
+ * Collapses duplicate messages in the speech backlog into one utterance.<br>
+ * A message is merged into a pending one (not playing yet, at most
+ * 'window' old) with the same provider, language and priority if the normalized
+ * text is equal, or if both texts are long enough and their MinHash signatures
+ * over character shingles are similar. A message is never merged into one of
+ * another priority, which would move it to the other lane;
+ * {@link SpeechPriority#IMMEDIATE} messages are never merged at all. The pending request counts the merged
+ * messages, see {@link SpeechRequest#getCount()}.<br>
+ * The backlog is bounded by the pipeline queues, so similar texts are found by
+ * a linear scan over the signatures.
+ */
+public class SpeechCoalescer {
+	public static final String ENABLED = "dedupEnabled";
+	public static final String WINDOW_SECONDS = "dedupWindowSeconds";
+	public static final String SIMILARITY = "dedupSimilarity";
+
+	private static final int SHINGLE = 3;
+	private static final int HASHES = 32;
+	/** shorter texts are only merged if equal */
+	private static final int MIN_SIMILAR_LENGTH = 8;
+
+	private final long windowNanos;
+	private final int minMatches;
+
+	// key -> pending request, oldest first
+	private final Map<String, Entry> pending = new LinkedHashMap<>();
+
+	private final LongAdder exact = new LongAdder();
+	private final LongAdder similar = new LongAdder();
+
+	/**
+	 * @param similarity estimated jaccard similarity (0..1) at which texts are
+	 *                   merged, above 1 only merges equal texts
+	 */
+	public SpeechCoalescer(long windowMillis, double similarity) {
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.minMatches = (int) Math.ceil(similarity * HASHES);
+	}
+
+	/**
+	 * Creates the coalescer from settings.properties.
+	 *
+	 * @return null if disabled
+	 */
+	public static SpeechCoalescer fromSettings() {
+		if (!Settings.getBoolean(ENABLED, true)) {
+			return null;
+		}
+		return new SpeechCoalescer(TimeUnit.SECONDS.toMillis(Settings.getLong(WINDOW_SECONDS, 30)),
+				Settings.getDouble(SIMILARITY, 0.8));
+	}
+
+	/**
+	 * Merges the request into a pending duplicate, or remembers it as pending.
+	 *
+	 * @return the pending request the message was merged into, null if the
+	 *         request is new and has to be spoken
+	 */
+	public synchronized SpeechRequest coalesce(SpeechRequest request) {
+		if (request.getPriority() == SpeechPriority.IMMEDIATE) {
+			return null;
+		}
+		final long now = request.getCreatedNanos();
+		expire(now);
+
+		final String text = normalize(request.getText());
+		final String provider = request.getProvider() == null ? "" : request.getProvider().getName();
+		final String prefix = provider + '|' + request.getLangOverride() + '|' + request.getPriority() + '|';
+		final String key = prefix + text;
+
+		final Entry same = pending.get(key);
+		if (same != null) {
+			same.request.addDuplicate();
+			exact.increment();
+			return same.request;
+		}
+
+		final int[] signature = text.length() < MIN_SIMILAR_LENGTH ? null : signature(text);
+		if (signature != null) {
+			for (Entry e : pending.values()) {
+				if (e.signature != null && e.key.startsWith(prefix) && matches(e.signature, signature) >= minMatches) {
+					e.request.addDuplicate();
+					similar.increment();
+					return e.request;
+				}
+			}
+		}
+
+		pending.put(key, new Entry(key, request, signature, now + windowNanos));
+		return null;
+	}
+
+	/**
+	 * Stops merging into the request, called once it plays or is discarded.
+	 */
+	public synchronized void remove(SpeechRequest request) {
+		pending.values().removeIf(e -> e.request == request);
+	}
+
+	private void expire(long now) {
+		for (Iterator<Entry> it = pending.values().iterator(); it.hasNext();) {
+			if (it.next().expires - now > 0) {
+				return;
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * Lower case letters and digits, separated by single spaces.
+	 */
+	static String normalize(String text) {
+		final StringBuilder sb = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				if (space && sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(Character.toLowerCase(c));
+				space = false;
+			} else {
+				space = true;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * MinHash signature over the character shingles of the text.
+	 */
+	static int[] signature(String text) {
+		final int[] min = new int[HASHES];
+		Arrays.fill(min, Integer.MAX_VALUE);
+		final int shingles = Math.max(1, text.length() - SHINGLE + 1);
+		for (int i = 0; i < shingles; i++) {
+			int h = 0;
+			for (int j = i; j < Math.min(i + SHINGLE, text.length()); j++) {
+				h = 31 * h + text.charAt(j);
+			}
+			for (int k = 0; k < HASHES; k++) {
+				final int v = mix(h ^ (k * 0x9E3779B9));
+				if (v < min[k]) {
+					min[k] = v;
+				}
+			}
+		}
+		return min;
+	}
+
+	private static int matches(int[] a, int[] b) {
+		int count = 0;
+		for (int i = 0; i < HASHES; i++) {
+			if (a[i] == b[i]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// murmur3 finalizer
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	public synchronized int getPending() {
+		return pending.size();
+	}
+
+	public long getExactMerged() {
+		return exact.sum();
+	}
+
+	public long getSimilarMerged() {
+		return similar.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("dedup[pending:%s exact:%s similar:%s]", getPending(), getExactMerged(),
+				getSimilarMerged());
+	}
+
+	private static class Entry {
+		final String key;
+		final SpeechRequest request;
+		final int[] signature;
+		final long expires;
+
+		Entry(String key, SpeechRequest request, int[] signature, long expires) {
+			this.key = key;
+			this.request = request;
+			this.signature = signature;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,587 @@
+package ttsbot.speech;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.audio.AudioChannel;
+import ttsbot.audio.AudioEngine;
+import ttsbot.audio.PcmAudio;
+import ttsbot.cache.AudioCache;
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.tts.TTSProvider;
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Decouples chat handling from synthesis and playback.<br>
+ * Chat messages are handled on the ingest stage, messages to speak are
+ * synthesized on the synthesis stage and then played one after another on the
+ * playback stage. Each stage has its own bounded queue and thread, so a slow
+ * TTS round-trip never blocks the IRC listener.<br>
+ * The synthesis stage runs ahead of the player: the next few messages are
+ * synthesized while the current one is playing, see
+ * {@link LookAheadSynthesizer}.<br>
+ * The time spent in each stage is recorded in the {@link Metrics}, from the
+ * chat message arriving up to the first audio chunk being queued.<br>
+ * Messages which waited longer than the max. age are dropped instead of being
+ * spoken late. Skipped or cleared messages cancel their synthesis.<br>
+ * Long messages are split into segments by the {@link TextSegmenter}, the
+ * first segment plays while the next ones are synthesized. A message travels
+ * the queues as a whole, only its first segment is queued for playback; the
+ * player hands the following segments over directly, so no other message,
+ * whatever its priority, is spoken between the segments of a message.<br>
+ * The synthesis and playback queues have one lane per {@link SpeechPriority},
+ * so messages of the broadcaster, mods and subscribers are spoken before the
+ * other chat. Immediate requests skip the synthesis queue on their own stage
+ * and play right after the current message. The player can be paused, queued messages still
+ * expire after the max. age.
+ */
+public class SpeechPipeline {
+	private final static Logger log = LoggerFactory.getLogger(SpeechPipeline.class);
+
+	public static final String INGEST_CAPACITY = "pipelineIngestCapacity";
+	public static final String INGEST_POLICY = "pipelineIngestPolicy";
+	public static final String SYNTHESIS_CAPACITY = "pipelineSynthesisCapacity";
+	public static final String SYNTHESIS_POLICY = "pipelineSynthesisPolicy";
+	public static final String PLAYBACK_CAPACITY = "pipelinePlaybackCapacity";
+	public static final String PLAYBACK_POLICY = "pipelinePlaybackPolicy";
+	public static final String BLOCK_TIMEOUT = "pipelineBlockTimeoutMillis";
+	public static final String LOOK_AHEAD = "synthesisLookAhead";
+	public static final String PLAYBACK_ENABLED = "pipelinePlaybackEnabled";
+	public static final String MAX_AGE = "speechMaxAgeSeconds";
+	// provider volume which mutes the speech
+	private static final float MUTED_VOLUME = -96;
+
+	private final PipelineStage<Runnable> ingest;
+	private final PipelineStage<SpeechRequest> synthesis;
+	private final PipelineStage<SpeechRequest> immediate;
+	private final PipelineStage<SpeechRequest> playback;
+	private final LookAheadSynthesizer lookAhead;
+	private final ProviderRouter router = new ProviderRouter();
+	private final SpeechCoalescer coalescer = SpeechCoalescer.fromSettings();
+	private final boolean playbackEnabled = Settings.getBoolean(PLAYBACK_ENABLED, true);
+	private final long maxAgeNanos = TimeUnit.SECONDS.toNanos(Settings.getLong(MAX_AGE, 60));
+	private final boolean segmentEnabled = Settings.getBoolean(TextSegmenter.ENABLED, true);
+	// provider name -> segmenter
+	private final Map<String, TextSegmenter> segmenters = new ConcurrentHashMap<>();
+	// message -> segments after the first, until the message is played
+	private final Map<SpeechRequest, Segments> following = new ConcurrentHashMap<>();
+
+	// the request the player is waiting for or playing
+	private volatile SpeechRequest current;
+	private volatile boolean currentPlaying = false;
+
+	private volatile BiConsumer<SpeechRequest, Exception> errorListener = (r, e) -> {
+	};
+	private volatile Consumer<SpeechRequest> playbackListener = r -> {
+	};
+
+	// arrival and priority of the chat message handled on the current ingest
+	// thread
+	private static final ThreadLocal<Long> chatReceivedNanos = new ThreadLocal<>();
+	private static final ThreadLocal<SpeechPriority> chatPriority = new ThreadLocal<>();
+
+	private final Timer ingestWait = Metrics.get().timer("queue_wait_seconds", "stage", "ingest");
+	private final Timer synthesisWait = Metrics.get().timer("queue_wait_seconds", "stage", "synthesis");
+	private final Timer audioWait = Metrics.get().timer("audio_wait_seconds");
+	private final Timer playbackStart = Metrics.get().timer("playback_start_seconds");
+	private final Timer endToEnd = Metrics.get().timer("speech_latency_seconds");
+	private final Counter merged = Metrics.get().counter("speech_merged_total");
+	private final Counter stale = Metrics.get().counter("speech_stale_total");
+	private final Counter skipped = Metrics.get().counter("speech_skipped_total");
+	private final Counter segments = Metrics.get().counter("speech_segments_total");
+	// by priority
+	private final Timer[] playbackWait = new Timer[SpeechPriority.values().length];
+
+	public SpeechPipeline() {
+		final long blockTimeout = Settings.getLong(BLOCK_TIMEOUT, 200);
+		lookAhead = new LookAheadSynthesizer(Settings.getInt(LOOK_AHEAD, 3), AudioCache.fromSettings(), router);
+
+		ingest = new PipelineStage<>("ingest", //
+				Settings.getInt(INGEST_CAPACITY, 256), //
+				BackpressurePolicy.parse(Settings.getString(INGEST_POLICY, null), BackpressurePolicy.DROP_NEWEST), //
+				blockTimeout, Runnable::run);
+
+		final int lanes = SpeechPriority.values().length;
+		synthesis = new PipelineStage<>("synthesis", //
+				Settings.getInt(SYNTHESIS_CAPACITY, 32), //
+				BackpressurePolicy.parse(Settings.getString(SYNTHESIS_POLICY, null), BackpressurePolicy.DROP_OLDEST), //
+				blockTimeout, lanes, SpeechPipeline::lane, this::synthesize);
+
+		// like the synthesis stage, but never waits behind a message the synthesis
+		// thread is handing to the player
+		immediate = new PipelineStage<>("immediate", //
+				Settings.getInt(SYNTHESIS_CAPACITY, 32), BackpressurePolicy.DROP_NEWEST, //
+				blockTimeout, this::synthesize);
+
+		// the synthesis thread waits for the player by default, it is not the chat
+		// thread
+		playback = new PipelineStage<>("playback", //
+				Settings.getInt(PLAYBACK_CAPACITY, 2), //
+				BackpressurePolicy.parse(Settings.getString(PLAYBACK_POLICY, null), BackpressurePolicy.BLOCK), //
+				0, lanes, SpeechPipeline::lane, this::play);
+		playback.setDiscardListener(this::discard);
+		synthesis.setDiscardListener(this::discard);
+		immediate.setDiscardListener(this::discard);
+
+		for (PipelineStage<?> stage : getStages()) {
+			Metrics.get().gauge("pipeline_queue_depth", stage::getDepth, "stage", stage.getName());
+			Metrics.get().counter("pipeline_dropped_total", stage::getDropped, "stage", stage.getName());
+			Metrics.get().counter("pipeline_processed_total", stage::getProcessed, "stage", stage.getName());
+		}
+		Metrics.get().gauge("synthesis_in_flight", lookAhead::getInFlight);
+		for (SpeechPriority p : SpeechPriority.values()) {
+			final int lane = lane(p);
+			playbackWait[lane] = Metrics.get().timer("playback_queue_wait_seconds", "priority", p.getKey());
+			final boolean isImmediate = p == SpeechPriority.IMMEDIATE;
+			Metrics.get().gauge("speech_queued",
+					() -> (isImmediate ? immediate.getDepth() : synthesis.getDepth(lane)) + playback.getDepth(lane),
+					"priority", p.getKey());
+		}
+		Metrics.get().gauge("playback_paused", () -> isPaused() ? 1 : 0);
+	}
+
+	public void start() {
+		playback.start();
+		synthesis.start();
+		immediate.start();
+		ingest.start();
+	}
+
+	public void shutdown() {
+		ingest.shutdown();
+		synthesis.shutdown();
+		immediate.shutdown();
+		playback.shutdown();
+		lookAhead.shutdown();
+		router.shutdown();
+	}
+
+	/**
+	 * Sets a listener which is called when a request could not be synthesized or
+	 * played.
+	 */
+	public void setErrorListener(BiConsumer<SpeechRequest, Exception> errorListener) {
+		this.errorListener = errorListener;
+	}
+
+	/**
+	 * Sets a listener which is called when the audio of a request is ready and
+	 * playback starts.
+	 */
+	public void setPlaybackListener(Consumer<SpeechRequest> playbackListener) {
+		this.playbackListener = playbackListener;
+	}
+
+	/**
+	 * Queues chat handling work, returns immediately.
+	 *
+	 * @return false if the work was dropped
+	 */
+	public boolean ingest(Runnable chatWork) {
+		return ingest(chatWork, SpeechPriority.VIEWER);
+	}
+
+	/**
+	 * Queues chat handling work, messages spoken by it get at least the priority
+	 * of the chat message.
+	 *
+	 * @return false if the work was dropped
+	 */
+	public boolean ingest(Runnable chatWork, SpeechPriority priority) {
+		final long received = System.nanoTime();
+		return ingest.offer(() -> {
+			ingestWait.recordSince(received);
+			chatReceivedNanos.set(received);
+			chatPriority.set(priority);
+			try {
+				chatWork.run();
+			} finally {
+				chatReceivedNanos.remove();
+				chatPriority.remove();
+			}
+		});
+	}
+
+	/**
+	 * Returns the priority of the chat message handled on the current thread,
+	 * for work which speaks later on another thread.
+	 */
+	public static SpeechPriority getChatPriority() {
+		final SpeechPriority priority = chatPriority.get();
+		return priority == null ? SpeechPriority.VIEWER : priority;
+	}
+
+	/**
+	 * Queues a message to be spoken, returns immediately.<br>
+	 * Duplicates of a message which has not been played yet are merged into it.
+	 *
+	 * @return false if the message was dropped
+	 */
+	public boolean speak(SpeechRequest request) {
+		if (request.getProvider() == null || request.getText() == null || request.getText().isEmpty()) {
+			return false;
+		}
+		final Long received = chatReceivedNanos.get();
+		if (received != null) {
+			request.setReceivedNanos(received);
+		}
+		final SpeechPriority priority = chatPriority.get();
+		if (priority != null) {
+			request.setPriority(SpeechPriority.max(request.getPriority(), priority));
+		}
+		if (coalescer != null) {
+			final SpeechRequest target = coalescer.coalesce(request);
+			if (target != null) {
+				merged.increment();
+				log.debug("merged into {}", target);
+				return true;
+			}
+		}
+		return schedule(request);
+	}
+
+	/**
+	 * Queues the request for synthesis. Immediate requests have their own stage,
+	 * the synthesis thread may be waiting for the player with the next message.
+	 */
+	private boolean schedule(SpeechRequest request) {
+		if (request.getPriority() == SpeechPriority.IMMEDIATE) {
+			return immediate.offer(request);
+		}
+		return synthesis.offer(request);
+	}
+
+	/**
+	 * Stops starting new messages, the current one is finished. Messages are
+	 * still queued and synthesized.
+	 */
+	public void pause() {
+		if (!playback.isPaused()) {
+			log.info("playback paused");
+			playback.pause();
+		}
+	}
+
+	public void resume() {
+		if (playback.isPaused()) {
+			log.info("playback resumed");
+			playback.resume();
+		}
+	}
+
+	public boolean isPaused() {
+		return playback.isPaused();
+	}
+
+	/**
+	 * Removes all messages which have not been played yet, their synthesis is
+	 * cancelled.
+	 */
+	public int clear() {
+		final int cleared = synthesis.clear() + immediate.clear() + playback.clear();
+		// the message which is playing ends with its current segment
+		for (SpeechRequest message : following.keySet()) {
+			closeSegments(message);
+		}
+		return cleared;
+	}
+
+	/**
+	 * Skips the message which is playing, or the next one if the player is still
+	 * waiting for its audio.
+	 *
+	 * @return false if there was nothing to skip
+	 */
+	public boolean skip() {
+		final SpeechRequest request = current;
+		if (request == null) {
+			return false;
+		}
+		log.info("skipped {}", request);
+		skipped.increment();
+		request.cancel();
+		lookAhead.cancel(request);
+		closeSegments(request.getMessage());
+		if (currentPlaying) {
+			// media clips keep playing
+			AudioEngine.get().flush(AudioChannel.SPEECH);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the cache of synthesized clips, null if disabled.
+	 */
+	public AudioCache getAudioCache() {
+		return lookAhead.getCache();
+	}
+
+	/**
+	 * Returns the routing over the providers, see
+	 * {@link ProviderRouter#setProviders(List)}.
+	 */
+	public ProviderRouter getRouter() {
+		return router;
+	}
+
+	/**
+	 * Returns the duplicate detection, null if disabled.
+	 */
+	public SpeechCoalescer getCoalescer() {
+		return coalescer;
+	}
+
+	public List<PipelineStage<?>> getStages() {
+		return Arrays.asList(ingest, synthesis, immediate, playback);
+	}
+
+	private static int lane(SpeechPriority priority) {
+		return priority.ordinal();
+	}
+
+	private static int lane(SpeechRequest request) {
+		return lane(request.getPriority());
+	}
+
+	/**
+	 * Starts the synthesis and hands the request to the player right away, the
+	 * player waits for the audio in queue order.
+	 */
+	private void synthesize(SpeechRequest request) {
+		synthesisWait.recordSince(request.getCreatedNanos());
+		if (request.isCancelled() || isStale(request) || isMuted(request)) {
+			forget(request);
+			return;
+		}
+		final List<String> texts = segmentEnabled
+				? segmenters.computeIfAbsent(request.getProvider().getName(), TextSegmenter::fromSettings)
+						.split(request.getText())
+				: null;
+		try {
+			if (texts == null || texts.size() == 1) {
+				lookAhead.submit(request);
+				playback.offer(request);
+			} else {
+				synthesizeSegments(request, texts);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		log.debug("{} {} {} {}", ingest, synthesis, playback, lookAhead.getCache());
+	}
+
+	/**
+	 * Queues the first segment for playback and hands the following ones to the
+	 * player of the first.<br>
+	 * Waiting for look ahead slots here can not block the player: it frees them
+	 * while it plays the earlier messages and segments.
+	 */
+	private void synthesizeSegments(SpeechRequest message, List<String> texts) throws InterruptedException {
+		log.debug("{} segments: {}", texts.size(), message);
+		segments.add(texts.size());
+		final Segments rest = new Segments(texts.size() - 1);
+		following.put(message, rest);
+		for (int i = 0; i < texts.size() && !message.isCancelled(); i++) {
+			final SpeechRequest segment = message.segment(texts.get(i), i);
+			lookAhead.submit(segment);
+			if (i == 0) {
+				// a dropped segment is discarded, which cancels the message
+				playback.offer(segment);
+			} else if (!rest.add(segment)) {
+				// skipped or cleared meanwhile
+				lookAhead.cancel(segment);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops handing segments of the message to the player, the ones already
+	 * synthesized are cancelled.
+	 */
+	private void closeSegments(SpeechRequest message) {
+		final Segments rest = following.remove(message);
+		if (rest != null) {
+			rest.close().forEach(lookAhead::cancel);
+		}
+	}
+
+	private void forget(SpeechRequest request) {
+		if (coalescer != null) {
+			coalescer.remove(request.getMessage());
+		}
+	}
+
+	/**
+	 * Called for requests which were dropped or cleared.
+	 */
+	private void discard(SpeechRequest request) {
+		request.cancel();
+		lookAhead.cancel(request);
+		closeSegments(request.getMessage());
+		forget(request);
+	}
+
+	/**
+	 * Returns true if the provider is muted, its messages are neither
+	 * synthesized nor played.
+	 */
+	private static boolean isMuted(SpeechRequest request) {
+		return request.getProvider().getVolume() <= MUTED_VOLUME;
+	}
+
+	/**
+	 * Returns true if the message waited too long to be spoken.
+	 */
+	private boolean isStale(SpeechRequest request) {
+		final long age = System.nanoTime() - request.getReceivedNanos();
+		if (maxAgeNanos <= 0 || age <= maxAgeNanos) {
+			return false;
+		}
+		stale.increment();
+		log.info("dropped after {} s in the queue: {}", TimeUnit.NANOSECONDS.toSeconds(age), request);
+		return true;
+	}
+
+	/**
+	 * Plays the message, or all segments of it one after another.
+	 */
+	private void play(SpeechRequest request) {
+		final SpeechRequest message = request.getMessage();
+		try {
+			playSegment(request);
+			final Segments rest = following.get(message);
+			for (int i = 0; rest != null && i < rest.count && !message.isCancelled(); i++) {
+				final SpeechRequest next = rest.take();
+				if (next == null) {
+					break;
+				}
+				playSegment(next);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closeSegments(message);
+		}
+	}
+
+	private void playSegment(SpeechRequest request) {
+		final TTSProvider provider = request.getProvider();
+		// duplicates arriving from now on are spoken again
+		forget(request);
+		if (request.getCount() > 1 && request.isFirstSegment()) {
+			log.info("playing {}", request);
+		}
+		if (request.isCancelled() || isStale(request) || isMuted(request)) {
+			lookAhead.cancel(request);
+			return;
+		}
+		if (request.isFirstSegment()) {
+			playbackWait[lane(request)].recordSince(request.getCreatedNanos());
+		}
+		current = request;
+		try {
+			final long waitStart = System.nanoTime();
+			final PcmAudio audio = lookAhead.await(request);
+			final long ready = audioWait.recordSince(waitStart) + waitStart;
+			if (request.isCancelled()) {
+				return;
+			}
+			if (request.isFirstSegment()) {
+				playbackListener.accept(request.getMessage());
+			}
+			if (!playbackEnabled) {
+				return;
+			}
+			currentPlaying = true;
+			if (audio == null) {
+				// provider can only synthesize and play in one go
+				provider.syntesizeAndPlay(request.getText(), request.getLangOverride(), request.getGenderOverride());
+			} else {
+				Utils.playAudioAndWait(audio, provider.getVolume(), () -> {
+					playbackStart.recordSince(ready);
+					if (request.isFirstSegment()) {
+						endToEnd.recordSince(request.getReceivedNanos());
+					}
+				});
+			}
+		} catch (Exception e) {
+			if (request.isCancelled()) {
+				log.debug("{} cancelled: {}", request, e.toString());
+			} else {
+				errorListener.accept(request, e);
+			}
+		} finally {
+			current = null;
+			currentPlaying = false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return ingest + " " + synthesis + " " + playback;
+	}
+
+	/**
+	 * The segments after the first one, handed from the synthesis thread to the
+	 * player of the message.
+	 */
+	private static class Segments {
+		final int count;
+		private final ArrayDeque<SpeechRequest> ready = new ArrayDeque<>();
+		private boolean closed = false;
+
+		Segments(int count) {
+			this.count = count;
+		}
+
+		/**
+		 * @return false if the message does not play anymore
+		 */
+		synchronized boolean add(SpeechRequest segment) {
+			if (closed) {
+				return false;
+			}
+			ready.addLast(segment);
+			notifyAll();
+			return true;
+		}
+
+		/**
+		 * Waits for the next segment.
+		 *
+		 * @return null if the message does not play anymore
+		 */
+		synchronized SpeechRequest take() throws InterruptedException {
+			while (ready.isEmpty() && !closed) {
+				wait();
+			}
+			return closed ? null : ready.pollFirst();
+		}
+
+		/**
+		 * @return the segments which were handed over but not taken
+		 */
+		synchronized List<SpeechRequest> close() {
+			closed = true;
+			notifyAll();
+			final List<SpeechRequest> left = new ArrayList<>(ready);
+			ready.clear();
+			return left;
+		}
+	}
+}
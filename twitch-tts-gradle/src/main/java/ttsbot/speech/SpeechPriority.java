@@ -0,0 +1,33 @@
+package ttsbot.speech;
+
+/**
+ * Scheduling class of a {@link SpeechRequest}, the {@link SpeechPipeline}
+ * speaks higher classes first and messages of the same class in arrival
+ * order.
+ */
+public enum SpeechPriority {
+	/** typed into the UI, played next without waiting for a look ahead slot */
+	IMMEDIATE,
+	/** the channel owner */
+	BROADCASTER,
+	/** channel moderators */
+	MODERATOR,
+	/** subscribers of the channel */
+	SUBSCRIBER,
+	/** everybody else */
+	VIEWER;
+
+	/**
+	 * Name used in metrics, e.g. 'moderator'.
+	 */
+	public String getKey() {
+		return name().toLowerCase();
+	}
+
+	/**
+	 * Returns the more urgent of both.
+	 */
+	public static SpeechPriority max(SpeechPriority a, SpeechPriority b) {
+		return a.ordinal() <= b.ordinal() ? a : b;
+	}
+}
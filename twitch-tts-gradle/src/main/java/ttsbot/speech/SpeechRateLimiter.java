@@ -0,0 +1,167 @@
+package ttsbot.speech;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ttsbot.util.Settings;
+
+/**
+ * Limits how much chat can make the bot speak: a token bucket per user
+ * (messages) and one per provider (characters), so a raid can neither flood
+ * the speech queue nor the paid cloud synthesis.<br>
+ * User buckets live in a concurrent map; buckets which are full again are
+ * removed, which bounds the memory to the recently active users. While more
+ * than the maximum users are tracked, new users share one bucket.
+ */
+public class SpeechRateLimiter {
+	public static final String ENABLED = "rateLimitEnabled";
+	public static final String USER_PER_MINUTE = "rateLimitUserMessagesPerMinute";
+	public static final String USER_BURST = "rateLimitUserBurst";
+	public static final String MAX_USERS = "rateLimitMaxUsers";
+	public static final String PROVIDER_CHARS_PER_SECOND = "rateLimitCharsPerSecond";
+	public static final String PROVIDER_BURST = "rateLimitBurstChars";
+
+	public enum Decision {
+		ALLOWED, USER_LIMITED, PROVIDER_LIMITED;
+	}
+
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+	private static final long MIN_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/** marker for providers without character budget */
+	private static final TokenBucket UNLIMITED = new TokenBucket(1, 1);
+
+	private final double userPerSecond;
+	private final double userBurst;
+	private final int maxUsers;
+
+	private final Map<String, TokenBucket> users = new ConcurrentHashMap<>();
+	// shared by new users while the map is full
+	private final TokenBucket overflow;
+	private final Map<String, TokenBucket> providers = new ConcurrentHashMap<>();
+	private volatile long lastSweep = System.nanoTime();
+
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder userRejected = new LongAdder();
+	private final LongAdder providerRejected = new LongAdder();
+
+	/**
+	 * @param userPerMinute messages per minute and user, 0 = unlimited
+	 * @param userBurst     messages a user may send at once
+	 * @param maxUsers      user buckets kept before idle ones are removed early
+	 */
+	public SpeechRateLimiter(double userPerMinute, double userBurst, int maxUsers) {
+		this.userPerSecond = userPerMinute / 60;
+		this.userBurst = userBurst;
+		this.maxUsers = maxUsers;
+		this.overflow = userPerMinute > 0 ? new TokenBucket(userPerSecond, userBurst) : UNLIMITED;
+	}
+
+	/**
+	 * Creates the limiter from settings.properties.
+	 *
+	 * @return null if rate limiting is disabled
+	 */
+	public static SpeechRateLimiter fromSettings() {
+		if (!Settings.getBoolean(ENABLED, true)) {
+			return null;
+		}
+		return new SpeechRateLimiter(Settings.getDouble(USER_PER_MINUTE, 6), Settings.getDouble(USER_BURST, 3),
+				Settings.getInt(MAX_USERS, 10_000));
+	}
+
+	/**
+	 * Checks and takes the budget for a message. A rejected message takes
+	 * nothing, neither from the user nor from the provider.
+	 *
+	 * @param user     login of the chatter
+	 * @param provider name of the provider which will synthesize the text
+	 * @param chars    length of the text
+	 */
+	public Decision tryAcquire(String user, String provider, int chars) {
+		final long now = System.nanoTime();
+		sweep(now);
+
+		final TokenBucket userBucket = userPerSecond > 0 && user != null ? getUserBucket(user.toLowerCase()) : null;
+		if (userBucket != null && !userBucket.tryAcquire(1, now)) {
+			userRejected.increment();
+			return Decision.USER_LIMITED;
+		}
+
+		final TokenBucket providerBucket = providers.computeIfAbsent(provider, SpeechRateLimiter::createProviderBucket);
+		if (providerBucket != UNLIMITED && !providerBucket.tryAcquire(chars, now)) {
+			// the message is not spoken, so it does not count for the user
+			if (userBucket != null) {
+				userBucket.release(1);
+			}
+			providerRejected.increment();
+			return Decision.PROVIDER_LIMITED;
+		}
+		allowed.increment();
+		return Decision.ALLOWED;
+	}
+
+	private TokenBucket getUserBucket(String user) {
+		TokenBucket bucket = users.get(user);
+		if (bucket == null) {
+			if (users.size() >= maxUsers) {
+				return overflow;
+			}
+			bucket = users.computeIfAbsent(user, u -> new TokenBucket(userPerSecond, userBurst));
+		}
+		return bucket;
+	}
+
+	/**
+	 * Provider budgets can be set per provider, e.g.
+	 * 'rateLimitCharsPerSecond.mary=0' for unlimited.
+	 */
+	private static TokenBucket createProviderBucket(String provider) {
+		final double perSecond = Settings.getDouble(PROVIDER_CHARS_PER_SECOND + "." + provider,
+				Settings.getDouble(PROVIDER_CHARS_PER_SECOND, 100));
+		final double burst = Settings.getDouble(PROVIDER_BURST + "." + provider,
+				Settings.getDouble(PROVIDER_BURST, 1000));
+		return perSecond <= 0 ? UNLIMITED : new TokenBucket(perSecond, burst);
+	}
+
+	/**
+	 * Removes the buckets of users which are idle long enough to be full again.
+	 */
+	private void sweep(long now) {
+		final long sinceLast = now - lastSweep;
+		if (sinceLast < SWEEP_INTERVAL_NANOS && (users.size() < maxUsers || sinceLast < MIN_SWEEP_INTERVAL_NANOS)) {
+			return;
+		}
+		lastSweep = now;
+		for (Iterator<TokenBucket> it = users.values().iterator(); it.hasNext();) {
+			if (it.next().isFull(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	public int getTrackedUsers() {
+		return users.size();
+	}
+
+	public long getAllowed() {
+		return allowed.sum();
+	}
+
+	public long getUserRejected() {
+		return userRejected.sum();
+	}
+
+	public long getProviderRejected() {
+		return providerRejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rate limit[allowed:%s user rejected:%s provider rejected:%s users:%s]", getAllowed(),
+				getUserRejected(), getProviderRejected(), getTrackedUsers());
+	}
+}
@@ -0,0 +1,174 @@
+package ttsbot.speech;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.tts.TTSProvider;
+
+/**
+ * A single message which should be spoken, travels through the
+ * {@link SpeechPipeline}.<br>
+ * Long messages travel as segments, see {@link #segment(String, int)}.
+ */
+public class SpeechRequest {
+	private final TTSProvider provider;
+	private final String user;
+	private final String text;
+	private final String langOverride;
+	private final SsmlVoiceGender genderOverride;
+	private final long createdNanos = System.nanoTime();
+	// when the chat message arrived, set before the request is queued
+	private long receivedNanos = createdNanos;
+	// this message and the duplicates merged into it
+	private final AtomicInteger count = new AtomicInteger(1);
+	// set before the request is queued
+	private SpeechPriority priority = SpeechPriority.VIEWER;
+
+	private volatile CompletableFuture<PcmAudio> audio;
+	private volatile boolean cancelled = false;
+	// the whole message if this is a segment of it, else null
+	private final SpeechRequest parent;
+	private final int segment;
+
+	public SpeechRequest(TTSProvider provider, String user, String text) {
+		this(provider, user, text, null, null);
+	}
+
+	public SpeechRequest(TTSProvider provider, String user, String text, String langOverride,
+			SsmlVoiceGender genderOverride) {
+		this.provider = provider;
+		this.user = user;
+		this.text = text;
+		this.langOverride = langOverride;
+		this.genderOverride = genderOverride;
+		this.parent = null;
+		this.segment = 0;
+	}
+
+	private SpeechRequest(SpeechRequest parent, String text, int segment) {
+		this.provider = parent.provider;
+		this.user = parent.user;
+		this.text = text;
+		this.langOverride = parent.langOverride;
+		this.genderOverride = parent.genderOverride;
+		this.receivedNanos = parent.receivedNanos;
+		this.priority = parent.priority;
+		this.parent = parent;
+		this.segment = segment;
+	}
+
+	/**
+	 * Creates a request for a part of this message, which is synthesized and
+	 * played on its own. Segments share the duplicate count and cancellation of
+	 * the message.
+	 *
+	 * @param index position of the segment, 0 for the first one
+	 */
+	public SpeechRequest segment(String text, int index) {
+		return new SpeechRequest(getMessage(), text, index);
+	}
+
+	/**
+	 * Returns the whole message, this request if it is not a segment.
+	 */
+	public SpeechRequest getMessage() {
+		return parent == null ? this : parent;
+	}
+
+	/**
+	 * Returns true for a message which is not split and for the first segment
+	 * of a split message.
+	 */
+	public boolean isFirstSegment() {
+		return segment == 0;
+	}
+
+	public TTSProvider getProvider() {
+		return provider;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getLangOverride() {
+		return langOverride;
+	}
+
+	public SsmlVoiceGender getGenderOverride() {
+		return genderOverride;
+	}
+
+	public long getCreatedNanos() {
+		return createdNanos;
+	}
+
+	/**
+	 * Returns when the chat message arrived, the creation time for requests which
+	 * did not come from chat.
+	 */
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+	public void setReceivedNanos(long receivedNanos) {
+		this.receivedNanos = receivedNanos;
+	}
+
+	public SpeechPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(SpeechPriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns how many chat messages this request stands for, see
+	 * {@link SpeechCoalescer}.
+	 */
+	public int getCount() {
+		return parent == null ? count.get() : parent.getCount();
+	}
+
+	public int addDuplicate() {
+		return parent == null ? count.incrementAndGet() : parent.addDuplicate();
+	}
+
+	/**
+	 * Marks the request as skipped, it is neither synthesized nor played
+	 * anymore.
+	 */
+	public void cancel() {
+		getMessage().cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return getMessage().cancelled;
+	}
+
+	/**
+	 * Returns the pending synthesis, null if synthesis has not been started yet.
+	 * The audio itself is null if the provider can only play directly.
+	 */
+	public CompletableFuture<PcmAudio> getAudio() {
+		return audio;
+	}
+
+	public void setAudio(CompletableFuture<PcmAudio> audio) {
+		this.audio = audio;
+	}
+
+	@Override
+	public String toString() {
+		final int c = getCount();
+		return String.format("%s: %s", user, text) + (c > 1 ? " (x" + c + ")" : "");
+	}
+}
@@ -0,0 +1,120 @@
+package ttsbot.speech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ttsbot.util.Settings;
+
+/**
+ * Splits long messages into segments which are synthesized and played one
+ * after another.<br>
+ * Text is split at sentence ends, sentences which are too long at clause
+ * boundaries, then between words. Short sentences are packed together up to
+ * the max. length. The first segment has its own, smaller limit: it bounds the
+ * time until the first audio, later segments are synthesized while the first
+ * one is playing.
+ */
+public class TextSegmenter {
+	public static final String ENABLED = "segmentEnabled";
+	public static final String FIRST_MAX_CHARS = "segmentFirstMaxChars";
+	public static final String MAX_CHARS = "segmentMaxChars";
+
+	private static final Pattern SENTENCE = Pattern.compile("(?<=[.!?\\u2026])\\s+|\\s*\\n\\s*");
+	private static final Pattern CLAUSE = Pattern.compile("(?<=[,;:])\\s+|\\s+(?=[-\\u2013\\u2014]\\s)");
+	private static final Pattern WORD = Pattern.compile("\\s+");
+
+	private final int firstMaxChars;
+	private final int maxChars;
+
+	/**
+	 * @param firstMaxChars max. length of the first segment
+	 * @param maxChars      max. length of the other segments
+	 */
+	public TextSegmenter(int firstMaxChars, int maxChars) {
+		this.firstMaxChars = Math.max(1, firstMaxChars);
+		this.maxChars = Math.max(1, maxChars);
+	}
+
+	/**
+	 * Creates the segmenter for the provider from settings.properties, the
+	 * limits can be set per provider, e.g. 'segmentMaxChars.mary=150'.
+	 */
+	public static TextSegmenter fromSettings(String provider) {
+		return new TextSegmenter(
+				Settings.getInt(FIRST_MAX_CHARS + "." + provider, Settings.getInt(FIRST_MAX_CHARS, 120)),
+				Settings.getInt(MAX_CHARS + "." + provider, Settings.getInt(MAX_CHARS, 250)));
+	}
+
+	/**
+	 * Returns the segments of the text in speaking order, the text itself if it
+	 * is short enough.
+	 */
+	public List<String> split(String text) {
+		final String trimmed = text.trim();
+		if (trimmed.length() <= firstMaxChars) {
+			return Collections.singletonList(trimmed);
+		}
+		final List<String> segments = new ArrayList<>();
+		final StringBuilder current = new StringBuilder();
+		for (String sentence : SENTENCE.split(trimmed)) {
+			add(segments, current, sentence, SENTENCE);
+		}
+		flush(segments, current);
+		return segments;
+	}
+
+	/**
+	 * Appends the piece to the current segment, or starts a new one. Pieces
+	 * longer than a segment are split at the next finer boundary.
+	 */
+	private void add(List<String> segments, StringBuilder current, String piece, Pattern level) {
+		if (piece.isEmpty()) {
+			return;
+		}
+		final int separator = current.length() > 0 ? 1 : 0;
+		if (current.length() + separator + piece.length() <= limit(segments)) {
+			if (separator > 0) {
+				current.append(' ');
+			}
+			current.append(piece);
+			return;
+		}
+		flush(segments, current);
+		if (piece.length() <= limit(segments)) {
+			current.append(piece);
+			return;
+		}
+
+		if (level == SENTENCE) {
+			for (String clause : CLAUSE.split(piece)) {
+				add(segments, current, clause, CLAUSE);
+			}
+		} else if (level == CLAUSE) {
+			for (String word : WORD.split(piece)) {
+				add(segments, current, word, WORD);
+			}
+		} else {
+			// a single word longer than a segment
+			String rest = piece;
+			while (rest.length() > limit(segments)) {
+				final int limit = limit(segments);
+				segments.add(rest.substring(0, limit));
+				rest = rest.substring(limit);
+			}
+			current.append(rest);
+		}
+	}
+
+	private int limit(List<String> segments) {
+		return segments.isEmpty() ? firstMaxChars : maxChars;
+	}
+
+	private static void flush(List<String> segments, StringBuilder current) {
+		if (current.length() > 0) {
+			segments.add(current.toString());
+			current.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package ttsbot.speech;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket.<br>
+ * Implemented as generic cell rate algorithm: instead of a token count the
+ * bucket stores the time at which it would be full again, so taking tokens is
+ * a single compare-and-set on one long.
+ */
+public class TokenBucket {
+	private final long nanosPerToken;
+	private final long burstNanos;
+
+	// time at which all taken tokens are refilled
+	private final AtomicLong fullAt;
+
+	/**
+	 * @param tokensPerSecond refill rate
+	 * @param burst           bucket size, the number of tokens available at once
+	 */
+	public TokenBucket(double tokensPerSecond, double burst) {
+		this.nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond);
+		this.burstNanos = (long) (burst * nanosPerToken);
+		// full since a while, so a 'now' taken just before creation sees the whole burst
+		this.fullAt = new AtomicLong(System.nanoTime() - burstNanos);
+	}
+
+	public boolean tryAcquire(int tokens) {
+		return tryAcquire(tokens, System.nanoTime());
+	}
+
+	/**
+	 * Takes the tokens if available.
+	 *
+	 * @param now {@link System#nanoTime()}
+	 * @return false if there are not enough tokens, nothing is taken then
+	 */
+	public boolean tryAcquire(int tokens, long now) {
+		final long cost = tokens * nanosPerToken;
+		while (true) {
+			final long current = fullAt.get();
+			final long start = current - now < 0 ? now : current;
+			final long next = start + cost;
+			if (next - now > burstNanos) {
+				return false;
+			}
+			if (fullAt.compareAndSet(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives back tokens taken with {@link #tryAcquire(int, long)}, e.g. when a
+	 * later check rejected the request.
+	 */
+	public void release(int tokens) {
+		fullAt.addAndGet(-tokens * nanosPerToken);
+	}
+
+	/**
+	 * Returns true if no tokens are taken, such a bucket can be dropped and
+	 * re-created later without changing the outcome.
+	 */
+	public boolean isFull(long now) {
+		return fullAt.get() - now <= 0;
+	}
+}
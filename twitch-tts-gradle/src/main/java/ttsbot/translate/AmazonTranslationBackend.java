@@ -0,0 +1,76 @@
+package ttsbot.translate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.translate.AmazonTranslate;
+import com.amazonaws.services.translate.AmazonTranslateClient;
+import com.amazonaws.services.translate.AmazonTranslateClientBuilder;
+import com.amazonaws.services.translate.model.TranslateTextRequest;
+
+/**
+ * Amazon translate, the client is created once and reused.<br>
+ * The realtime API has no batch call, the texts of a batch are translated one
+ * after another.
+ */
+public class AmazonTranslationBackend implements TranslationBackend {
+	private final AWSCredentialsProvider credentials;
+	private final String region;
+	private final String endpoint;
+	private AmazonTranslate client;
+
+	/**
+	 * @param endpoint null for aws
+	 */
+	public AmazonTranslationBackend(AWSCredentialsProvider credentials, String region, String endpoint) {
+		this.credentials = credentials;
+		this.region = region;
+		this.endpoint = endpoint;
+	}
+
+	@Override
+	public String getName() {
+		return "amazon";
+	}
+
+	private synchronized AmazonTranslate getClient() {
+		if (client == null) {
+			final AmazonTranslateClientBuilder b = AmazonTranslateClient.builder().withCredentials(credentials);
+			client = (endpoint == null ? b.withRegion(region)
+					: b.withEndpointConfiguration(new EndpointConfiguration(endpoint, region))).build();
+		}
+		return client;
+	}
+
+	@Override
+	public List<String> translate(String src, String dst, List<String> texts) throws Exception {
+		final AmazonTranslate translate = getClient();
+		final List<String> result = new ArrayList<>(texts.size());
+		for (String text : texts) {
+			result.add(translate.translateText(new TranslateTextRequest() //
+					.withText(text).withSourceLanguageCode(src) //
+					.withTargetLanguageCode(dst)).getTranslatedText());
+		}
+		return result;
+	}
+
+	/**
+	 * The sdk version in use cannot list the languages, unsupported languages
+	 * fail on translation.
+	 */
+	@Override
+	public Set<String> loadLanguages() {
+		return null;
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (client != null) {
+			client.shutdown();
+			client = null;
+		}
+	}
+}
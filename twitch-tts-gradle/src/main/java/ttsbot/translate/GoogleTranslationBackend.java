@@ -0,0 +1,63 @@
+package ttsbot.translate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.cloud.translate.Language;
+import com.google.cloud.translate.Translate;
+import com.google.cloud.translate.Translate.TranslateOption;
+import com.google.cloud.translate.TranslateOptions;
+import com.google.cloud.translate.Translation;
+
+/**
+ * Google cloud translation, translates a batch of texts with one request.<br>
+ * The service is created once and reused.
+ */
+public class GoogleTranslationBackend implements TranslationBackend {
+	private final CredentialsProvider credentials;
+	private Translate service;
+
+	public GoogleTranslationBackend(CredentialsProvider credentials) {
+		this.credentials = credentials;
+	}
+
+	@Override
+	public String getName() {
+		return "google";
+	}
+
+	private synchronized Translate getService() throws Exception {
+		if (service == null) {
+			service = TranslateOptions.newBuilder() //
+					.setCredentials(credentials.getCredentials()) //
+					.build() //
+					.getService();
+		}
+		return service;
+	}
+
+	@Override
+	public List<String> translate(String src, String dst, List<String> texts) throws Exception {
+		final List<Translation> translations = getService().translate(texts, TranslateOption.sourceLanguage(src),
+				TranslateOption.targetLanguage(dst));
+		final List<String> result = new ArrayList<>(translations.size());
+		for (Translation t : translations) {
+			result.add(StringEscapeUtils.unescapeHtml4(t.getTranslatedText()));
+		}
+		return result;
+	}
+
+	@Override
+	public Set<String> loadLanguages() throws Exception {
+		final Set<String> codes = new TreeSet<>();
+		for (Language language : getService().listSupportedLanguages()) {
+			codes.add(language.getCode().toLowerCase());
+		}
+		return codes;
+	}
+}
@@ -0,0 +1,29 @@
+package ttsbot.translate;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A translation service used by the {@link Translator}.
+ */
+public interface TranslationBackend {
+
+	public String getName();
+
+	/**
+	 * Translates the texts, with one call if the service supports it.
+	 *
+	 * @return the translations in the order of the texts
+	 */
+	public List<String> translate(String src, String dst, List<String> texts) throws Exception;
+
+	/**
+	 * Loads the codes of the supported languages.
+	 *
+	 * @return null if the service cannot list its languages
+	 */
+	public Set<String> loadLanguages() throws Exception;
+
+	public default void shutdown() {
+	}
+}
@@ -0,0 +1,280 @@
+package ttsbot.translate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Translates texts asynchronously with a {@link TranslationBackend}.<br>
+ * Results are kept in a LRU cache and equal requests in flight share one
+ * translation. Requests are sent by one worker thread: everything which queued
+ * up while the previous call was running is sent as one batch per language
+ * pair, so there is no extra latency when idle and fewer calls under load.<br>
+ * The supported languages are loaded once in the background.<br>
+ * The worker is started on first use and again after a {@link #shutdown()}.
+ */
+public class Translator {
+	private final static Logger log = LoggerFactory.getLogger(Translator.class);
+
+	public static final String CACHE_SIZE = "translationCacheSize";
+	public static final String BATCH_SIZE = "translationBatchSize";
+
+	private final TranslationBackend backend;
+	private final int batchSize;
+
+	private final Map<Key, String> cache;
+	private final Map<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+	private final BlockingQueue<Key> queue = new LinkedBlockingQueue<>();
+	// guarded by this
+	private ExecutorService worker;
+	private volatile boolean started = false;
+	// null while unknown
+	private volatile Set<String> languages;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder calls = new LongAdder();
+	private final Timer callTiming;
+
+	public Translator(TranslationBackend backend) {
+		this(backend, Settings.getInt(CACHE_SIZE, 1000), Settings.getInt(BATCH_SIZE, 16));
+	}
+
+	/**
+	 * @param cacheSize number of cached translations
+	 * @param batchSize max. texts per call
+	 */
+	public Translator(TranslationBackend backend, int cacheSize, int batchSize) {
+		this.backend = backend;
+		this.batchSize = Math.max(1, batchSize);
+		this.cache = new LinkedHashMap<Key, String>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		this.callTiming = Metrics.get().timer("translate_call_seconds", "backend", backend.getName());
+	}
+
+	/**
+	 * Translates the text in the background.
+	 *
+	 * @param src language code of the text, e.g. 'de'
+	 * @param dst language code of the translation
+	 */
+	public CompletableFuture<String> translate(String src, String dst, String text) {
+		final Key key = new Key(src.toLowerCase(), dst.toLowerCase(), text);
+		final String cached;
+		synchronized (cache) {
+			cached = cache.get(key);
+		}
+		if (cached != null) {
+			hits.increment();
+			return CompletableFuture.completedFuture(cached);
+		}
+		misses.increment();
+		final CompletableFuture<String> future = inFlight.computeIfAbsent(key, k -> {
+			queue.add(k);
+			return new CompletableFuture<>();
+		});
+		// after queueing, a shutdown in between fails the future instead of
+		// leaving it to a stopped worker
+		start();
+		return future;
+	}
+
+	/**
+	 * Returns false only if the language is known to be unsupported, true while
+	 * the languages are being loaded.
+	 */
+	public boolean isSupported(String lang) {
+		start();
+		final Set<String> l = languages;
+		return l == null || l.contains(lang.toLowerCase());
+	}
+
+	private void start() {
+		if (started) {
+			return;
+		}
+		synchronized (this) {
+			if (started) {
+				return;
+			}
+			worker = Executors.newSingleThreadExecutor(Utils.namedThreadFactory("translate-" + backend.getName()));
+			worker.execute(this::loadLanguages);
+			worker.execute(this::work);
+			started = true;
+		}
+	}
+
+	/**
+	 * Stops the worker and fails the pending translations, the next translation
+	 * starts a new worker.
+	 */
+	public synchronized void shutdown() {
+		if (worker != null) {
+			worker.shutdownNow();
+			worker = null;
+		}
+		started = false;
+		queue.clear();
+		final CancellationException stopped = new CancellationException("translator shut down");
+		// completed here even if the interrupted worker is about to fail them too
+		inFlight.forEach((key, future) -> {
+			future.completeExceptionally(stopped);
+			inFlight.remove(key, future);
+		});
+		backend.shutdown();
+		log.info("{}", this);
+	}
+
+	private void loadLanguages() {
+		try {
+			final Set<String> loaded = backend.loadLanguages();
+			if (loaded != null) {
+				languages = Collections.unmodifiableSet(loaded);
+				log.info("{} supports {} languages", backend.getName(), loaded.size());
+			}
+		} catch (Exception e) {
+			log.warn("could not load {} languages: {}", backend.getName(), e.toString());
+		}
+	}
+
+	private void work() {
+		final List<Key> batch = new ArrayList<>();
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+
+			// language pair -> texts, in queue order
+			final Map<String, List<Key>> pairs = new LinkedHashMap<>();
+			for (Key key : batch) {
+				pairs.computeIfAbsent(key.src + ">" + key.dst, p -> new ArrayList<>()).add(key);
+			}
+			for (List<Key> keys : pairs.values()) {
+				call(keys);
+			}
+			batch.clear();
+		}
+	}
+
+	private void call(List<Key> keys) {
+		final Key first = keys.get(0);
+		final List<String> texts = new ArrayList<>(keys.size());
+		for (Key key : keys) {
+			texts.add(key.text);
+		}
+
+		final long start = System.nanoTime();
+		List<String> result = null;
+		Exception error = null;
+		try {
+			calls.increment();
+			result = backend.translate(first.src, first.dst, texts);
+			if (result.size() != keys.size()) {
+				throw new IllegalStateException(result.size() + " translations for " + keys.size() + " texts");
+			}
+		} catch (Exception e) {
+			error = e;
+			log.error("translation {} > {} failed: {}", first.src, first.dst, e.toString());
+		} finally {
+			callTiming.recordSince(start);
+		}
+
+		for (int i = 0; i < keys.size(); i++) {
+			final Key key = keys.get(i);
+			if (error == null) {
+				synchronized (cache) {
+					cache.put(key, result.get(i));
+				}
+			}
+			final CompletableFuture<String> future = inFlight.remove(key);
+			if (future == null) {
+				continue;
+			}
+			if (error == null) {
+				future.complete(result.get(i));
+			} else {
+				future.completeExceptionally(error);
+			}
+		}
+	}
+
+	public long getCacheHits() {
+		return hits.sum();
+	}
+
+	public long getCacheMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of calls to the translation service.
+	 */
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	@Override
+	public String toString() {
+		final int size;
+		synchronized (cache) {
+			size = cache.size();
+		}
+		return String.format("translator[%s cached:%s hits:%s misses:%s calls:%s %s]", backend.getName(), size,
+				getCacheHits(), getCacheMisses(), getCalls(), callTiming);
+	}
+
+	private static class Key {
+		final String src;
+		final String dst;
+		final String text;
+
+		Key(String src, String dst, String text) {
+			this.src = src;
+			this.dst = dst;
+			this.text = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(src, dst, text);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return src.equals(other.src) && dst.equals(other.dst) && text.equals(other.text);
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package ttsbot.tts;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
@@ -11,7 +9,11 @@ import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.PropertiesCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.polly.AmazonPolly;
 import com.amazonaws.services.polly.AmazonPollyClientBuilder;
 import com.amazonaws.services.polly.model.DescribeVoicesRequest;
@@ -26,14 +29,15 @@ import com.amazonaws.services.polly.model.DescribeVoicesResult;
 import com.amazonaws.services.polly.model.OutputFormat;
 import com.amazonaws.services.polly.model.SynthesizeSpeechRequest;
 import com.amazonaws.services.polly.model.SynthesizeSpeechResult;
-import com.amazonaws.services.translate.AmazonTranslate;
-import com.amazonaws.services.translate.AmazonTranslateClient;
-import com.amazonaws.services.translate.model.TranslateTextRequest;
-import com.amazonaws.services.translate.model.TranslateTextResult;
+import com.amazonaws.services.polly.model.Voice;
 import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
 
-import uk.co.caprica.vlcj.factory.MediaPlayerFactory;
-import uk.co.caprica.vlcj.player.base.MediaPlayer;
+import ttsbot.audio.PcmAudio;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.translate.AmazonTranslationBackend;
+import ttsbot.translate.Translator;
+import ttsbot.util.Utils;
 
 public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvider {
 	private final static Logger log = LoggerFactory.getLogger(AmazonPollyTTSProvider.class);
@@ -44,24 +48,49 @@ public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvid
 	public static final String DEFAULT_VOICE = "Marlene";
 	final String REGION = "eu-west-1";
 
+	/** polly returns raw 16 bit signed little endian mono pcm */
+	static final AudioFormat PCM_FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
 	// TTS settings
 	private float volume = DEFAULT_VOLUME;
 	private String lang = DEFAULT_LANG;
 	private String preferredVoice = "";
 
-	private Collection<String> knownLanguagesCached = null;
+	private final VoiceCatalog voiceCatalog = new VoiceCatalog(getName(), this::loadVoices);
+	// reading the audio stream, includes the download of the body
+	private final Timer decodeTiming = Metrics.get().timer("decode_seconds", "provider", getName());
 
 	AmazonPolly client;
+	private final Translator translator;
 	AWSCredentials awsCredentials;
+	private final boolean fixedCredentials;
 
 	public AmazonPollyTTSProvider() {
-		if (getCredentialFile() == null) {
+		this(null, null);
+	}
+
+	/**
+	 * @param endpoint    e.g. 'http://localhost:4566' for a local stand-in, null
+	 *                    for aws
+	 * @param credentials fixed credentials, null to load them from
+	 *                    aws-credentials.properties
+	 */
+	public AmazonPollyTTSProvider(String endpoint, AWSCredentials credentials) {
+		if (credentials == null && getCredentialFile() == null) {
 			throw new RuntimeException("credentials not found");
 		}
+		this.awsCredentials = credentials;
+		this.fixedCredentials = credentials != null;
+
 		AmazonPollyClientBuilder clientBuilder = AmazonPollyClientBuilder.standard();
 		clientBuilder.setCredentials(this);
-		clientBuilder.setRegion("eu-west-1");
+		if (endpoint == null) {
+			clientBuilder.setRegion(REGION);
+		} else {
+			clientBuilder.setEndpointConfiguration(new EndpointConfiguration(endpoint, REGION));
+		}
 		client = clientBuilder.build();
+		translator = new Translator(new AmazonTranslationBackend(this, REGION, endpoint));
 	}
 
 	@Override
@@ -71,8 +100,7 @@ public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvid
 
 	@Override
 	public boolean isAvailable() {
-		Collection<String> listSupportedVoices = listSupportedVoices(DEFAULT_LANG);
-		if (listSupportedVoices.isEmpty()) {
+		if (!voiceCatalog.load() || listSupportedVoices(DEFAULT_LANG).isEmpty()) {
 			return false;
 		}
 		return true;
@@ -80,6 +108,9 @@ public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvid
 
 	@Override
 	public AWSCredentials getCredentials() {
+		if (fixedCredentials) {
+			return awsCredentials;
+		}
 		final Path path = getCredentialFile();
 
 		try {
@@ -145,20 +176,7 @@ public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvid
 
 	@Override
 	public Collection<String> getKnownLanguages() {
-		if (knownLanguagesCached == null) {
-			// fetch known languages
-			Set<String> languages = new TreeSet<>();
-			DescribeVoicesRequest voicesRequest = new DescribeVoicesRequest();
-			String nextToken;
-			do {
-				DescribeVoicesResult voicesResult = client.describeVoices(voicesRequest);
-				nextToken = voicesResult.getNextToken();
-				voicesRequest.setNextToken(nextToken);
-				voicesResult.getVoices().stream().forEach(v -> languages.add(v.getLanguageCode()));
-			} while (nextToken != null);
-			knownLanguagesCached = languages;
-		}
-		return knownLanguagesCached;
+		return voiceCatalog.getLanguages();
 	}
 
 	@Override
@@ -176,99 +194,99 @@ public class AmazonPollyTTSProvider implements TTSProvider, AWSCredentialsProvid
 		syntesizeAndPlay(value, null, null);
 	}
 
+	/**
+	 * Streams the pcm response into the audio output while it is still being
+	 * downloaded.
+	 */
 	@Override
 	public void syntesizeAndPlay(String text, String langOverride, SsmlVoiceGender genderOverride) throws Exception {
-
-		SynthesizeSpeechRequest synthesizeSpeechRequest = new SynthesizeSpeechRequest()
-				.withOutputFormat(OutputFormat.Mp3) //
-				.withVoiceId(preferredVoice) //
-				.withLanguageCode(lang) //
-				.withText(text);
-
-		File tmpFile = File.createTempFile("polly", "speech");
-		try (FileOutputStream outputStream = new FileOutputStream(tmpFile)) {
-			SynthesizeSpeechResult synthesizeSpeechResult = client.synthesizeSpeech(synthesizeSpeechRequest);
-			byte[] buffer = new byte[2 * 1024];
-			int readBytes;
-
-			try (InputStream in = synthesizeSpeechResult.getAudioStream()) {
-				while ((readBytes = in.read(buffer)) > 0) {
-					outputStream.write(buffer, 0, readBytes);
-				}
-			}
-		} catch (Exception e) {
-			log.error("Exception caught: " + e);
+		SynthesizeSpeechResult result = client.synthesizeSpeech(createRequest(text));
+		try (InputStream in = result.getAudioStream();
+				AudioInputStream audio = new AudioInputStream(in, PCM_FORMAT, AudioSystem.NOT_SPECIFIED)) {
+			Utils.playAudio(audio, volume);
 		}
-
-		MediaPlayer mediaPlayer = new MediaPlayerFactory().mediaPlayers().newMediaPlayer();
-		Thread.sleep(50);
-		int volPercent = calcVolume(getVolume());
-
-		mediaPlayer.audio().setVolume(volPercent);
-		mediaPlayer.media().play(tmpFile.getAbsolutePath());
 	}
 
-	private int calcVolume(float volume) {
-		if (volume > 0) {
-			// 0 - 6 = 100 - 200
-			float volChange = 100.0f / 6 * volume;
-			return (int) (100 + volChange);
-		}
-		if (volume < 0) {
-			// -70 - 0 = 0- 100
-			float volChange = 100.0f / 70 * volume;
-			return (int) (100 + volChange);
+	@Override
+	public PcmAudio synthesize(String text, String langOverride, SsmlVoiceGender genderOverride) throws Exception {
+		SynthesizeSpeechResult result = client.synthesizeSpeech(createRequest(text));
+		final long decodeStart = System.nanoTime();
+		try (InputStream in = result.getAudioStream();
+				AudioInputStream audio = new AudioInputStream(in, PCM_FORMAT, AudioSystem.NOT_SPECIFIED)) {
+			return PcmAudio.fromStream(audio);
+		} finally {
+			decodeTiming.recordSince(decodeStart);
 		}
-		return 100;
+	}
+
+	private SynthesizeSpeechRequest createRequest(String text) {
+		return new SynthesizeSpeechRequest() //
+				.withOutputFormat(OutputFormat.Pcm) //
+				.withSampleRate(String.valueOf((int) PCM_FORMAT.getSampleRate())) //
+				.withVoiceId(preferredVoice) //
+				.withLanguageCode(lang) //
+				.withText(text) //
+				// covers the whole call including retries
+				.withSdkClientExecutionTimeout((int) getSynthesisTimeoutMillis());
 	}
 
 	@Override
 	public String translate(String src, String dst, String txt) {
 		try {
-			AmazonTranslate translate = AmazonTranslateClient.builder().withCredentials(this).withRegion(REGION)
-					.build();
-
-			TranslateTextRequest request = new TranslateTextRequest()//
-					.withText(txt).withSourceLanguageCode(src)//
-					.withTargetLanguageCode(dst);
-			TranslateTextResult result = translate.translateText(request);
-			return result.getTranslatedText();
+			return translator.translate(src, dst, txt).get(TRANSLATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 		} catch (Exception e) {
 			log.error("error during translate", e);
 		}
 		return "";
 	}
 
+	@Override
+	public Translator getTranslator() {
+		return translator;
+	}
+
+	@Override
+	public void shutdown() {
+		translator.shutdown();
+		voiceCatalog.shutdown();
+	}
+
 	@Override
 	public boolean isKnownLanguage(String value) {
-		for (String lang : knownLanguagesCached) {
-			if (lang.equals(value)) {
-				return true;
-			}
-		}
-		return false;
+		return voiceCatalog.isKnownLanguage(value);
 	}
 
 	@Override
-	public boolean isKnownVoice(String lang) {
-		Collection<String> listSupportedVoices = listSupportedVoices(getLang());
-		if (listSupportedVoices.contains(lang)) {
-			return true;
-		}
-		return false;
+	public boolean isKnownVoice(String voice) {
+		return voiceCatalog.isKnownVoice(voice, getLang());
 	}
 
 	@Override
 	public Collection<String> listSupportedVoices(String lang) {
-		List<String> voices = new ArrayList<>();
+		return voiceCatalog.getVoiceNames(lang);
+	}
 
-		DescribeVoicesRequest voicesRequest = new DescribeVoicesRequest().withLanguageCode(lang);
+	/**
+	 * Fetches all pages of polly voices.
+	 */
+	@Override
+	public List<VoiceInfo> loadVoices() {
+		List<VoiceInfo> voices = new ArrayList<>();
+
+		DescribeVoicesRequest voicesRequest = new DescribeVoicesRequest();
 		String nextToken;
 		do {
 			DescribeVoicesResult voicesResult = client.describeVoices(voicesRequest);
 			nextToken = voicesResult.getNextToken();
 			voicesRequest.setNextToken(nextToken);
-			voicesResult.getVoices().stream().forEach(v -> voices.add(v.getName()));
+			for (Voice v : voicesResult.getVoices()) {
+				List<String> languages = new ArrayList<>();
+				languages.add(v.getLanguageCode());
+				if (v.getAdditionalLanguageCodes() != null) {
+					languages.addAll(v.getAdditionalLanguageCodes());
+				}
+				voices.add(new VoiceInfo(v.getName(), languages, v.getGender()));
+			}
 		} while (nextToken != null);
 
 		return voices;
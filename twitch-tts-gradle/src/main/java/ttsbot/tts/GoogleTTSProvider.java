@@ -3,40 +3,53 @@ package ttsbot.tts;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threeten.bp.Duration;
 
+import com.google.api.core.ApiFuture;
 import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
 import com.google.auth.Credentials;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.texttospeech.v1.AudioConfig;
+import com.google.cloud.texttospeech.v1.AudioEncoding;
 import com.google.cloud.texttospeech.v1.ListVoicesRequest;
 import com.google.cloud.texttospeech.v1.ListVoicesResponse;
 import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
 import com.google.cloud.texttospeech.v1.SynthesisInput;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechRequest;
 import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
 import com.google.cloud.texttospeech.v1.TextToSpeechClient;
 import com.google.cloud.texttospeech.v1.TextToSpeechSettings;
 import com.google.cloud.texttospeech.v1.TextToSpeechSettings.Builder;
 import com.google.cloud.texttospeech.v1.Voice;
 import com.google.cloud.texttospeech.v1.VoiceSelectionParams;
-import com.google.cloud.translate.Language;
-import com.google.cloud.translate.Translate;
-import com.google.cloud.translate.Translate.TranslateOption;
-import com.google.cloud.translate.TranslateOptions;
-import com.google.cloud.translate.Translation;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 
+import ttsbot.audio.PcmAudio;
+import ttsbot.audio.WavBuffer;
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.translate.GoogleTranslationBackend;
+import ttsbot.translate.Translator;
+import ttsbot.util.Settings;
 import ttsbot.util.Utils;
 
 /**
@@ -46,6 +59,8 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 	private final static Logger log = LoggerFactory.getLogger(GoogleTTSProvider.class);
 	public static final String DEFAULT_LANG = "de";
 	public static final String DEFAULT_VOICE = "de-DE-Wavenet-A";
+	/** audio requested from google: LINEAR16 (wav) or MP3 */
+	public static final String AUDIO_ENCODING = "googleAudioEncoding";
 
 	// TTS settings
 	private double speakingRate = 0;
@@ -54,10 +69,28 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 	private String lang = DEFAULT_LANG;
 	private SsmlVoiceGender gender = SsmlVoiceGender.MALE;
 	private String preferredVoice = "";
+	// switched to LINEAR16 if the returned audio can not be decoded
+	private volatile AudioEncoding audioEncoding = audioEncodingFromSettings();
 
 	// google API credentials
 	GoogleCredentials credentials;
 
+	// one long-lived client (gRPC channel), created on first use
+	private volatile TextToSpeechClient client;
+	// null for the google endpoint
+	private final TransportChannelProvider channelProvider;
+	private final Timer clientCreateTiming = Metrics.get().timer("client_create_seconds", "provider", getName());
+	private final Timer synthesizeTiming = Metrics.get().timer("api_call_seconds", "provider", getName(), "call",
+			"synthesize");
+	private final Timer listVoicesTiming = Metrics.get().timer("api_call_seconds", "provider", getName(), "call",
+			"list_voices");
+	private final Timer decodeTiming = Metrics.get().timer("decode_seconds", "provider", getName());
+	private final Counter responseBytes = Metrics.get().counter("synthesis_response_bytes_total", "provider",
+			getName());
+
+	private final VoiceCatalog voiceCatalog = new VoiceCatalog(getName(), this::loadVoices);
+	private final Translator translator = new Translator(new GoogleTranslationBackend(this));
+
 	protected List<String> knownLanguages = Lists.newArrayList(//
 			"de", //
 			"en-GB", //
@@ -92,6 +125,7 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 
 	public GoogleTTSProvider() throws IOException {
 		super();
+		this.channelProvider = null;
 		try {
 			this.credentials = loadCredentials("google-credentials.json");
 
@@ -101,20 +135,124 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 		}
 	}
 
+	/**
+	 * Creates a provider which talks to the given channel without credentials,
+	 * e.g. an in-process stand-in for load tests.
+	 */
+	public GoogleTTSProvider(TransportChannelProvider channelProvider) {
+		this.channelProvider = channelProvider;
+	}
+
 	@Override
 	public String getName() {
 		return "google";
 	}
 
+	/**
+	 * Also warms up the client, so the first message does not pay for the
+	 * channel setup.
+	 */
 	@Override
 	public boolean isAvailable() {
-		Collection<String> listSupportedVoices = listSupportedVoices(DEFAULT_LANG);
-		if (listSupportedVoices.isEmpty()) {
+		if (!voiceCatalog.load() || listSupportedVoices(DEFAULT_LANG).isEmpty()) {
 			return false;
 		}
+		log.info("google client warmed up, {} {}", clientCreateTiming, listVoicesTiming);
 		return true;
 	}
 
+	/**
+	 * Returns the shared client, creates it on first use.<br>
+	 * The client keeps its gRPC channel open (with keep-alive pings), so
+	 * subsequent calls skip channel setup, TLS handshake and credential loading.
+	 */
+	TextToSpeechClient getClient() throws IOException {
+		TextToSpeechClient c = client;
+		if (c == null) {
+			synchronized (this) {
+				c = client;
+				if (c == null) {
+					long start = System.nanoTime();
+					client = c = TextToSpeechClient.create(createClientSettings());
+					clientCreateTiming.recordSince(start);
+				}
+			}
+		}
+		return c;
+	}
+
+	private TextToSpeechSettings createClientSettings() throws IOException {
+		final Builder b = TextToSpeechSettings.newBuilder();
+		// deadline per call, the default settings have none for synthesize
+		b.synthesizeSpeechSettings().setSimpleTimeoutNoRetries(Duration.ofMillis(getSynthesisTimeoutMillis()));
+		b.listVoicesSettings().setSimpleTimeoutNoRetries(Duration.ofSeconds(3));
+		if (channelProvider != null) {
+			b.setCredentialsProvider(NoCredentialsProvider.create());
+			b.setTransportChannelProvider(channelProvider);
+			return b.build();
+		}
+		b.setCredentialsProvider(this);
+		b.setTransportChannelProvider(TextToSpeechSettings.defaultGrpcTransportProviderBuilder() //
+				.setKeepAliveTime(Duration.ofSeconds(30)) //
+				.setKeepAliveTimeout(Duration.ofSeconds(10)) //
+				.setKeepAliveWithoutCalls(true) //
+				.build());
+		return b.build();
+	}
+
+	/**
+	 * Closes the shared client, the next call creates a new one.
+	 */
+	@Override
+	public synchronized void shutdown() {
+		translator.shutdown();
+		voiceCatalog.shutdown();
+		if (client == null) {
+			return;
+		}
+		log.info("closing google client, {} {}", clientCreateTiming, synthesizeTiming);
+		client.shutdown();
+		try {
+			if (!client.awaitTermination(2, TimeUnit.SECONDS)) {
+				client.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			client.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		client = null;
+	}
+
+	public Timer getSynthesizeTiming() {
+		return synthesizeTiming;
+	}
+
+	/**
+	 * Reads {@link #AUDIO_ENCODING}, unknown values fall back to LINEAR16. So
+	 * does OGG_OPUS, there is no opus decoder on the classpath.
+	 */
+	static AudioEncoding audioEncodingFromSettings() {
+		final String name = Settings.getString(AUDIO_ENCODING, AudioEncoding.LINEAR16.name()).trim().toUpperCase();
+		try {
+			final AudioEncoding encoding = AudioEncoding.valueOf(name);
+			if (encoding == AudioEncoding.OGG_OPUS) {
+				log.warn("{} {} can not be decoded, using LINEAR16", AUDIO_ENCODING, name);
+				return AudioEncoding.LINEAR16;
+			}
+			if (encoding != AudioEncoding.AUDIO_ENCODING_UNSPECIFIED && encoding != AudioEncoding.UNRECOGNIZED) {
+				return encoding;
+			}
+		} catch (IllegalArgumentException e) {
+			// logged below
+		}
+		log.warn("unknown {} '{}', using LINEAR16", AUDIO_ENCODING, name);
+		return AudioEncoding.LINEAR16;
+	}
+
+	public AudioEncoding getAudioEncoding() {
+		return audioEncoding;
+	}
+
 	@Override
 	public void setDefault() {
 		lang = DEFAULT_LANG;
@@ -126,21 +264,12 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 	}
 
 	public boolean isKnownLanguage(String dst) {
-		for (String lang : knownLanguages) {
-			if (lang.startsWith(dst)) {
-				return true;
-			}
-		}
-		return false;
+		return voiceCatalog.isKnownLanguage(dst);
 	}
 
 	@Override
-	public boolean isKnownVoice(String lang) {
-		Collection<String> listSupportedVoices = listSupportedVoices(getLang());
-		if (listSupportedVoices.contains(lang)) {
-			return true;
-		}
-		return false;
+	public boolean isKnownVoice(String voice) {
+		return voiceCatalog.isKnownVoice(voice, getLang());
 	}
 
 	@Override
@@ -239,54 +368,154 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 	}
 
 	/**
-	 * Calls google's text-to-speech with the given text and plays the created wav
-	 * directly.<br>
+	 * Calls google's text-to-speech with the given text and plays the created
+	 * audio directly.<br>
+	 * Compressed audio is not decoded up front, the audio engine decodes it chunk
+	 * by chunk while playing.
 	 */
 	public void syntesizeAndPlay(String text, String langOverride, SsmlVoiceGender genderOverride) throws IOException {
 		if (volume <= -96) {
 			return;
 		}
 
-		Builder builder = TextToSpeechSettings.newBuilder();
-		builder.setCredentialsProvider(this);
-		TextToSpeechSettings settings = builder.build();
-
-		// Instantiates a client
-		try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create(settings)) {
-
-			// Set the text input to be synthesized
-			SynthesisInput input = SynthesisInput.newBuilder() //
-					.setText(text)//
-					.build();
-
-			// Build the voice request, select the language code ("en-US") and the ssml
-			// voice gender
-			// ("neutral")
-			VoiceSelectionParams deVoiceMale = VoiceSelectionParams.newBuilder() //
-					.setLanguageCode(langOverride != null ? langOverride : lang) //
-					.setSsmlGender(genderOverride != null ? genderOverride : gender) //
-					.setName(preferredVoice) //
-					.build();
-
-			// Select the type of audio file you want returned
-			AudioConfig audioConfig = AudioConfig.newBuilder()
-					.setAudioEncoding(com.google.cloud.texttospeech.v1.AudioEncoding.LINEAR16)//
-					// .setVolumeGainDb(volume) volume is handled by the player
-					.setSpeakingRate(speakingRate) // 0.25 - 4
-					.setPitch(pitch) // --20 - +20
-					.build();
-
-			// Perform the text-to-speech request on the text input with the selected voice
-			// parameters and audio file type
-			SynthesizeSpeechResponse response = textToSpeechClient.synthesizeSpeech(input, deVoiceMale, audioConfig);
-
-			// Get the audio contents from the response
-			ByteString audioContents = response.getAudioContent();
-
-			// play wav
-			Utils.playWAV(audioContents, volume);
-		} catch (Throwable e) {
-			log.warn(e.getMessage(), e);
+		final AudioEncoding encoding = audioEncoding;
+		final ByteString audioContents = synthesizeRaw(text, langOverride, genderOverride, encoding);
+		// LINEAR16 is fed from the response buffers without copies
+		final WavBuffer wav = encoding == AudioEncoding.LINEAR16
+				? WavBuffer.parse(audioContents.asReadOnlyByteBufferList())
+				: null;
+		try {
+			if (wav != null) {
+				Utils.playAudio(wav, volume);
+				return;
+			}
+			try (AudioInputStream ais = openAudio(audioContents, encoding)) {
+				if (ais == null) {
+					syntesizeAndPlay(text, langOverride, genderOverride);
+					return;
+				}
+				Utils.playAudio(ais, volume);
+			}
+		} catch (UnsupportedAudioFileException | LineUnavailableException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Calls google's text-to-speech with the given text and returns the decoded
+	 * audio.
+	 */
+	@Override
+	public PcmAudio synthesize(String text, String langOverride, SsmlVoiceGender genderOverride)
+			throws IOException, UnsupportedAudioFileException {
+		final AudioEncoding encoding = audioEncoding;
+		final ByteString audioContents = synthesizeRaw(text, langOverride, genderOverride, encoding);
+
+		final long decodeStart = System.nanoTime();
+		if (encoding == AudioEncoding.LINEAR16) {
+			// the wav header is parsed in place, the samples are copied once
+			final WavBuffer wav = WavBuffer.parse(audioContents.asReadOnlyByteBufferList());
+			if (wav != null) {
+				final PcmAudio audio = wav.toPcmAudio();
+				decodeTiming.recordSince(decodeStart);
+				return audio;
+			}
+		}
+		final PcmAudio audio;
+		try (AudioInputStream ais = openAudio(audioContents, encoding)) {
+			audio = ais == null ? null : PcmAudio.fromStream(ais);
+		} finally {
+			decodeTiming.recordSince(decodeStart);
+		}
+		return audio != null ? audio : synthesize(text, langOverride, genderOverride);
+	}
+
+	/**
+	 * Opens the audio returned by google as pcm stream, see
+	 * {@link PcmAudio#openPcm(java.io.InputStream)}.
+	 *
+	 * @return null if there is no decoder for the compressed encoding, later
+	 *         calls request LINEAR16 then
+	 */
+	private AudioInputStream openAudio(ByteString audioContents, AudioEncoding encoding)
+			throws UnsupportedAudioFileException, IOException {
+		try {
+			return PcmAudio.openPcm(audioContents.newInput());
+		} catch (UnsupportedAudioFileException e) {
+			if (encoding == AudioEncoding.LINEAR16) {
+				throw e;
+			}
+			log.warn("can not decode google {} audio ({}), using LINEAR16", encoding, e.getMessage());
+			audioEncoding = AudioEncoding.LINEAR16;
+			return null;
+		}
+	}
+
+	/**
+	 * Calls google's text-to-speech with the given text and returns the audio
+	 * file as sent by google: a wav for LINEAR16, an mp3 otherwise.
+	 */
+	public ByteString synthesizeRaw(String text, String langOverride, SsmlVoiceGender genderOverride,
+			AudioEncoding encoding) throws IOException {
+		final long start = System.nanoTime();
+		final TextToSpeechClient textToSpeechClient = getClient();
+
+		// Set the text input to be synthesized
+		SynthesisInput input = SynthesisInput.newBuilder() //
+				.setText(text)//
+				.build();
+
+		// Build the voice request, select the language code ("en-US") and the ssml
+		// voice gender
+		// ("neutral")
+		VoiceSelectionParams deVoiceMale = VoiceSelectionParams.newBuilder() //
+				.setLanguageCode(langOverride != null ? langOverride : lang) //
+				.setSsmlGender(genderOverride != null ? genderOverride : gender) //
+				.setName(preferredVoice) //
+				.build();
+
+		// Select the type of audio file you want returned
+		AudioConfig audioConfig = AudioConfig.newBuilder()
+				.setAudioEncoding(encoding)//
+				// .setVolumeGainDb(volume) volume is handled by the player
+				.setSpeakingRate(speakingRate) // 0.25 - 4
+				.setPitch(pitch) // --20 - +20
+				.build();
+
+		// Perform the text-to-speech request on the text input with the selected voice
+		// parameters and audio file type
+		SynthesizeSpeechRequest request = SynthesizeSpeechRequest.newBuilder() //
+				.setInput(input) //
+				.setVoice(deVoiceMale) //
+				.setAudioConfig(audioConfig) //
+				.build();
+		SynthesizeSpeechResponse response = await(textToSpeechClient.synthesizeSpeechCallable().futureCall(request));
+		long elapsed = synthesizeTiming.recordSince(start);
+
+		// Get the audio contents from the response
+		ByteString audioContents = response.getAudioContent();
+		responseBytes.add(audioContents.size());
+		log.debug("synthesized {} chars in {} ms, {} bytes {}, {}", text.length(),
+				TimeUnit.NANOSECONDS.toMillis(elapsed), audioContents.size(), encoding, synthesizeTiming);
+		return audioContents;
+	}
+
+	/**
+	 * Waits for the call, an interrupt (message skipped) cancels the gRPC call.
+	 */
+	private static <T> T await(ApiFuture<T> call) throws IOException {
+		try {
+			return call.get();
+		} catch (InterruptedException e) {
+			call.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("synthesis cancelled");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				// ApiException, e.g. DEADLINE_EXCEEDED
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
 		}
 	}
 
@@ -294,51 +523,51 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 		return gender.toString().toLowerCase();
 	}
 
+	@Override
 	public double getSpeakingRate() {
 		return speakingRate;
 	}
 
+	@Override
 	public double getPitch() {
 		return pitch;
 	}
 
 	@Override
 	public List<String> listSupportedVoices(String lang) {
-		List<String> voiceNames = new ArrayList<>();
-		try {
-			List<Voice> listAllSupportedVoices = listAllSupportedVoices(lang);
-			listAllSupportedVoices.stream().forEach(v -> voiceNames.add(v.getName()));
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
-		}
+		return voiceCatalog.getVoiceNames(lang);
+	}
 
-		return voiceNames;
+	@Override
+	public List<VoiceInfo> loadVoices() throws Exception {
+		List<VoiceInfo> voices = new ArrayList<>();
+		for (Voice v : listAllSupportedVoices(null)) {
+			voices.add(new VoiceInfo(v.getName(), new ArrayList<>(v.getLanguageCodesList()),
+					v.getSsmlGender().name()));
+		}
+		return voices;
 	}
 
 	/**
-	 * Returns all voices matching the given language.
+	 * Returns all voices matching the given language, calls the google API.
 	 */
 	public List<Voice> listAllSupportedVoices(String lang) throws Exception {
 		List<Voice> voicesForLanguage = new ArrayList<>();
 
-		final Builder b = TextToSpeechSettings.newBuilder();
-		b.setCredentialsProvider(this);
-		com.google.api.gax.rpc.UnaryCallSettings.Builder<ListVoicesRequest, ListVoicesResponse> listVoicesSettings = b
-				.listVoicesSettings();
-		listVoicesSettings.setSimpleTimeoutNoRetries(Duration.ofSeconds(3));
+		try {
+			final long start = System.nanoTime();
+			final TextToSpeechClient textToSpeechClient = getClient();
 
-		try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create(b.build())) {
 			// Builds the text to speech list voices request
-
 			ListVoicesRequest request = ListVoicesRequest.getDefaultInstance();
 
 			// Performs the list voices request
 			ListVoicesResponse response = textToSpeechClient.listVoices(request);
+			listVoicesTiming.recordSince(start);
 			List<Voice> voices = response.getVoicesList();
 
 			for (Voice voice : voices) {
-				// Display the voice's name. Example: tpc-vocoded
-				System.out.format("Name:%s Gender:%s Hz:%s\n", voice.getName(), voice.getSsmlGender(),
+				log.debug("Name:{} Gender:{} Hz:{}", voice.getName(), voice.getSsmlGender(),
 						voice.getNaturalSampleRateHertz());
 				if (lang == null || voice.getName().startsWith(lang)) {
 					voicesForLanguage.add(voice);
@@ -356,42 +585,27 @@ public class GoogleTTSProvider implements CredentialsProvider, TTSProvider {
 		return voicesForLanguage;
 	}
 
+	@Override
 	public String translate(String src, String dst, String message) {
-		TranslateOptions build;
+		if (!translator.isSupported(src)) {
+			return src + " not supported";
+		}
+		if (!translator.isSupported(dst)) {
+			return dst + " not supported";
+		}
 		try {
-
-			build = TranslateOptions.newBuilder() //
-					.setCredentials(getCredentials()) //
-					.build();
-			final Translate service = build.getService();
-			List<Language> languages = service.listSupportedLanguages();
-			Language srcLang = null, dstLang = null;
-			for (Language language : languages) {
-				if (src.equals(language.getCode())) {
-					srcLang = language;
-				}
-				if (dst.equals(language.getCode())) {
-					dstLang = language;
-				}
-			}
-			if (srcLang == null) {
-				return src + " not supported";
-			}
-			if (dstLang == null) {
-				return dst + " not supported";
-			}
-
-			final Translation translated = service.translate(message, TranslateOption.sourceLanguage(src),
-					TranslateOption.targetLanguage(dst));
-			final String translatedText = StringEscapeUtils.unescapeHtml4(translated.getTranslatedText());
-
-			return translatedText;
-		} catch (IOException e) {
+			return translator.translate(src, dst, message).get(TRANSLATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
 		return "";
 	}
 
+	@Override
+	public Translator getTranslator() {
+		return translator;
+	}
+
 	public static void main(String[] args) throws IOException {
 		GoogleTTSProvider tts = new GoogleTTSProvider();
 		Set<String> codes = new TreeSet<>();
@@ -0,0 +1,228 @@
+package ttsbot.tts;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.config.MaryConfig;
+import marytts.config.VoiceConfig;
+import marytts.server.Mary;
+import ttsbot.audio.PcmAudio;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Starts the MaryTTS engine on first use, so the bundled voices only occupy the
+ * heap once mary is actually used.<br>
+ * MaryTTS can not be started again in the same JVM after it was shut down, so
+ * the engine stays loaded until {@link #shutdown()}, which is final.<br>
+ * Voices can be warmed up in the background with a short utterance, which
+ * takes the cold first synthesis off the chat path. Load time, heap usage and
+ * synthesis times are tracked per voice.
+ */
+public class MaryEngine {
+	private final static Logger log = LoggerFactory.getLogger(MaryEngine.class);
+
+	public static final String WARM_UP_TEXT = "maryWarmUpText";
+
+	private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(Utils.namedThreadFactory("mary-engine"));
+
+	// guarded by this
+	private MaryInterface marytts;
+	private boolean shutDown = false;
+
+	private final Timer loadTiming = Metrics.get().timer("engine_load_seconds", "provider", "mary");
+	private volatile long loadedHeapBytes;
+	private final Map<String, VoiceStats> voiceStats = new ConcurrentHashMap<>();
+	private final Set<String> warmedUp = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Lists the installed voices from their configuration, without starting the
+	 * engine.
+	 */
+	public static List<VoiceInfo> listVoices() {
+		List<VoiceInfo> voices = new ArrayList<>();
+		for (VoiceConfig vc : MaryConfig.getVoiceConfigs()) {
+			voices.add(new VoiceInfo(vc.getName(), Lists.newArrayList(vc.getLocale().toLanguageTag()), null));
+		}
+		return voices;
+	}
+
+	/**
+	 * Synthesizes the text, starts the engine if needed.<br>
+	 * The mary interface holds locale and voice, so only one synthesis runs at a
+	 * time.
+	 *
+	 * @throws IllegalStateException if the engine was shut down
+	 */
+	public synchronized PcmAudio synthesize(String lang, String voice, String text) throws Exception {
+		final long start = System.nanoTime();
+		final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+		final PcmAudio audio = generate(lang, voice, text);
+
+		VoiceStats stats = getVoiceStats(voice);
+		stats.synthesis.recordSince(start);
+		if (stats.synthesis.getCount() == 1) {
+			stats.heapDeltaBytes = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+		}
+		return audio;
+	}
+
+	/**
+	 * Synthesizes the warm-up utterance for the voice in the background, once per
+	 * voice.
+	 */
+	public void warmUp(String lang, String voice) {
+		final String text = Settings.getString(WARM_UP_TEXT, "Hallo");
+		if (text.isEmpty() || voice == null || voice.isEmpty() || executor.isShutdown() || !warmedUp.add(voice)) {
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				final long start = System.nanoTime();
+				final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+				synchronized (this) {
+					generate(lang, voice, text);
+				}
+				VoiceStats stats = getVoiceStats(voice);
+				stats.warmUp.recordSince(start);
+				stats.heapDeltaBytes = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+				log.info("mary voice {} warmed up, {}", voice, stats);
+			} catch (Exception e) {
+				warmedUp.remove(voice);
+				log.warn("mary warm-up failed for voice {}: {}", voice, e.getMessage());
+			}
+		});
+	}
+
+	private PcmAudio generate(String lang, String voice, String text) throws Exception {
+		MaryInterface m = load();
+		m.setLocale(Locale.forLanguageTag(lang));
+		m.setVoice(voice);
+
+		try (AudioInputStream audio = m.generateAudio(text)) {
+			return PcmAudio.fromStream(audio);
+		}
+	}
+
+	private synchronized MaryInterface load() throws Exception {
+		if (shutDown) {
+			throw new IllegalStateException("mary engine is shut down");
+		}
+		if (marytts == null) {
+			final long start = System.nanoTime();
+			final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+			marytts = new LocalMaryInterface();
+			loadTiming.recordSince(start);
+			loadedHeapBytes = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+			log.info("mary engine started, {} heap:+{} MB", loadTiming, loadedHeapBytes / (1024 * 1024));
+		}
+		return marytts;
+	}
+
+	public synchronized boolean isLoaded() {
+		return marytts != null;
+	}
+
+	public synchronized boolean isShutDown() {
+		return shutDown;
+	}
+
+	/**
+	 * Stops the engine for good, later synthesis calls fail. Only meant for the
+	 * JVM exit.
+	 */
+	public synchronized void shutdown() {
+		shutDown = true;
+		executor.shutdownNow();
+		if (marytts != null) {
+			marytts = null;
+			Mary.shutdown();
+		}
+	}
+
+	private VoiceStats getVoiceStats(String voice) {
+		return voiceStats.computeIfAbsent(voice, VoiceStats::new);
+	}
+
+	public Collection<VoiceStats> getVoiceStats() {
+		return voiceStats.values();
+	}
+
+	public Timer getLoadTiming() {
+		return loadTiming;
+	}
+
+	/**
+	 * Heap growth measured while the engine started, only an estimate since other
+	 * threads allocate at the same time.
+	 */
+	public long getLoadedHeapBytes() {
+		return loadedHeapBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("mary engine[loaded:%s %s heap:+%s MB voices:%s]", isLoaded(), loadTiming,
+				loadedHeapBytes / (1024 * 1024), voiceStats.values());
+	}
+
+	/**
+	 * Warm-up / synthesis times and the heap growth of the first synthesis of a
+	 * voice.
+	 */
+	public static class VoiceStats {
+		private final String voice;
+		final Timer warmUp;
+		final Timer synthesis;
+		volatile long heapDeltaBytes;
+
+		VoiceStats(String voice) {
+			this.voice = voice;
+			this.warmUp = Metrics.get().timer("engine_warm_up_seconds", "provider", "mary", "voice", voice);
+			this.synthesis = Metrics.get().timer("engine_synthesis_seconds", "provider", "mary", "voice", voice);
+		}
+
+		public String getVoice() {
+			return voice;
+		}
+
+		public Timer getWarmUp() {
+			return warmUp;
+		}
+
+		public Timer getSynthesis() {
+			return synthesis;
+		}
+
+		public long getHeapDeltaBytes() {
+			return heapDeltaBytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %s heap:+%s KB", warmUp, synthesis, heapDeltaBytes / 1024);
+		}
+	}
+}
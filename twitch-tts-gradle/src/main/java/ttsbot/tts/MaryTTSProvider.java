@@ -3,21 +3,13 @@ package ttsbot.tts;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
-import java.util.stream.Collectors;
-
-import javax.sound.sampled.AudioInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
-import com.google.common.collect.Lists;
-
-import marytts.LocalMaryInterface;
-import marytts.MaryInterface;
-import marytts.exceptions.MaryConfigurationException;
+import ttsbot.audio.PcmAudio;
 import ttsbot.util.Utils;
 
 public class MaryTTSProvider implements TTSProvider {
@@ -29,17 +21,18 @@ public class MaryTTSProvider implements TTSProvider {
 	private String lang = DEFAULT_LANG;
 	private String preferredVoice = "";
 
-	protected List<String> knownLanguages = Lists.newArrayList();
 	protected Set<TTSFeature> knownFeatures = EnumSet.noneOf(TTSFeature.class);
 
-	MaryInterface marytts;
+	private final MaryEngine engine = new MaryEngine();
+	private final VoiceCatalog voiceCatalog = new VoiceCatalog(getName(), this::loadVoices);
 
 	// TTS settings
 	private float volume = DEFAULT_VOLUME;
 
-	public MaryTTSProvider() throws MaryConfigurationException {
+	public MaryTTSProvider() {
 		super();
-		marytts = new LocalMaryInterface();
+		// mary can not be started again once it is shut down, so only at exit
+		Runtime.getRuntime().addShutdownHook(new Thread(engine::shutdown, "mary-shutdown"));
 	}
 
 	@Override
@@ -49,8 +42,7 @@ public class MaryTTSProvider implements TTSProvider {
 
 	@Override
 	public boolean isAvailable() {
-		Collection<String> listSupportedVoices = listSupportedVoices(DEFAULT_LANG);
-		if (listSupportedVoices.isEmpty()) {
+		if (!voiceCatalog.load() || listSupportedVoices(DEFAULT_LANG).isEmpty()) {
 			return false;
 		}
 		return true;
@@ -60,17 +52,24 @@ public class MaryTTSProvider implements TTSProvider {
 	public void setDefault() {
 		lang = DEFAULT_LANG;
 		preferredVoice = DEFAULT_VOICE;
+		engine.warmUp(lang, preferredVoice);
 	}
 
 	@Override
 	public Collection<String> listSupportedVoices(String lang) {
-		Set<String> availableVoices = marytts.getAvailableVoices(Locale.forLanguageTag(lang));
-		return availableVoices;
+		return voiceCatalog.getVoiceNames(lang);
+	}
+
+	@Override
+	public List<VoiceInfo> loadVoices() {
+		// read from the voice configs, the engine itself is started on first use
+		return MaryEngine.listVoices();
 	}
 
 	@Override
 	public void setVoice(String value) {
 		preferredVoice = value;
+		engine.warmUp(lang, preferredVoice);
 	}
 
 	@Override
@@ -79,29 +78,16 @@ public class MaryTTSProvider implements TTSProvider {
 	}
 
 	public List<String> getKnownLanguages() {
-		if (knownLanguages.isEmpty()) {
-			knownLanguages = marytts.getAvailableLocales().stream().map(l -> l.toLanguageTag())
-					.collect(Collectors.toList());
-		}
-		return knownLanguages;
+		return voiceCatalog.getLanguages();
 	}
 
 	public boolean isKnownLanguage(String dst) {
-		for (String lang : getKnownLanguages()) {
-			if (lang.startsWith(dst)) {
-				return true;
-			}
-		}
-		return false;
+		return voiceCatalog.isKnownLanguage(dst);
 	}
 
 	@Override
-	public boolean isKnownVoice(String lang) {
-		Collection<String> listSupportedVoices = listSupportedVoices(getLang());
-		if (listSupportedVoices.contains(lang)) {
-			return true;
-		}
-		return false;
+	public boolean isKnownVoice(String voice) {
+		return voiceCatalog.isKnownVoice(voice, getLang());
 	}
 
 	@Override
@@ -151,12 +137,27 @@ public class MaryTTSProvider implements TTSProvider {
 
 	@Override
 	public void syntesizeAndPlay(String text, String langOverride, SsmlVoiceGender genderOverride) throws Exception {
-		marytts.setLocale(Locale.forLanguageTag(lang));
-		marytts.setVoice(preferredVoice);
+		PcmAudio audio = synthesize(text, langOverride, genderOverride);
+
+		Utils.playAudio(audio.toAudioInputStream(), volume);
+	}
+
+	@Override
+	public PcmAudio synthesize(String text, String langOverride, SsmlVoiceGender genderOverride) throws Exception {
+		return engine.synthesize(lang, preferredVoice, text);
+	}
 
-		AudioInputStream audio = marytts.generateAudio(text);
+	public MaryEngine getEngine() {
+		return engine;
+	}
 
-		Utils.playAudio(audio, volume);
+	/**
+	 * Keeps the engine loaded, it is shut down when the JVM exits.
+	 */
+	@Override
+	public void shutdown() {
+		voiceCatalog.shutdown();
+		log.info("{}", engine);
 	}
 
 	@Override
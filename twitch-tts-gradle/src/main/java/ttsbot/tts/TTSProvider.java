@@ -1,9 +1,14 @@
 package ttsbot.tts;
 
 import java.util.Collection;
+import java.util.List;
 
 import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
 
+import ttsbot.audio.PcmAudio;
+import ttsbot.translate.Translator;
+import ttsbot.util.Settings;
+
 public interface TTSProvider {
 	public enum TTSFeature {
 		GENDER;
@@ -11,6 +16,10 @@ public interface TTSProvider {
 
 	public static final int DEFAULT_VOLUME = 0;
 	public static final int DEFAULT_PITCH = 0;
+	/** max. wait time of {@link #translate(String, String, String)} */
+	public static final int TRANSLATE_TIMEOUT_SECONDS = 10;
+	/** deadline of a synthesis call, per provider with '.google' etc. */
+	public static final String SYNTHESIS_TIMEOUT = "synthesisTimeoutMillis";
 
 	public String getName();
 
@@ -46,19 +55,77 @@ public interface TTSProvider {
 
 	public String getGender();
 
+	/**
+	 * Speaking rate passed to the synthesis, 0 if not supported.
+	 */
+	public default double getSpeakingRate() {
+		return 0;
+	}
+
+	/**
+	 * Pitch passed to the synthesis, 0 if not supported.
+	 */
+	public default double getPitch() {
+		return DEFAULT_PITCH;
+	}
+
+	/**
+	 * Deadline of a single synthesis call at the cloud service, e.g.
+	 * 'synthesisTimeoutMillis.google=3000'.
+	 */
+	public default long getSynthesisTimeoutMillis() {
+		return Settings.getLong(SYNTHESIS_TIMEOUT + "." + getName(), Settings.getLong(SYNTHESIS_TIMEOUT, 5000));
+	}
+
 	public void syntesizeAndPlay(String value) throws Exception;
 
 	public void syntesizeAndPlay(String text, String langOverride, SsmlVoiceGender genderOverride) throws Exception;
 
+	/**
+	 * Synthesizes the text without playing it.
+	 * 
+	 * @return the audio, or null if this provider can only synthesize and play in
+	 *         one go (see {@link #syntesizeAndPlay(String, String, SsmlVoiceGender)})
+	 */
+	public default PcmAudio synthesize(String text, String langOverride, SsmlVoiceGender genderOverride)
+			throws Exception {
+		return null;
+	}
+
+	/**
+	 * Translates the text, waits for the translation.
+	 *
+	 * @return the translation, empty on errors
+	 */
 	public String translate(String src, String dst, String txt);
 
+	/**
+	 * Returns the asynchronous translator, null if not supported.
+	 */
+	public default Translator getTranslator() {
+		return null;
+	}
+
 	public boolean isKnownLanguage(String lang);
 
 	public boolean isKnownVoice(String lang);
 
 	public Collection<String> listSupportedVoices(String lang);
 
+	/**
+	 * Fetches all voices from the provider, used to fill the
+	 * {@link VoiceCatalog}.
+	 */
+	public List<VoiceInfo> loadVoices() throws Exception;
+
 	public String getVoice();
 
 	public void setVoice(String item);
+
+	/**
+	 * Releases network clients or other resources, they are re-created on the
+	 * next use.
+	 */
+	public default void shutdown() {
+	}
 }
@@ -0,0 +1,222 @@
+package ttsbot.tts;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ttsbot.util.Settings;
+import ttsbot.util.Utils;
+
+/**
+ * Caches the voices of a provider, so voice and language checks don't need
+ * network calls.<br>
+ * The voices are loaded once (usually by {@link TTSProvider#isAvailable()}) and
+ * then refreshed in the background. Lookups use hash indexes by voice name,
+ * language and gender. Languages are indexed by their full code ('de-DE') and
+ * their primary language ('de'), lookups ignore case.
+ */
+public class VoiceCatalog {
+	private final static Logger log = LoggerFactory.getLogger(VoiceCatalog.class);
+
+	public static final String REFRESH_MINUTES = "voiceCatalogRefreshMinutes";
+
+	private static final ScheduledExecutorService refresher = Executors
+			.newSingleThreadScheduledExecutor(Utils.namedThreadFactory("voice-catalog"));
+
+	private final String providerName;
+	private final Callable<List<VoiceInfo>> loader;
+	private volatile Index index = new Index(Collections.emptyList());
+	private ScheduledFuture<?> refreshTask;
+	private boolean refreshScheduled = false;
+
+	/**
+	 * @param loader fetches all voices of the provider
+	 */
+	public VoiceCatalog(String providerName, Callable<List<VoiceInfo>> loader) {
+		this.providerName = providerName;
+		this.loader = loader;
+	}
+
+	/**
+	 * Loads the voices if not done yet and schedules the background refresh.<br>
+	 * The refresh interval may be a fraction of a minute.
+	 *
+	 * @return false if no voices are available
+	 */
+	public synchronized boolean load() {
+		if (index.voices.isEmpty()) {
+			refresh();
+		}
+		if (!refreshScheduled) {
+			final long millis = (long) (Settings.getDouble(REFRESH_MINUTES, 60) * TimeUnit.MINUTES.toMillis(1));
+			if (millis > 0) {
+				refreshTask = refresher.scheduleWithFixedDelay(this::refresh, millis, millis, TimeUnit.MILLISECONDS);
+			}
+			refreshScheduled = true;
+		}
+		return !index.voices.isEmpty();
+	}
+
+	/**
+	 * Stops the background refresh, the loaded voices stay available. The next
+	 * {@link #load()} schedules it again.
+	 */
+	public synchronized void shutdown() {
+		if (refreshTask != null) {
+			refreshTask.cancel(false);
+			refreshTask = null;
+		}
+		refreshScheduled = false;
+	}
+
+	/**
+	 * Fetches the voices and replaces the indexes, keeps the old ones on errors.
+	 */
+	public void refresh() {
+		try {
+			final long start = System.nanoTime();
+			final List<VoiceInfo> voices = loader.call();
+			if (voices != null && !voices.isEmpty()) {
+				index = new Index(voices);
+			}
+			log.info("{}: {} voices loaded in {} ms", providerName, index.voices.size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} catch (Exception e) {
+			log.error(providerName + ": could not load voices", e);
+		}
+	}
+
+	public boolean isKnownVoice(String voice) {
+		return voice != null && index.byName.containsKey(key(voice));
+	}
+
+	/**
+	 * Returns true if the voice exists and speaks the given language.
+	 */
+	public boolean isKnownVoice(String voice, String lang) {
+		if (lang == null) {
+			return isKnownVoice(voice);
+		}
+		final VoiceInfo info = voice == null ? null : index.byName.get(key(voice));
+		if (info == null) {
+			return false;
+		}
+		final String langKey = key(lang);
+		for (String code : info.getLanguageCodes()) {
+			if (key(code).equals(langKey) || key(primaryLanguage(code)).equals(langKey)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean isKnownLanguage(String lang) {
+		return lang != null && index.byLanguage.containsKey(key(lang));
+	}
+
+	public VoiceInfo getVoice(String voice) {
+		return voice == null ? null : index.byName.get(key(voice));
+	}
+
+	/**
+	 * Returns the names of the voices for a language, all voices if lang is null.
+	 */
+	public List<String> getVoiceNames(String lang) {
+		if (lang == null) {
+			return index.names;
+		}
+		return names(index.byLanguage.get(key(lang)));
+	}
+
+	/**
+	 * Returns the names of the voices with the given gender.
+	 */
+	public List<String> getVoiceNamesByGender(String gender) {
+		return gender == null ? Collections.emptyList() : names(index.byGender.get(key(gender)));
+	}
+
+	/**
+	 * Returns the full language codes, sorted.
+	 */
+	public List<String> getLanguages() {
+		return index.languages;
+	}
+
+	public int size() {
+		return index.voices.size();
+	}
+
+	private static List<String> names(List<VoiceInfo> voices) {
+		if (voices == null) {
+			return Collections.emptyList();
+		}
+		List<String> names = new ArrayList<>(voices.size());
+		for (VoiceInfo v : voices) {
+			names.add(v.getName());
+		}
+		return names;
+	}
+
+	private static String key(String value) {
+		return value.trim().toLowerCase();
+	}
+
+	private static String primaryLanguage(String code) {
+		int idx = code.indexOf('-');
+		if (idx < 0) {
+			idx = code.indexOf('_');
+		}
+		return idx < 0 ? code : code.substring(0, idx);
+	}
+
+	/**
+	 * Immutable snapshot, swapped as a whole on refresh.
+	 */
+	private static class Index {
+		final List<VoiceInfo> voices;
+		final List<String> names;
+		final List<String> languages;
+		final Map<String, VoiceInfo> byName = new HashMap<>();
+		final Map<String, List<VoiceInfo>> byLanguage = new HashMap<>();
+		final Map<String, List<VoiceInfo>> byGender = new HashMap<>();
+
+		Index(List<VoiceInfo> voices) {
+			this.voices = voices;
+			Collection<String> languageCodes = new TreeSet<>();
+			for (VoiceInfo v : voices) {
+				byName.put(key(v.getName()), v);
+				for (String code : v.getLanguageCodes()) {
+					languageCodes.add(code);
+					add(byLanguage, key(code), v);
+					if (!primaryLanguage(code).equals(code)) {
+						add(byLanguage, key(primaryLanguage(code)), v);
+					}
+				}
+				if (v.getGender() != null) {
+					add(byGender, key(v.getGender()), v);
+				}
+			}
+			this.names = Collections.unmodifiableList(VoiceCatalog.names(voices));
+			this.languages = Collections.unmodifiableList(new ArrayList<>(languageCodes));
+		}
+
+		private static void add(Map<String, List<VoiceInfo>> map, String key, VoiceInfo v) {
+			List<VoiceInfo> list = map.computeIfAbsent(key, k -> new ArrayList<>());
+			if (!list.contains(v)) {
+				list.add(v);
+			}
+		}
+	}
+}
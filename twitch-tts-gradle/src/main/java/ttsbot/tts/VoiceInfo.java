@@ -0,0 +1,40 @@
+package ttsbot.tts;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Provider independent description of a voice.
+ */
+public class VoiceInfo {
+	private final String name;
+	private final List<String> languageCodes;
+	private final String gender;
+
+	/**
+	 * @param languageCodes e.g. 'de-DE'
+	 * @param gender        'male', 'female', 'neutral' or null if unknown
+	 */
+	public VoiceInfo(String name, List<String> languageCodes, String gender) {
+		this.name = name;
+		this.languageCodes = Collections.unmodifiableList(languageCodes);
+		this.gender = gender == null ? null : gender.toLowerCase();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<String> getLanguageCodes() {
+		return languageCodes;
+	}
+
+	public String getGender() {
+		return gender;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s %s", name, languageCodes, gender);
+	}
+}
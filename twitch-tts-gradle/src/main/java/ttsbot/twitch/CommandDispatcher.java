@@ -0,0 +1,139 @@
+package ttsbot.twitch;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the handler for a chat command with a prefix trie over the raw
+ * message.<br>
+ * Messages which do not start with '!' are rejected after one char. The lookup
+ * itself does not allocate, only the arguments of a matched command are copied
+ * into a string. Commands which are not registered go to the fallback handler
+ * (e.g. media commands).
+ */
+public class CommandDispatcher {
+	public static final char PREFIX = '!';
+
+	private final Node root = new Node();
+	private final Set<String> names = new TreeSet<>();
+	private CommandHandler fallback;
+
+	/**
+	 * Registers the handler, all commands have to be registered before messages
+	 * are dispatched.
+	 *
+	 * @param command e.g. '!vol', matched ignoring case
+	 */
+	public synchronized void register(String command, CommandHandler handler) {
+		final String name = command.toLowerCase();
+		if (name.length() < 2 || name.charAt(0) != PREFIX) {
+			throw new IllegalArgumentException("commands start with " + PREFIX + ": " + command);
+		}
+		Node node = root;
+		for (int i = 1; i < name.length(); i++) {
+			node = node.getOrAddChild(name.charAt(i));
+		}
+		node.command = name;
+		node.handler = handler;
+		names.add(name);
+	}
+
+	/**
+	 * Called for commands without a registered handler.
+	 */
+	public void setFallback(CommandHandler fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Returns true if the message starts with the command prefix.
+	 */
+	public static boolean isCommand(CharSequence message) {
+		return message != null && message.length() > 1 && message.charAt(0) == PREFIX;
+	}
+
+	/**
+	 * Runs the handler of the command the message starts with.
+	 *
+	 * @return false if the message is no command or nobody handled it
+	 */
+	public boolean dispatch(String username, boolean isMod, CharSequence message) {
+		if (!isCommand(message)) {
+			return false;
+		}
+		final int length = message.length();
+		Node node = root;
+		int end = 1;
+		for (; end < length; end++) {
+			final char c = message.charAt(end);
+			if (Character.isWhitespace(c)) {
+				break;
+			}
+			if (node != null) {
+				node = node.getChild(Character.toLowerCase(c));
+			}
+		}
+
+		if (node != null && node.handler != null) {
+			node.handler.handle(username, isMod, node.command, args(message, end));
+			return true;
+		}
+		final CommandHandler f = fallback;
+		if (f != null) {
+			f.handle(username, isMod, message.subSequence(0, end).toString().toLowerCase(), args(message, end));
+			return true;
+		}
+		return false;
+	}
+
+	private static String args(CharSequence message, int commandEnd) {
+		int start = commandEnd;
+		int end = message.length();
+		while (start < end && Character.isWhitespace(message.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(message.charAt(end - 1))) {
+			end--;
+		}
+		return start == end ? "" : message.subSequence(start, end).toString();
+	}
+
+	/**
+	 * Returns the registered commands, sorted.
+	 */
+	public synchronized Set<String> getCommands() {
+		return new TreeSet<>(names);
+	}
+
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private String command;
+		private CommandHandler handler;
+
+		Node getChild(char c) {
+			final char[] k = keys;
+			for (int i = 0; i < k.length; i++) {
+				if (k[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node getOrAddChild(char c) {
+			Node child = getChild(c);
+			if (child == null) {
+				child = new Node();
+				Node[] newChildren = Arrays.copyOf(children, children.length + 1);
+				newChildren[children.length] = child;
+				char[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+				newKeys[keys.length] = c;
+				children = newChildren;
+				keys = newKeys;
+			}
+			return child;
+		}
+	}
+}
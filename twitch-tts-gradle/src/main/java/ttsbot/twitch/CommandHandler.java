@@ -0,0 +1,13 @@
+package ttsbot.twitch;
+
+/**
+ * Handles one chat command, see {@link CommandDispatcher}.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+	/**
+	 * @param command the command in lower case, e.g. '!vol'
+	 * @param args    the trimmed text after the command, empty if there is none
+	 */
+	void handle(String username, boolean isMod, String command, String args);
+}
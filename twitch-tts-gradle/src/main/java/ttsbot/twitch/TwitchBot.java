@@ -2,12 +2,18 @@ package ttsbot.twitch;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import org.pircbotx.Configuration;
@@ -18,6 +24,7 @@ import org.pircbotx.delay.StaticDelay;
 import org.pircbotx.exception.IrcException;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.ListenerExceptionEvent;
+import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.NoticeEvent;
 import org.pircbotx.hooks.events.PingEvent;
 import org.pircbotx.hooks.events.UserListEvent;
@@ -25,7 +32,18 @@ import org.pircbotx.hooks.types.GenericMessageEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import marytts.exceptions.MaryConfigurationException;
+import ttsbot.audio.PcmAudio;
+import ttsbot.media.MediaLibrary;
+import ttsbot.media.MediaLibrary.MediaFile;
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.Timer;
+import ttsbot.speech.SpeechPipeline;
+import ttsbot.speech.SpeechPriority;
+import ttsbot.speech.SpeechRateLimiter;
+import ttsbot.speech.SpeechRateLimiter.Decision;
+import ttsbot.speech.SpeechRequest;
+import ttsbot.translate.Translator;
 import ttsbot.tts.AmazonPollyTTSProvider;
 import ttsbot.tts.GoogleTTSProvider;
 import ttsbot.tts.MaryTTSProvider;
@@ -33,6 +51,8 @@ import ttsbot.tts.TTSProvider;
 import ttsbot.tts.TTSProvider.TTSFeature;
 import ttsbot.ui.SwingUI;
 import ttsbot.util.Settings;
+import ttsbot.util.StartupTimer;
+import ttsbot.util.Utils;
 import uk.co.caprica.vlcj.factory.MediaPlayerFactory;
 import uk.co.caprica.vlcj.player.base.MediaPlayer;
 
@@ -43,30 +63,85 @@ public class TwitchBot extends ListenerAdapter {
 	private final static Logger log = LoggerFactory.getLogger(TwitchBot.class);
 
 	PircBotX pircBot;
-	TTSProvider tts;
+	volatile TTSProvider tts;
 	private String channel;
 	SwingUI ui;
 	private MediaPlayer mediaPlayer = null;
-
-	List<TTSProvider> ttsProviders = new ArrayList<>();
+	private MediaLibrary mediaLibrary = null;
+	private final ExecutorService mediaExecutor = Executors
+			.newSingleThreadExecutor(Utils.namedThreadFactory("media"));
+	private final SpeechPipeline speechPipeline = new SpeechPipeline();
+	private final CommandDispatcher commands = new CommandDispatcher();
+	private final SpeechRateLimiter rateLimiter = SpeechRateLimiter.fromSettings();
+
+	private final Counter chatMessages = Metrics.get().counter("chat_messages_total");
+	private final Counter chatCommands = Metrics.get().counter("chat_commands_total");
+	private final Timer parseTiming = Metrics.get().timer("parse_seconds");
+
+	// sorted by preference, providers are added as they come online
+	List<TTSProvider> ttsProviders = new CopyOnWriteArrayList<>();
+	private final List<String> providerPreference = Arrays.asList("google", "mary", "amazon");
+	private volatile boolean ttsChosen = false;
+	private final List<Runnable> providerListeners = new CopyOnWriteArrayList<>();
+
+	public static final String PROVIDER_STARTUP_TIMEOUT = "providerStartupTimeoutSeconds";
+	public static final String RATE_LIMIT_EXEMPT_MODS = "rateLimitExemptMods";
+	public static final String RATE_LIMIT_REPLY = "rateLimitReply";
 
 	public TwitchBot() throws Exception {
+		this(null);
 
-		final Settings settings = Settings.get();
-		if (settings == null) {
+		if (Settings.get() == null) {
 			log.error("settings null");
 		}
 
-		registerTTSProviders();
+		try {
+			mediaPlayer = new MediaPlayerFactory().mediaPlayers().newMediaPlayer();
+		} catch (Throwable e) {
+			log.error("could not create media player", e);
+		}
 
-		tts = getDefaultTTSProvider();
+		mediaLibrary = MediaLibrary.fromSettings();
+		mediaLibrary.start();
+	}
 
-		channel = settings.get(Settings.CHANNEL);
-		final String serverPassword = settings.get(Settings.OAUTH_TOKEN);
+	/**
+	 * Creates a bot without UI and media player.
+	 *
+	 * @param providers fixed TTS providers (e.g. stubs for benchmarks), null to
+	 *                  start the real providers
+	 */
+	TwitchBot(Collection<TTSProvider> providers) {
+		registerCommands();
+		if (rateLimiter != null) {
+			Metrics.get().counter("rate_limited_total", rateLimiter::getUserRejected, "limit", "user");
+			Metrics.get().counter("rate_limited_total", rateLimiter::getProviderRejected, "limit", "provider");
+		}
+
+		if (providers == null) {
+			registerTTSProviders();
+		} else {
+			for (TTSProvider p : providers) {
+				onProviderAvailable(p);
+			}
+		}
+
+		// a failing provider falls back to the others
+		speechPipeline.getRouter().setProviders(ttsProviders);
+		speechPipeline.setErrorListener((request, e) -> {
+			log.error(e.getMessage(), e);
+			if (isConnected()) {
+				sendMsg("Exception " + e.getStackTrace()[0] + " - " + e.getMessage());
+			}
+		});
+		speechPipeline.start();
+
+		channel = Settings.getString(Settings.CHANNEL, "");
+		final String serverPassword = Settings.getString(Settings.OAUTH_TOKEN, null);
 
 		Configuration config = new Configuration.Builder() //
 				.setName("TwitchChatBot") //
-				.addServer("irc.chat.twitch.tv", 6667) //
+				.addServer(Settings.getString(Settings.SERVER, "irc.chat.twitch.tv"), Settings.getInt(Settings.PORT, 6667)) //
 				.setServerPassword(serverPassword) //
 				.addListener(this) //
 				.addAutoJoinChannel("#" + channel) //
@@ -80,60 +155,106 @@ public class TwitchBot extends ListenerAdapter {
 				.buildConfiguration();
 
 		pircBot = new PircBotX(config);
-
-		try {
-			mediaPlayer = new MediaPlayerFactory().mediaPlayers().newMediaPlayer();
-		} catch (Throwable e) {
-			log.error("could not create media player", e);
-		}
 	}
 
 	/**
-	 * try to instantiate TTs providers
+	 * Instantiates and probes the TTS providers in parallel, returns
+	 * immediately.<br>
+	 * Providers are added as soon as they are available. A provider which does not
+	 * start within the timeout is cancelled.
 	 */
 	private void registerTTSProviders() {
-		try {
-			TTSProvider provider = new GoogleTTSProvider();
-			if (provider.isAvailable()) {
-				ttsProviders.add(provider);
-			}
-		} catch (Exception e) {
-			log.info("could not instantiate Google TTS");
+		Map<String, Callable<TTSProvider>> factories = new LinkedHashMap<>();
+		factories.put("google", GoogleTTSProvider::new);
+		factories.put("mary", MaryTTSProvider::new);
+		factories.put("amazon", AmazonPollyTTSProvider::new);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(factories.size(),
+				Utils.namedThreadFactory("tts-startup"));
+		final Map<String, Future<?>> futures = new LinkedHashMap<>();
+		for (Map.Entry<String, Callable<TTSProvider>> e : factories.entrySet()) {
+			futures.put(e.getKey(), executor.submit(() -> startProvider(e.getKey(), e.getValue())));
 		}
+		executor.shutdown();
 
-		try {
-			TTSProvider provider = new MaryTTSProvider();
-			if (provider.isAvailable()) {
-				ttsProviders.add(provider);
+		// wait for all providers in the background, then log the startup report
+		final long timeoutMillis = TimeUnit.SECONDS.toMillis(Settings.getLong(PROVIDER_STARTUP_TIMEOUT, 30));
+		Thread watcher = new Thread(() -> {
+			final long deadline = System.currentTimeMillis() + timeoutMillis;
+			for (Map.Entry<String, Future<?>> e : futures.entrySet()) {
+				try {
+					e.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException ex) {
+					e.getValue().cancel(true);
+					log.warn("{} TTS did not start within {} ms", e.getKey(), timeoutMillis);
+					StartupTimer.mark("provider " + e.getKey() + " timed out");
+				} catch (Exception ex) {
+					log.error(ex.getMessage(), ex);
+				}
 			}
-		} catch (Exception e) {
-			log.info("could not instantiate Mary TTS");
-		}
+			StartupTimer.mark("provider startup finished");
+			StartupTimer.logReport();
+		}, "tts-startup-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
 
+	private void startProvider(String name, Callable<TTSProvider> factory) {
+		final long start = System.nanoTime();
 		try {
-			TTSProvider provider = new AmazonPollyTTSProvider();
+			TTSProvider provider = factory.call();
 			if (provider.isAvailable()) {
-				ttsProviders.add(provider);
+				StartupTimer.mark("provider " + name + " ready", elapsedMillis(start));
+				onProviderAvailable(provider);
+			} else {
+				StartupTimer.mark("provider " + name + " not available", elapsedMillis(start));
 			}
 		} catch (Exception e) {
-			log.error("could not instantiate Amazon Polly TTS", e);
+			log.info("could not instantiate {} TTS: {}", name, e.getMessage());
+			StartupTimer.mark("provider " + name + " failed", elapsedMillis(start));
 		}
 	}
 
+	private static long elapsedMillis(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
 	/**
-	 * Returns a TTS Provider (Google or Mary as fallback)
-	 * 
-	 * @throws MaryConfigurationException
+	 * Adds the provider in preference order. It becomes the active provider if no
+	 * provider was chosen yet and it is preferred over the current one.
 	 */
-	private TTSProvider getDefaultTTSProvider() throws MaryConfigurationException {
-		if (ttsProviders.isEmpty()) {
-			return null;
+	private synchronized void onProviderAvailable(TTSProvider provider) {
+		int idx = 0;
+		while (idx < ttsProviders.size() && rank(ttsProviders.get(idx)) <= rank(provider)) {
+			idx++;
+		}
+		ttsProviders.add(idx, provider);
+
+		if (!ttsChosen && (tts == null || rank(provider) < rank(tts))) {
+			tts = provider;
 		}
-		return ttsProviders.get(0);
+		log.info("TTS available: {}, active: {}", provider.getName(), tts.getName());
+
+		for (Runnable l : providerListeners) {
+			l.run();
+		}
+	}
+
+	private int rank(TTSProvider provider) {
+		int idx = providerPreference.indexOf(provider.getName());
+		return idx < 0 ? Integer.MAX_VALUE : idx;
+	}
+
+	/**
+	 * Adds a listener which is called whenever a provider becomes available.
+	 */
+	public void addProviderListener(Runnable listener) {
+		providerListeners.add(listener);
 	}
 
 	public void setTts(TTSProvider tts) {
 		this.tts = tts;
+		ttsChosen = true;
 	}
 
 	public MediaPlayer getMediaPlayer() {
@@ -159,18 +280,56 @@ public class TwitchBot extends ListenerAdapter {
 
 	/**
 	 * Called for every message in the chat.<br>
-	 * Calls {@link #parseMessage} to check for commands.
+	 * Commands are handed to the {@link SpeechPipeline}, which calls
+	 * {@link #parseMessage} on its own thread. Plain chat is ignored right away.
+	 * <br>
+	 * The badges of the user decide the priority of the messages it speaks.
 	 */
 	@Override
 	public void onGenericMessage(GenericMessageEvent event) throws Exception {
-		String message = event.getMessage();
-		String command = getCommandFromMessage(message);
+		final String message = event.getMessage();
+		chatMessages.increment();
+		if (!CommandDispatcher.isCommand(message)) {
+			return;
+		}
+		chatCommands.increment();
 
 		final User user = event.getUser();
 		final String nick = user == null ? "" : user.getLogin();
+		final Map<String, String> tags = event instanceof MessageEvent ? ((MessageEvent) event).getV3Tags() : null;
+		final SpeechPriority priority = priorityOf(tags, nick, channel);
+		final boolean isMod = priority == SpeechPriority.MODERATOR || priority == SpeechPriority.BROADCASTER;
 
-		parseMessage(nick, false, channel, message, command);
+		if (!speechPipeline.ingest(() -> parseMessage(nick, isMod, channel, message), priority)) {
+			log.warn("chat message dropped, {}", speechPipeline);
+		}
+	}
 
+	/**
+	 * Returns the priority of a chat user, from the twitch tags 'badges', 'mod'
+	 * and 'subscriber'.
+	 *
+	 * @param tags may be null
+	 */
+	public static SpeechPriority priorityOf(Map<String, String> tags, String login, String channel) {
+		if (login != null && login.equalsIgnoreCase(channel)) {
+			return SpeechPriority.BROADCASTER;
+		}
+		if (tags == null) {
+			return SpeechPriority.VIEWER;
+		}
+		final String badges = "," + tags.getOrDefault("badges", "");
+		if (badges.contains(",broadcaster/")) {
+			return SpeechPriority.BROADCASTER;
+		}
+		if ("1".equals(tags.get("mod")) || badges.contains(",moderator/")) {
+			return SpeechPriority.MODERATOR;
+		}
+		if ("1".equals(tags.get("subscriber")) || badges.contains(",subscriber/")
+				|| badges.contains(",founder/")) {
+			return SpeechPriority.SUBSCRIBER;
+		}
+		return SpeechPriority.VIEWER;
 	}
 
 	@Override
@@ -196,172 +355,313 @@ public class TwitchBot extends ListenerAdapter {
 	}
 
 	/**
-	 * Returns the command, from a message. The command will always be the first
-	 * word of the message.
+	 * Registers the chat commands.
 	 */
-	private String getCommandFromMessage(String message) {
-		String[] msgParts = message.split(" ");
-		return msgParts[0];
+	private void registerCommands() {
+		commands.register("!vol", ttsCommand(this::onVolumeCommand));
+		commands.register("!lang", ttsCommand(this::onLangCommand));
+		commands.register("!gender", ttsCommand(this::onGenderCommand));
+		commands.register("!voice", ttsCommand(this::onVoiceCommand));
+		commands.register("!tts", ttsCommand(this::onTTSCommand));
+		commands.register("!speak", ttsCommand(this::onSpeakCommand));
+		commands.register("!s", ttsCommand(this::onSpeakCommand));
+		commands.register("!tr", ttsCommand(this::onTranslateCommand));
+		commands.register("!skip", this::onSkipCommand);
+		commands.register("!clear", this::onClearCommand);
+		commands.register("!pause", this::onPauseCommand);
+		commands.register("!resume", this::onResumeCommand);
+		// everything else may be a media file
+		commands.setFallback((username, isMod, command, args) -> playMedia(command));
+	}
+
+	/**
+	 * Wraps a handler which needs a TTS provider, it is skipped while the
+	 * providers are still starting.
+	 */
+	private CommandHandler ttsCommand(CommandHandler handler) {
+		return (username, isMod, command, args) -> {
+			if (tts != null) {
+				handler.handle(username, isMod, command, args);
+			}
+		};
 	}
 
 	/**
 	 * Parses the message for commands.
 	 */
-	private void parseMessage(String username, boolean isMod, String channel, String message, String command) {
+	void parseMessage(String username, boolean isMod, String channel, String message) {
 		if (isIgnoredUser(username)) {
 			return;
 		}
+		final long start = System.nanoTime();
+		commands.dispatch(username, isMod, message);
+		parseTiming.recordSince(start);
+	}
 
-		if (command == null) {
-			command = "";
-		}
-		if (message == null) {
-			message = "";
-		}
-
-		command = lowerTrimmed(command);
-		String msgWithoutCommand = getMsgWithoutCommand(message, command);
-
-		// volume
-		if (command.equals("!vol")) {
-			if (msgWithoutCommand.isEmpty()) {
-				sendMsg("Current volume: " + tts.getVolume());
-			} else {
+	private void onVolumeCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (msgWithoutCommand.isEmpty()) {
+			sendMsg("Current volume: " + tts.getVolume());
+		} else {
 
+			try {
+				float value = GoogleTTSProvider.DEFAULT_VOLUME;
 				try {
-					float value = GoogleTTSProvider.DEFAULT_VOLUME;
-					try {
-						value = Float.parseFloat(msgWithoutCommand);
-					} catch (Exception e) {
-						log.error(e.getMessage(), e);
-					}
-					final boolean success = tts.setVolume(value);
-					if (success) {
-						sendMsg("Volume set to " + value + " dB");
-						ui.updateVol(value);
-					} else {
-						sendMsg("Volume has to be between -96 and +16");
-					}
+					value = Float.parseFloat(msgWithoutCommand);
 				} catch (Exception e) {
 					log.error(e.getMessage(), e);
-					sendMsg("Exception:" + e.getStackTrace()[0] + " - " + e.getMessage());
 				}
+				final boolean success = tts.setVolume(value);
+				if (success) {
+					sendMsg("Volume set to " + value + " dB");
+					if (ui != null) {
+						ui.updateVol(value);
+					}
+				} else {
+					sendMsg("Volume has to be between -96 and +16");
+				}
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+				sendMsg("Exception:" + e.getStackTrace()[0] + " - " + e.getMessage());
 			}
 		}
+	}
 
-		if (command.equals("!lang")) {
-			if (msgWithoutCommand.isEmpty()) {
-				sendMsg("Current language: " + tts.getLang());
-			} else {
-				boolean success = tts.setLang(msgWithoutCommand);
-				if (success) {
-					sendMsg("Language set to: " + msgWithoutCommand);
+	private void onLangCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (msgWithoutCommand.isEmpty()) {
+			sendMsg("Current language: " + tts.getLang());
+		} else {
+			boolean success = tts.setLang(msgWithoutCommand);
+			if (success) {
+				sendMsg("Language set to: " + msgWithoutCommand);
+				if (ui != null) {
 					ui.updateLang(tts.getLang());
-				} else {
-					sendMsg("Language not known, try:" + tts.getKnownLanguages());
 				}
+			} else {
+				sendMsg("Language not known, try:" + tts.getKnownLanguages());
 			}
 		}
+	}
 
-		// gender
-		if (command.equals("!gender")) {
-			if (!tts.isSupported(TTSFeature.GENDER)) {
-				sendMsg("not supported");
+	private void onGenderCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (!tts.isSupported(TTSFeature.GENDER)) {
+			sendMsg("not supported");
+		} else {
+			if (msgWithoutCommand.isEmpty()) {
+				sendMsg("Current gender: " + tts.getGender());
 			} else {
-				if (msgWithoutCommand.isEmpty()) {
-					sendMsg("Current gender: " + tts.getGender());
-				} else {
-					boolean success = tts.setGender(msgWithoutCommand);
-					if (success) {
-						sendMsg("Gender set to:" + msgWithoutCommand);
+				boolean success = tts.setGender(msgWithoutCommand);
+				if (success) {
+					sendMsg("Gender set to:" + msgWithoutCommand);
+					if (ui != null) {
 						ui.updateGender(tts.getGender());
-					} else {
-						sendMsg("Gender must be any of: female/male/neutral");
 					}
+				} else {
+					sendMsg("Gender must be any of: female/male/neutral");
 				}
 			}
 		}
+	}
 
-		if (command.equals("!voice")) {
-			if (!msgWithoutCommand.isEmpty()) {
-				if (tts.isKnownVoice(msgWithoutCommand)) {
-					tts.setVoice(msgWithoutCommand);
+	private void onVoiceCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (!msgWithoutCommand.isEmpty()) {
+			if (tts.isKnownVoice(msgWithoutCommand)) {
+				tts.setVoice(msgWithoutCommand);
+				if (ui != null) {
 					ui.updateVoice(tts.getVoice());
-				} else {
-					Collection<String> voices = tts.listSupportedVoices(tts.getLang());
-					sendMsg("Voice not known, available voices for lang " + tts.getLang() + ": "
-							+ String.join(", ", voices));
 				}
 			} else {
-				sendMsg("Current Voice: " + tts.getVoice());
+				Collection<String> voices = tts.listSupportedVoices(tts.getLang());
+				sendMsg("Voice not known, available voices for lang " + tts.getLang() + ": "
+						+ String.join(", ", voices));
 			}
+		} else {
+			sendMsg("Current Voice: " + tts.getVoice());
 		}
+	}
 
-		if (command.equals("!tts")) {
-			String providerNames = ttsProviders.stream().map(p -> p.getName()).collect(Collectors.joining(", "));
-			if (msgWithoutCommand.isEmpty()) {
-				sendMsg("Active: " + tts.getName() + "\nAvailable: " + providerNames + "");
-			} else {
-				boolean success = setTTSProvider(msgWithoutCommand);
-				if (success) {
-					tts.setDefault();
+	private void onTTSCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		String providerNames = ttsProviders.stream().map(p -> p.getName()).collect(Collectors.joining(", "));
+		if (msgWithoutCommand.isEmpty()) {
+			sendMsg("Active: " + tts.getName() + "\nAvailable: " + providerNames + "");
+		} else {
+			boolean success = setTTSProvider(msgWithoutCommand);
+			if (success) {
+				tts.setDefault();
+				if (ui != null) {
 					ui.updateTTS(tts);
-					sendMsg("TTS changed to:" + tts.getName());
-				} else {
-					sendMsg("Avaliable TTS:" + String.join(", ", providerNames));
 				}
+				sendMsg("TTS changed to:" + tts.getName());
+			} else {
+				sendMsg("Avaliable TTS:" + String.join(", ", providerNames));
 			}
 		}
+	}
 
-		if (command.equals("!speak") || command.equals("!s")) {
-			try {
-				tts.syntesizeAndPlay(msgWithoutCommand);
+	private void onSpeakCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (!isSpeechAllowed(username, isMod, msgWithoutCommand)) {
+			return;
+		}
+		if (speak(username, msgWithoutCommand)) {
+			if (ui != null) {
 				ui.updateInput(msgWithoutCommand);
-			} catch (Exception e) {
-				log.error(e.getMessage(), e);
-				sendMsg("Exception " + e.getStackTrace()[0] + " - " + e.getMessage());
 			}
 		}
+	}
+
+	/**
+	 * Checks the rate limits of the user and the current provider.
+	 */
+	private boolean isSpeechAllowed(String username, boolean isMod, String text) {
+		if (rateLimiter == null || (isMod && Settings.getBoolean(RATE_LIMIT_EXEMPT_MODS, true))) {
+			return true;
+		}
+		final Decision decision = rateLimiter.tryAcquire(username, tts.getName(), text.length());
+		if (decision == Decision.ALLOWED) {
+			return true;
+		}
+		log.info("{}: {} dropped ({})", decision, username, rateLimiter);
+		if (Settings.getBoolean(RATE_LIMIT_REPLY, false)) {
+			sendMsg("@" + username + (decision == Decision.USER_LIMITED ? " too many messages, please wait"
+					: " TTS is busy, try again later"));
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true for moderators and the channel owner.
+	 */
+	private boolean isPrivileged(String username, boolean isMod) {
+		return isMod || (username != null && username.equalsIgnoreCase(channel));
+	}
+
+	/**
+	 * '!skip' stops the current message, mods only.
+	 */
+	private void onSkipCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (isPrivileged(username, isMod)) {
+			speechPipeline.skip();
+		}
+	}
+
+	/**
+	 * '!clear' drops all queued messages, mods only.
+	 */
+	private void onClearCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (isPrivileged(username, isMod)) {
+			log.info("{} cleared {} messages", username, speechPipeline.clear());
+		}
+	}
+
+	/**
+	 * '!pause' stops speaking after the current message, mods only.
+	 */
+	private void onPauseCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (isPrivileged(username, isMod)) {
+			setPaused(true);
+		}
+	}
+
+	/**
+	 * '!resume' continues with the queued messages, mods only.
+	 */
+	private void onResumeCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		if (isPrivileged(username, isMod)) {
+			setPaused(false);
+		}
+	}
+
+	/**
+	 * Pauses or resumes the speech playback, see {@link SpeechPipeline#pause()}.
+	 */
+	public void setPaused(boolean paused) {
+		if (paused) {
+			speechPipeline.pause();
+		} else {
+			speechPipeline.resume();
+		}
+		if (ui != null) {
+			ui.updatePaused(paused);
+		}
+	}
+
+	/**
+	 * '!tr de en hallo' posts the translation and speaks it if the target
+	 * language has a voice.
+	 */
+	private void onTranslateCommand(String username, boolean isMod, String command, String msgWithoutCommand) {
+		final String[] split = msgWithoutCommand.split(" +", 3);
+		if (split.length < 3 || split[0].length() != 2 || split[1].length() != 2) {
+			sendMsg("!tr <quelle> <ziel> <text>");
+			return;
+		}
+		final TTSProvider tts = this.tts;
+		final Translator translator = tts.getTranslator();
+		if (translator == null) {
+			sendMsg("translation not supported by " + tts.getName());
+			return;
+		}
+		final String src = split[0].toLowerCase();
+		final String dst = split[1].toLowerCase();
+		final String text = split[2];
+		if (!translator.isSupported(src)) {
+			sendMsg(src + " not supported");
+			return;
+		}
+		if (!translator.isSupported(dst)) {
+			sendMsg(dst + " not supported");
+			return;
+		}
+		if (!isSpeechAllowed(username, isMod, text)) {
+			return;
+		}
+
+		// answered by the translator thread, the chat thread does not wait
+		final SpeechPriority priority = SpeechPipeline.getChatPriority();
+		translator.translate(src, dst, text).whenComplete((translated, e) -> {
+			if (e != null || translated == null || translated.isEmpty()) {
+				return;
+			}
+			sendMsg(translated);
+			if (tts.isKnownLanguage(dst)) {
+				final SpeechRequest request = new SpeechRequest(tts, username, translated, dst, null);
+				request.setPriority(priority);
+				speechPipeline.speak(request);
+			}
+		});
+	}
+
+	/**
+	 * Queues the text to be spoken by the current TTS provider.
+	 * 
+	 * @return false if the text was not queued
+	 */
+	public boolean speak(String username, String text) {
+		return speak(username, text, SpeechPriority.VIEWER);
+	}
+
+	/**
+	 * Queues the text with the given priority, chat messages may raise it.
+	 *
+	 * @return false if the text was not queued
+	 */
+	public boolean speak(String username, String text, SpeechPriority priority) {
+		final TTSProvider tts = this.tts;
+		if (tts == null) {
+			return false;
+		}
+		final SpeechRequest request = new SpeechRequest(tts, username, text);
+		request.setPriority(priority);
+		return speechPipeline.speak(request);
+	}
 
-//		if (command.equals("!tr")) {
-//			String src = null;
-//			String dst = null;
-//			final String[] split = msgWithoutCommand.split(" ");
-//			if (split.length > 2) {
-//				if (split[0].length() == 2) {
-//					src = split[0];
-//					msgWithoutCommand = msgWithoutCommand.substring(3);
-//				}
-//				if (split[1].length() == 2) {
-//					dst = split[1];
-//					msgWithoutCommand = msgWithoutCommand.substring(2);
-//				}
-//			}
-//			if (src == null || dst == null) {
-//				sendMsg("!tr <quelle> <ziel> <text>");
-//			} else {
-//				final String translate = tts.translate(src, dst, msgWithoutCommand);
-//				if (translate != null && translate.isEmpty() == false) {
-//					sendMsg(translate);
-//				}
-//				boolean known = tts.isKnownLanguage(dst);
-//				if (known) {
-//					try {
-//						tts.syntesizeAndPlay(translate, dst, null);
-//					} catch (Exception e) {
-//						log.error(e.getMessage(), e);
-//					}
-//				}
-//			}
-//		}
-
-		playMedia(command);
+	public SpeechPipeline getSpeechPipeline() {
+		return speechPipeline;
 	}
 
 	public boolean setTTSProvider(String msgWithoutCommand) {
 		for (TTSProvider p : getTtsProviders()) {
 			if (p.getName().equals(msgWithoutCommand)) {
-				tts = p;
+				setTts(p);
 				return true;
 			}
 		}
@@ -376,27 +676,37 @@ public class TwitchBot extends ListenerAdapter {
 
 	}
 
+	/**
+	 * Plays the media file matching the command, preloaded clips are played from
+	 * memory on the effects channel of the audio engine (mixed with the speech,
+	 * ducked while it plays), everything else with VLC.
+	 */
 	private void playMedia(String command) {
-		if (ui.isMediaCommandsEnabled() == false) {
+		if (ui == null || ui.isMediaCommandsEnabled() == false) {
 			return;
 		}
-		if (mediaPlayer == null) {
+		if (mediaLibrary == null) {
 			return;
 		}
 		if (command.length() < 2) {
 			return;
 		}
-		String media = command.substring(1);
-		final String mediaPath = "media/";
-		List<String> extensions = Arrays.asList("mp3", "mp4", "wmv", "avi", "mpg", "wav", "ogg", "gif", "png", "jpg",
-				"bmp");
+		final MediaFile media = mediaLibrary.resolve(command.substring(1));
+		if (media == null) {
+			return;
+		}
 
-		for (String ext : extensions) {
-			final String fileNAme = mediaPath + media + "." + ext;
-			if (Files.exists(Paths.get(fileNAme))) {
-				mediaPlayer.media().play(fileNAme);
-				break;
-			}
+		final PcmAudio clip = media.getClip();
+		if (clip != null) {
+			mediaExecutor.execute(() -> {
+				try {
+					Utils.playEffect(clip);
+				} catch (Exception e) {
+					log.error(e.getMessage(), e);
+				}
+			});
+		} else if (mediaPlayer != null) {
+			mediaPlayer.media().play(media.getPath().toString());
 		}
 	}
 
@@ -417,16 +727,10 @@ public class TwitchBot extends ListenerAdapter {
 	public void disconnect() {
 		pircBot.stopBotReconnect();
 		pircBot.sendIRC().quitServer("leaving");
-	}
 
-	/**
-	 * returns the message in lowercases and trimmed.
-	 */
-	private String lowerTrimmed(String message) {
-		if (message == null) {
-			return message;
+		for (TTSProvider p : ttsProviders) {
+			p.shutdown();
 		}
-		return message.toLowerCase().trim();
 	}
 
 	/**
@@ -445,19 +749,6 @@ public class TwitchBot extends ListenerAdapter {
 		return false;
 	}
 
-	/**
-	 * Returns the message without the leading command.
-	 */
-	private String getMsgWithoutCommand(String message, String cmd) {
-		if (cmd == null || cmd.startsWith("!") == false) {
-			return message;
-		}
-		if (message.length() <= cmd.length() + 1) {
-			return "";
-		}
-		return message.substring(cmd.length()).trim();
-	}
-
 	public boolean isConnected() {
 		if (pircBot == null) {
 			return false;
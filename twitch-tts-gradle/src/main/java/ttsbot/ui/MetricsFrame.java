@@ -0,0 +1,125 @@
+package ttsbot.ui;
+
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import ttsbot.metrics.Metric;
+import ttsbot.metrics.Metrics;
+
+/**
+ * Live view of the {@link Metrics}, refreshed every second while open.<br>
+ * Timers show count and latency percentiles, counters and gauges their value.
+ */
+public class MetricsFrame extends JFrame {
+	private static final long serialVersionUID = 1L;
+	private static final int REFRESH_MILLIS = 1000;
+
+	private final MetricsTableModel model = new MetricsTableModel();
+	private final Timer refreshTimer;
+
+	public MetricsFrame() {
+		setTitle("Metrics");
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		setBounds(560, 100, 760, 420);
+
+		JTable table = new JTable(model);
+		table.setAutoCreateRowSorter(true);
+		table.getColumnModel().getColumn(0).setPreferredWidth(180);
+		table.getColumnModel().getColumn(1).setPreferredWidth(200);
+		getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+		refreshTimer = new Timer(REFRESH_MILLIS, e -> model.refresh());
+		refreshTimer.setInitialDelay(0);
+	}
+
+	@Override
+	public void setVisible(boolean visible) {
+		super.setVisible(visible);
+		if (visible) {
+			refreshTimer.start();
+		} else {
+			refreshTimer.stop();
+		}
+	}
+
+	@Override
+	public void dispose() {
+		refreshTimer.stop();
+		super.dispose();
+	}
+
+	private static class MetricsTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+		private static final String[] COLUMNS = { "Metric", "Labels", "Count / Value", "Mean ms", "p50 ms", "p90 ms",
+				"p99 ms", "Max ms" };
+
+		private List<Object[]> rows = new ArrayList<>();
+
+		void refresh() {
+			final List<Object[]> newRows = new ArrayList<>();
+			for (Metric m : Metrics.get().getMetrics()) {
+				if (m instanceof ttsbot.metrics.Timer) {
+					final ttsbot.metrics.Timer t = (ttsbot.metrics.Timer) m;
+					newRows.add(new Object[] { m.getName(), m.getLabelText(), t.getCount(), round(t.getMeanMillis()),
+							round(t.getP50Millis()), round(t.getP90Millis()), round(t.getP99Millis()),
+							round(t.getMaxMillis()) });
+				} else {
+					newRows.add(new Object[] { m.getName(), m.getLabelText(), m.getValue(), null, null, null, null,
+							null });
+				}
+			}
+			final boolean sameRows = newRows.size() == rows.size();
+			rows = newRows;
+			if (sameRows && !rows.isEmpty()) {
+				// keeps the selection and sort order
+				fireTableRowsUpdated(0, rows.size() - 1);
+			} else {
+				fireTableDataChanged();
+			}
+		}
+
+		private static Double round(double millis) {
+			return Math.round(millis * 10) / 10.0;
+		}
+
+		@Override
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			switch (column) {
+			case 0:
+			case 1:
+				return String.class;
+			case 2:
+				return Long.class;
+			default:
+				return Double.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			return rows.get(row)[column];
+		}
+	}
+}
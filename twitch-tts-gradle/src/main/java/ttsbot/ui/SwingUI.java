@@ -22,6 +22,7 @@ import javax.swing.JSeparator;
 import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.JToggleButton;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ttsbot.TTSBotMain;
+import ttsbot.speech.SpeechPriority;
 import ttsbot.tts.TTSProvider;
 import ttsbot.tts.TTSProvider.TTSFeature;
 import ttsbot.twitch.TwitchBot;
@@ -62,6 +64,10 @@ public class SwingUI extends JFrame {
 	private JComboBox<String> comboBoxGender;
 	private JLabel txtVlcInfo;
 	private JCheckBox chckbxMediaCommands;
+	private JToggleButton tglbtnPause;
+	// set while the provider combo is synced with the bot, suppresses item events
+	private boolean updatingProviders = false;
+	private MetricsFrame metricsFrame;
 
 	/**
 	 * Set default values.
@@ -74,12 +80,8 @@ public class SwingUI extends JFrame {
 		setConnectionState();
 		spinnerVolume.setValue(0);
 
-		for (int i = 0; i < comboBoxLanguage.getItemCount(); i++) {
-			final String itemAt = comboBoxLanguage.getItemAt(i);
-			final String botLang = bot.getTts().getLang();
-			if (itemAt.equals(botLang)) {
-				comboBoxLanguage.setSelectedItem(itemAt);
-			}
+		if (bot.getTts() != null) {
+			comboBoxLanguage.setSelectedItem(bot.getTts().getLang());
 		}
 
 		// vlc
@@ -118,6 +120,17 @@ public class SwingUI extends JFrame {
 		});
 	}
 
+	/**
+	 * Opens the live metrics window, or brings it to front.
+	 */
+	private void showMetrics() {
+		if (metricsFrame == null || !metricsFrame.isDisplayable()) {
+			metricsFrame = new MetricsFrame();
+		}
+		metricsFrame.setVisible(true);
+		metricsFrame.toFront();
+	}
+
 	/**
 	 * Create the frame.
 	 */
@@ -144,6 +157,18 @@ public class SwingUI extends JFrame {
 			});
 			mnuFile.add(mntmExit);
 		}
+		{
+			JMenu mnuView = new JMenu("View");
+			menuBar.add(mnuView);
+
+			JMenuItem mntmMetrics = new JMenuItem("Metrics");
+			mntmMetrics.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					showMetrics();
+				}
+			});
+			mnuView.add(mntmMetrics);
+		}
 
 		menuBar.add(Box.createHorizontalGlue());
 		menuBar.add(new JLabel("v " + TTSBotMain.VERSION));
@@ -242,32 +267,53 @@ public class SwingUI extends JFrame {
 		JButton btnSpeak = new JButton("Speak");
 		btnSpeak.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				try {
-					final String text = textAreaTTSInput.getText();
-					if (text != null && text.isEmpty() == false) {
-						bot.getTts().syntesizeAndPlay(text);
-					}
-				} catch (Exception e1) {
-					log.error(e1.getMessage(), e);
+				final String text = textAreaTTSInput.getText();
+				if (text != null && text.isEmpty() == false) {
+					// played right after the current message
+					bot.speak(null, text, SpeechPriority.IMMEDIATE);
 				}
 			}
 		});
 		btnSpeak.setBounds(10, 199, 89, 23);
 		panel.add(btnSpeak);
 
+		JButton btnSkip = new JButton("Skip");
+		btnSkip.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				bot.getSpeechPipeline().skip();
+			}
+		});
+		btnSkip.setBounds(109, 199, 89, 23);
+		panel.add(btnSkip);
+
+		JButton btnClear = new JButton("Clear");
+		btnClear.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				log.info("cleared {} messages", bot.getSpeechPipeline().clear());
+			}
+		});
+		btnClear.setBounds(208, 199, 89, 23);
+		panel.add(btnClear);
+
+		tglbtnPause = new JToggleButton("Pause");
+		tglbtnPause.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				bot.setPaused(tglbtnPause.isSelected());
+			}
+		});
+		tglbtnPause.setBounds(307, 199, 89, 23);
+		panel.add(tglbtnPause);
+
 		comboBoxTTSProvider = new JComboBox<String>();
 		comboBoxLanguage = new JComboBox<>();
 		comboBoxVoice = new JComboBox<String>();
 		comboBoxGender = new JComboBox<>();
 
 		comboBoxTTSProvider.setBounds(141, 280, 144, 20);
-		for (TTSProvider p : bot.getTtsProviders()) {
-			comboBoxTTSProvider.addItem(p.getName());
-		}
 		comboBoxTTSProvider.addItemListener(new ItemListener() {
 			@Override
 			public void itemStateChanged(ItemEvent e) {
-				if (e.getStateChange() == ItemEvent.SELECTED) {
+				if (e.getStateChange() == ItemEvent.SELECTED && !updatingProviders) {
 					// change TTS provider
 					String ttsProviderName = (String) e.getItem();
 					onTTSProviderChanged(bot, ttsProviderName);
@@ -279,7 +325,7 @@ public class SwingUI extends JFrame {
 
 		comboBoxLanguage.addItemListener(new ItemListener() {
 			public void itemStateChanged(ItemEvent e) {
-				if (e.getStateChange() == ItemEvent.SELECTED) {
+				if (e.getStateChange() == ItemEvent.SELECTED && bot.getTts() != null) {
 					bot.getTts().setLang((String) e.getItem());
 					initVoiceComboBox(bot);
 				}
@@ -293,7 +339,7 @@ public class SwingUI extends JFrame {
 		comboBoxVoice.addItemListener(new ItemListener() {
 			@Override
 			public void itemStateChanged(ItemEvent e) {
-				if (e.getStateChange() == ItemEvent.SELECTED) {
+				if (e.getStateChange() == ItemEvent.SELECTED && bot.getTts() != null) {
 					bot.getTts().setVoice((String) e.getItem());
 				}
 			}
@@ -310,7 +356,7 @@ public class SwingUI extends JFrame {
 		comboBoxGender.addItem("Neutral");
 		comboBoxGender.addItemListener(new ItemListener() {
 			public void itemStateChanged(ItemEvent e) {
-				if (e.getStateChange() == ItemEvent.SELECTED) {
+				if (e.getStateChange() == ItemEvent.SELECTED && bot.getTts() != null) {
 					bot.getTts().setGender((String) e.getItem());
 				}
 			}
@@ -377,6 +423,14 @@ public class SwingUI extends JFrame {
 		lblCmdVolume.setBounds(324, 350, 77, 14);
 		panel.add(lblCmdVolume);
 
+		JLabel lblCmdSkip = new JLabel("!skip, !clear");
+		lblCmdSkip.setBounds(324, 373, 104, 14);
+		panel.add(lblCmdSkip);
+
+		JLabel lblCmdPause = new JLabel("!pause, !resume");
+		lblCmdPause.setBounds(324, 396, 104, 14);
+		panel.add(lblCmdPause);
+
 		JSeparator separator_3 = new JSeparator();
 		separator_3.setBounds(302, 290, -10, 159);
 		panel.add(separator_3);
@@ -432,15 +486,58 @@ public class SwingUI extends JFrame {
 		panel.add(lblsHalloWelt);
 
 		init();
+
+		// providers start in the background and show up once they are available
+		bot.addProviderListener(() -> SwingUtilities.invokeLater(this::refreshProviders));
+		refreshProviders();
+	}
+
+	/**
+	 * Syncs the provider combo box with the available providers and selects the
+	 * active one.
+	 */
+	private void refreshProviders() {
+		final TTSProvider active = bot.getTts();
+		final boolean activeChanged = active != null
+				&& !active.getName().equals(comboBoxTTSProvider.getSelectedItem());
+
+		updatingProviders = true;
+		try {
+			int idx = 0;
+			for (TTSProvider p : bot.getTtsProviders()) {
+				if (idx >= comboBoxTTSProvider.getItemCount()
+						|| !p.getName().equals(comboBoxTTSProvider.getItemAt(idx))) {
+					comboBoxTTSProvider.insertItemAt(p.getName(), idx);
+				}
+				idx++;
+			}
+			if (active != null) {
+				comboBoxTTSProvider.setSelectedItem(active.getName());
+			}
+		} finally {
+			updatingProviders = false;
+		}
+
+		if (activeChanged) {
+			initLanguageComboBox(bot);
+			initVoiceComboBox(bot);
+			setTTSVolume(bot);
+			enableFeatureCombos(active);
+		}
 	}
 
 	private void setTTSVolume(TwitchBot bot) {
 		final Number value = (Number) spinnerVolume.getValue();
-		bot.getTts().setVolume(value.floatValue());
+		if (bot.getTts() != null) {
+			bot.getTts().setVolume(value.floatValue());
+		}
 	}
 
 	private void initVoiceComboBox(TwitchBot bot) {
 		comboBoxVoice.removeAllItems();
+		if (bot.getTts() == null) {
+			return;
+		}
 		for (String v : bot.getTts().listSupportedVoices(bot.getTts().getLang())) {
 			comboBoxVoice.addItem(v);
 		}
@@ -454,15 +551,19 @@ public class SwingUI extends JFrame {
 		for (ItemListener i : itemListeners) {
 			comboBoxLanguage.removeItemListener(i);
 		}
-		for (String s : bot.getTts().getKnownLanguages()) {
-			comboBoxLanguage.addItem(s);
+		if (bot.getTts() != null) {
+			for (String s : bot.getTts().getKnownLanguages()) {
+				comboBoxLanguage.addItem(s);
+			}
 		}
 
 		// re-add itemlistener
 		for (ItemListener i : itemListeners) {
 			comboBoxLanguage.addItemListener(i);
 		}
-		comboBoxLanguage.setSelectedItem(bot.getTts().getLang());
+		if (bot.getTts() != null) {
+			comboBoxLanguage.setSelectedItem(bot.getTts().getLang());
+		}
 	}
 
 	private Thread createPircXThread(TwitchBot bot) {
@@ -506,7 +607,9 @@ public class SwingUI extends JFrame {
 	}
 
 	private void onTTSProviderChanged(TwitchBot bot, String ttsProviderName) {
-		bot.setTTSProvider(ttsProviderName);
+		if (!bot.setTTSProvider(ttsProviderName)) {
+			return;
+		}
 
 		bot.getTts().setDefault();
 
@@ -521,7 +624,11 @@ public class SwingUI extends JFrame {
 	 * Enable / disable features based on current TTS Provider.
 	 */
 	private void enableFeatureCombos(TTSProvider tts) {
-		comboBoxGender.setEnabled(tts.isSupported(TTSFeature.GENDER));
+		comboBoxGender.setEnabled(tts != null && tts.isSupported(TTSFeature.GENDER));
+	}
+
+	public void updatePaused(boolean paused) {
+		tglbtnPause.setSelected(paused);
 	}
 
 	public void updateInput(String msgWithoutCommand) {
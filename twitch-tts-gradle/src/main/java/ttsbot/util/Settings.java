@@ -22,6 +22,8 @@ public class Settings {
 	public static String OAUTH_TOKEN = "oauth_irc";
 
 	Properties properties;
+	// set at runtime, win over the files
+	private static final Properties overrides = new Properties();
 
 	private Settings() throws Exception {
 		this.properties = new Properties();
@@ -66,6 +68,72 @@ public class Settings {
 		return properties.getProperty(key);
 	}
 
+	/**
+	 * Returns the trimmed setting, or the default value if the setting (or the
+	 * settings file) is missing.
+	 */
+	public static String getString(String key, String defaultValue) {
+		final String override = overrides.getProperty(key);
+		if (override != null) {
+			return override;
+		}
+		final Settings settings = get();
+		if (settings == null) {
+			return defaultValue;
+		}
+		final String value = settings.get(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * Overrides a setting for this run, e.g. for load tests. Settings which are
+	 * read once have to be set before the component using them is created.
+	 */
+	public static void set(String key, String value) {
+		overrides.setProperty(key, value);
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		final String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			log.warn("invalid number for {}: {}", key, value);
+			return defaultValue;
+		}
+	}
+
+	public static double getDouble(String key, double defaultValue) {
+		final String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			log.warn("invalid number for {}: {}", key, value);
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		final String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+
 	/**
 	 * Returns the channel name '#channel name'
 	 */
@@ -0,0 +1,50 @@
+package ttsbot.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the startup phases with their time since JVM start and logs them as
+ * a report.
+ */
+public class StartupTimer {
+	private final static Logger log = LoggerFactory.getLogger(StartupTimer.class);
+
+	private static final Map<String, Long> phases = new LinkedHashMap<>();
+	private static final Map<String, Long> durations = new LinkedHashMap<>();
+
+	/**
+	 * Records that a phase has been reached.
+	 */
+	public static synchronized void mark(String phase) {
+		phases.put(phase, ManagementFactory.getRuntimeMXBean().getUptime());
+	}
+
+	/**
+	 * Records that a phase has been reached and how long it took.
+	 */
+	public static synchronized void mark(String phase, long durationMillis) {
+		mark(phase);
+		durations.put(phase, durationMillis);
+	}
+
+	public static synchronized String report() {
+		StringBuilder sb = new StringBuilder("startup report:");
+		for (Map.Entry<String, Long> e : phases.entrySet()) {
+			sb.append(String.format("%n  %6d ms  %s", e.getValue(), e.getKey()));
+			Long duration = durations.get(e.getKey());
+			if (duration != null) {
+				sb.append(String.format(" (took %d ms)", duration));
+			}
+		}
+		return sb.toString();
+	}
+
+	public static void logReport() {
+		log.info(report());
+	}
+}
@@ -5,17 +5,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.Line;
-import javax.sound.sampled.LineEvent;
-import javax.sound.sampled.LineListener;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
@@ -24,14 +20,17 @@ import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.ByteString;
 
+import ttsbot.audio.AudioChannel;
+import ttsbot.audio.AudioEngine;
+import ttsbot.audio.PcmAudio;
+import ttsbot.audio.WavBuffer;
+
 /**
  * Various helper methods.
  */
 public class Utils {
 	private final static Logger log = LoggerFactory.getLogger(Utils.class);
 
-	private static Semaphore lock = new Semaphore(1);
-
 	/**
 	 * Clamps the given value to the min max range.
 	 */
@@ -46,6 +45,20 @@ public class Utils {
 		return Math.max(min, Math.min(max, value));
 	}
 
+	/**
+	 * Creates a factory for daemon threads named 'name-1', 'name-2', ...
+	 */
+	public static ThreadFactory namedThreadFactory(String name) {
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+		return r -> {
+			Thread t = defaultFactory.newThread(r);
+			t.setName(name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
 	/**
 	 * Plays a .wav audiostream.
 	 * 
@@ -55,49 +68,79 @@ public class Utils {
 		playAudio(audioInputStream, 0);
 	}
 
+	/**
+	 * Streams the audio to the shared {@link AudioEngine}, returns once it is
+	 * queued.
+	 */
 	public static void playAudio(AudioInputStream audioInputStream, float volChange)
 			throws LineUnavailableException, IOException {
-		try {
-			lock.tryAcquire(10, TimeUnit.SECONDS);
-
-			AudioFormat format = audioInputStream.getFormat();
-
-			log.info(String.format("%s, bits:%s, channels:%s, samplerate:%s, framerate:%s ", //
-					format.getEncoding(), format.getSampleSizeInBits(), //
-					format.getChannels(), format.getSampleRate(), format.getFrameRate()));
-			Line line;
-			line = AudioSystem.getLine(new Line.Info(Clip.class));
-
-			Clip clip = (Clip) line;
-
-			clip.open(audioInputStream);
-
-			// min / max: -80 / 6
-			FloatControl gainControl = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
-			volChange = Math.max(volChange, -79.9f);
-			volChange = Math.min(volChange, 5.9f);
-
-			gainControl.setValue(volChange);
-
-			clip.addLineListener(new LineListener() {
-
-				@Override
-				public void update(LineEvent le) {
-					LineEvent.Type type = le.getType();
-					if (type == LineEvent.Type.OPEN) {
-					} else if (type == LineEvent.Type.CLOSE) {
-					} else if (type == LineEvent.Type.START) {
-					} else if (type == LineEvent.Type.STOP) {
-						clip.close();
-						lock.release();
-					}
-				}
-			});
-			clip.start();
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
-			lock.release();
+		logFormat(audioInputStream.getFormat());
+		AudioEngine.get().play(audioInputStream, volChange);
+	}
+
+	/**
+	 * Feeds the samples to the shared {@link AudioEngine} straight from their
+	 * buffers, returns once they are queued.
+	 */
+	public static void playAudio(WavBuffer wav, float volChange) throws LineUnavailableException, IOException {
+		logFormat(wav.getFormat());
+		AudioEngine.get().play(wav, volChange, null);
+	}
+
+	/**
+	 * Plays a sound effect, mixed with the speech, returns once it is queued.
+	 * Effects are played one after another.
+	 */
+	public static void playEffect(PcmAudio clip) throws LineUnavailableException, IOException {
+		final WavBuffer wav = WavBuffer.wrap(clip);
+		if (wav != null) {
+			AudioEngine.get().play(AudioChannel.EFFECTS, wav, 0, null);
+		} else {
+			AudioEngine.get().play(AudioChannel.EFFECTS, clip.toAudioInputStream(), 0, null);
+		}
+	}
+
+	/**
+	 * Plays the audiostream and waits until playback has finished.
+	 */
+	public static void playAudioAndWait(AudioInputStream audioInputStream, float volChange)
+			throws LineUnavailableException, IOException, InterruptedException {
+		playAudioAndWait(audioInputStream, volChange, null);
+	}
+
+	/**
+	 * Plays the audiostream and waits until playback has finished.
+	 *
+	 * @param onStart called once the first chunk is queued for output, may be
+	 *                null
+	 */
+	public static void playAudioAndWait(AudioInputStream audioInputStream, float volChange, Runnable onStart)
+			throws LineUnavailableException, IOException, InterruptedException {
+		logFormat(audioInputStream.getFormat());
+		AudioEngine.get().playAndWait(audioInputStream, volChange, onStart);
+	}
+
+	/**
+	 * Plays the decoded audio and waits until playback has finished.<br>
+	 * 16 bit pcm is fed from its buffer without further copies.
+	 *
+	 * @param onStart see {@link #playAudioAndWait(AudioInputStream, float, Runnable)}
+	 */
+	public static void playAudioAndWait(PcmAudio audio, float volChange, Runnable onStart)
+			throws LineUnavailableException, IOException, InterruptedException {
+		final WavBuffer wav = WavBuffer.wrap(audio);
+		if (wav == null) {
+			playAudioAndWait(audio.toAudioInputStream(), volChange, onStart);
+			return;
 		}
+		logFormat(wav.getFormat());
+		AudioEngine.get().playAndWait(wav, volChange, onStart);
+	}
+
+	private static void logFormat(AudioFormat format) {
+		log.info(String.format("%s, bits:%s, channels:%s, samplerate:%s, framerate:%s ", //
+				format.getEncoding(), format.getSampleSizeInBits(), //
+				format.getChannels(), format.getSampleRate(), format.getFrameRate()));
 	}
 
 	/**
@@ -115,15 +158,30 @@ public class Utils {
 	}
 
 	/**
-	 * Plays the given .wav content.
+	 * Plays the given .wav content.<br>
+	 * 16 bit pcm is played straight from the buffers of the ByteString, other
+	 * formats are parsed by java sound.
 	 */
 	public static void playWAV(ByteString audioContents, float volume) {
-		try (InputStream newInputStream = audioContents.newInput();
-				AudioInputStream ais = AudioSystem.getAudioInputStream(newInputStream)) {
-			playAudio(ais, volume);
-
+		final WavBuffer wav = WavBuffer.parse(audioContents.asReadOnlyByteBufferList());
+		try {
+			if (wav != null) {
+				playAudio(wav, volume);
+				return;
+			}
+			try (AudioInputStream ais = openWAV(audioContents)) {
+				playAudio(ais, volume);
+			}
 		} catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
 			log.error(e.getMessage(), e);
 		}
 	}
+
+	/**
+	 * Parses the .wav header and returns a stream over the samples.
+	 */
+	public static AudioInputStream openWAV(ByteString audioContents) throws UnsupportedAudioFileException, IOException {
+		InputStream in = audioContents.newInput();
+		return AudioSystem.getAudioInputStream(in);
+	}
 }
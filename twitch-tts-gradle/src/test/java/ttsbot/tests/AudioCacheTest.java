@@ -0,0 +1,83 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.cache.AudioCacheKey;
+import ttsbot.cache.DiskAudioStore;
+import ttsbot.cache.MemoryAudioCache;
+
+public class AudioCacheTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	private static AudioCacheKey key(String text) {
+		return AudioCacheKey.of("google", "de-DE-Wavenet-A", "de", "male", 0, 0, text);
+	}
+
+	private static PcmAudio audio(int size, int value) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (value + i);
+		}
+		return new PcmAudio(FORMAT, data);
+	}
+
+	@Test
+	public void testKeyNormalizesText() {
+		assertEquals(key("gg  wp"), key(" gg wp "));
+	}
+
+	@Test
+	public void testMemoryEvictsLeastRecentlyUsed() {
+		MemoryAudioCache cache = new MemoryAudioCache(300);
+		cache.put(key("a"), audio(100, 1));
+		cache.put(key("b"), audio(100, 2));
+		cache.put(key("c"), audio(100, 3));
+		cache.get(key("a"));
+		cache.put(key("d"), audio(100, 4));
+
+		assertNotNull(cache.get(key("a")));
+		assertNull(cache.get(key("b")));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(300, cache.getBytes());
+	}
+
+	@Test
+	public void testDiskSurvivesReopen() throws Exception {
+		Path dir = Files.createTempDirectory("audio-cache");
+		DiskAudioStore store = new DiskAudioStore(dir, 8192, 4096);
+		store.put(key("hello"), audio(1000, 7));
+		store.flush();
+
+		DiskAudioStore reopened = new DiskAudioStore(dir, 8192, 4096);
+		PcmAudio audio = reopened.get(key("hello"));
+		assertNotNull(audio);
+		assertArrayEquals(audio(1000, 7).getData(), audio.getData());
+		assertEquals(FORMAT.getSampleRate(), audio.getFormat().getSampleRate(), 0);
+	}
+
+	@Test
+	public void testDiskReusesOldestSegment() throws Exception {
+		Path dir = Files.createTempDirectory("audio-cache");
+		DiskAudioStore store = new DiskAudioStore(dir, 8192, 4096);
+		for (int i = 0; i < 12; i++) {
+			store.put(key("clip" + i), audio(1000, i));
+		}
+		assertNull(store.get(key("clip0")));
+		assertNotNull(store.get(key("clip11")));
+
+		DiskAudioStore reopened = new DiskAudioStore(dir, 8192, 4096);
+		assertEquals(store.getCount(), reopened.getCount());
+		assertArrayEquals(audio(1000, 11).getData(), reopened.get(key("clip11")).getData());
+	}
+}
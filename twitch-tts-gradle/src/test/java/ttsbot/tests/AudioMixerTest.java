@@ -0,0 +1,112 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ttsbot.audio.AudioChannel;
+import ttsbot.audio.AudioMixer;
+
+public class AudioMixerTest {
+	// 16 bit stereo, 1000 frames per second: one frame per millisecond
+	private static final int FRAME = 4;
+	private static final int RATE = 1000;
+
+	private static byte[] frames(int count, int sample) {
+		final byte[] data = new byte[count * FRAME];
+		for (int i = 0; i < data.length; i += 2) {
+			data[i] = (byte) sample;
+			data[i + 1] = (byte) (sample >> 8);
+		}
+		return data;
+	}
+
+	private static int sample(byte[] data, int frame) {
+		return (short) ((data[frame * FRAME] & 0xff) | (data[frame * FRAME + 1] << 8));
+	}
+
+	private static void write(AudioMixer mixer, AudioChannel channel, byte[] data) {
+		assertEquals(data.length, mixer.getInput(channel).write(data, 0, data.length));
+	}
+
+	@Test
+	public void testChannelsAreSummed() {
+		final AudioMixer mixer = new AudioMixer(1024, FRAME, RATE, 0, 10, 10);
+		write(mixer, AudioChannel.SPEECH, frames(10, 1000));
+		write(mixer, AudioChannel.EFFECTS, frames(20, -300));
+
+		final byte[] out = new byte[1024];
+		// the longer channel decides, the shorter one is padded with silence
+		assertEquals(20 * FRAME, mixer.mix(out, out.length));
+		assertEquals(700, sample(out, 0));
+		assertEquals(700, sample(out, 9));
+		assertEquals(-300, sample(out, 10));
+		assertEquals(0, mixer.mix(out, out.length));
+	}
+
+	@Test
+	public void testGainAndClipping() {
+		final AudioMixer mixer = new AudioMixer(1024, FRAME, RATE, 0, 10, 10);
+		mixer.getInput(AudioChannel.EFFECTS).setGainDb(-6);
+		write(mixer, AudioChannel.EFFECTS, frames(4, 10000));
+		final byte[] out = new byte[1024];
+		mixer.mix(out, out.length);
+		assertEquals(5012, sample(out, 0));
+
+		mixer.getInput(AudioChannel.EFFECTS).setGainDb(0);
+		write(mixer, AudioChannel.SPEECH, frames(4, 30000));
+		write(mixer, AudioChannel.EFFECTS, frames(4, 30000));
+		mixer.mix(out, out.length);
+		assertEquals(Short.MAX_VALUE, sample(out, 0));
+	}
+
+	@Test
+	public void testEffectsAreDuckedWhileSpeaking() {
+		// -20 dB = factor 0.1, ramps over 10 frames down and 20 frames up
+		final AudioMixer mixer = new AudioMixer(4096, FRAME, RATE, -20, 10, 20);
+		final AudioMixer.Input speech = mixer.getInput(AudioChannel.SPEECH);
+		final byte[] out = new byte[5 * FRAME];
+
+		write(mixer, AudioChannel.EFFECTS, frames(100, 10000));
+		mixer.mix(out, out.length);
+		assertEquals(10000, sample(out, 4));
+		assertFalse(mixer.isDucking());
+
+		// speech starts, without data yet
+		speech.setFeeding(true);
+		mixer.mix(out, out.length);
+		assertTrue(mixer.isDucking());
+		// smooth ramp down within the chunk
+		assertEquals(10000, sample(out, 0));
+		assertTrue(sample(out, 4) < 7000 && sample(out, 4) > 6000);
+		mixer.mix(out, out.length);
+		assertTrue(sample(out, 4) < 2000);
+		mixer.mix(out, out.length);
+		assertEquals(1000, sample(out, 0));
+		assertEquals(1000, sample(out, 4));
+
+		// speech done, ramps back up over 20 frames
+		speech.setFeeding(false);
+		for (int i = 0; i < 5; i++) {
+			mixer.mix(out, out.length);
+		}
+		assertFalse(mixer.isDucking());
+		mixer.mix(out, out.length);
+		assertEquals(10000, sample(out, 0));
+	}
+
+	@Test
+	public void testFlushDropsOneChannel() {
+		final AudioMixer mixer = new AudioMixer(1024, FRAME, RATE, 0, 10, 10);
+		write(mixer, AudioChannel.SPEECH, frames(10, 1000));
+		write(mixer, AudioChannel.EFFECTS, frames(10, 200));
+		mixer.getInput(AudioChannel.SPEECH).flush();
+
+		final byte[] out = new byte[1024];
+		assertEquals(10 * FRAME, mixer.mix(out, out.length));
+		assertEquals(200, sample(out, 0));
+		assertEquals(0, mixer.getInput(AudioChannel.SPEECH).available());
+	}
+}
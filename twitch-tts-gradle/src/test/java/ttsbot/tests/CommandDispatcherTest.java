@@ -0,0 +1,56 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ttsbot.twitch.CommandDispatcher;
+
+public class CommandDispatcherTest {
+	private CommandDispatcher dispatcher;
+	private List<String> calls;
+
+	@Before
+	public void setUp() {
+		calls = new ArrayList<>();
+		dispatcher = new CommandDispatcher();
+		dispatcher.register("!s", (user, isMod, command, args) -> calls.add(command + "|" + args));
+		dispatcher.register("!speak", (user, isMod, command, args) -> calls.add(command + "|" + args));
+		dispatcher.register("!vol", (user, isMod, command, args) -> calls.add(command + "|" + args));
+	}
+
+	@Test
+	public void testPlainChatIsIgnored() {
+		assertFalse(dispatcher.dispatch("viewer", false, "hello !s chat"));
+		assertFalse(dispatcher.dispatch("viewer", false, ""));
+		assertFalse(dispatcher.dispatch("viewer", false, "!"));
+		assertTrue(calls.isEmpty());
+	}
+
+	@Test
+	public void testPrefixCommands() {
+		assertTrue(dispatcher.dispatch("viewer", false, "!s hallo welt"));
+		assertTrue(dispatcher.dispatch("viewer", false, "!SPEAK   hallo  "));
+		assertTrue(dispatcher.dispatch("viewer", false, "!vol"));
+		assertEquals("!s|hallo welt", calls.get(0));
+		assertEquals("!speak|hallo", calls.get(1));
+		assertEquals("!vol|", calls.get(2));
+	}
+
+	@Test
+	public void testUnknownCommandGoesToFallback() {
+		assertFalse(dispatcher.dispatch("viewer", false, "!spe hi"));
+
+		dispatcher.setFallback((user, isMod, command, args) -> calls.add("fallback " + command));
+		assertTrue(dispatcher.dispatch("viewer", false, "!spe hi"));
+		assertTrue(dispatcher.dispatch("viewer", false, "!Airhorn"));
+		assertEquals("fallback !spe", calls.get(0));
+		assertEquals("fallback !airhorn", calls.get(1));
+	}
+}
@@ -0,0 +1,150 @@
+package ttsbot.tests;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.sound.sampled.AudioFormat;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.tts.TTSProvider;
+
+/**
+ * {@link TTSProvider} for tests: synthesis can be delayed, fail, or block
+ * until a gate is opened.<br>
+ * The provider is a dynamic proxy, methods which are not faked return null.
+ */
+public class FakeTTSProvider implements InvocationHandler {
+	public static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+	public static final PcmAudio AUDIO = new PcmAudio(FORMAT, new byte[2]);
+
+	private final String name;
+	private final TTSProvider provider;
+	private long delayMillis = 0;
+	private boolean fail = false;
+	private Function<String, CountDownLatch> gates = text -> null;
+	private Function<String, PcmAudio> audio = text -> AUDIO;
+	private Consumer<String> player = text -> {
+	};
+
+	private final Semaphore started = new Semaphore(0);
+	private final CountDownLatch interrupted = new CountDownLatch(1);
+
+	public FakeTTSProvider(String name) {
+		this.name = name;
+		this.provider = (TTSProvider) Proxy.newProxyInstance(TTSProvider.class.getClassLoader(),
+				new Class<?>[] { TTSProvider.class }, this);
+	}
+
+	public TTSProvider provider() {
+		return provider;
+	}
+
+	/**
+	 * Each synthesis takes this long.
+	 */
+	public FakeTTSProvider delay(long millis) {
+		this.delayMillis = millis;
+		return this;
+	}
+
+	/**
+	 * Each synthesis fails with an {@link IOException} after the delay.
+	 */
+	public FakeTTSProvider failing() {
+		this.fail = true;
+		return this;
+	}
+
+	/**
+	 * A synthesis waits until the gate of its text is opened, texts without gate
+	 * (null) don't wait.
+	 */
+	public FakeTTSProvider gates(Function<String, CountDownLatch> gates) {
+		this.gates = gates;
+		return this;
+	}
+
+	/**
+	 * Audio returned for a text, null if the provider can only play directly.
+	 */
+	public FakeTTSProvider audio(Function<String, PcmAudio> audio) {
+		this.audio = audio;
+		return this;
+	}
+
+	/**
+	 * Called with the text if the provider is asked to synthesize and play.
+	 */
+	public FakeTTSProvider player(Consumer<String> player) {
+		this.player = player;
+		return this;
+	}
+
+	/**
+	 * Waits until that many synthesis calls have started since the last call.
+	 */
+	public boolean awaitStarted(int calls, long timeout, TimeUnit unit) throws InterruptedException {
+		return started.tryAcquire(calls, timeout, unit);
+	}
+
+	/**
+	 * Waits until a synthesis call was interrupted while waiting.
+	 */
+	public boolean awaitInterrupted(long timeout, TimeUnit unit) throws InterruptedException {
+		return interrupted.await(timeout, unit);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "getName":
+			return name;
+		case "getVoice":
+			return "voice";
+		case "getVolume":
+			return 0f;
+		case "isKnownLanguage":
+			return true;
+		case "synthesize":
+			return synthesize((String) args[0]);
+		case "syntesizeAndPlay":
+			player.accept((String) args[0]);
+			return null;
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "toString":
+			return "fake " + name;
+		default:
+			return null;
+		}
+	}
+
+	private PcmAudio synthesize(String text) throws Exception {
+		started.release();
+		try {
+			if (delayMillis > 0) {
+				Thread.sleep(delayMillis);
+			}
+			final CountDownLatch gate = gates.apply(text);
+			if (gate != null) {
+				gate.await();
+			}
+		} catch (InterruptedException e) {
+			interrupted.countDown();
+			throw e;
+		}
+		if (fail) {
+			throw new IOException(name + " down");
+		}
+		return audio.apply(text);
+	}
+}
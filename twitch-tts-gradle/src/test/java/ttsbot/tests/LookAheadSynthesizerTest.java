@@ -0,0 +1,132 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import ttsbot.audio.PcmAudio;
+import ttsbot.speech.LookAheadSynthesizer;
+import ttsbot.speech.ProviderRouter;
+import ttsbot.speech.SpeechRequest;
+import ttsbot.tts.TTSProvider;
+
+public class LookAheadSynthesizerTest {
+
+	private static String text(PcmAudio audio) {
+		return new String(audio.getData(), StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	public void testLookAheadInQueueOrder() throws Exception {
+		final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+		for (String text : new String[] { "m1", "m2", "m3", "m4", "m5", "m6" }) {
+			gates.put(text, new CountDownLatch(1));
+		}
+		// returns the text as audio, once the gate of the text is opened
+		final FakeTTSProvider fake = new FakeTTSProvider("gated").gates(gates::get)
+				.audio(text -> new PcmAudio(FakeTTSProvider.FORMAT, text.getBytes(StandardCharsets.US_ASCII)));
+		final TTSProvider provider = fake.provider();
+		final ProviderRouter router = new ProviderRouter();
+		final LookAheadSynthesizer lookAhead = new LookAheadSynthesizer(3, null, router);
+		final ExecutorService submitter = Executors.newSingleThreadExecutor();
+		try {
+			final SpeechRequest[] requests = new SpeechRequest[6];
+			for (int i = 0; i < requests.length; i++) {
+				requests[i] = new SpeechRequest(provider, null, "m" + (i + 1));
+			}
+			for (int i = 0; i < 3; i++) {
+				lookAhead.submit(requests[i]);
+			}
+			// all three are synthesized at the same time
+			assertTrue(fake.awaitStarted(3, 5, TimeUnit.SECONDS));
+			assertEquals(3, lookAhead.getInFlight());
+
+			// the fourth waits for a slot
+			final Future<?> fourth = submitter.submit(() -> {
+				lookAhead.submit(requests[3]);
+				return null;
+			});
+			try {
+				fourth.get(200, TimeUnit.MILLISECONDS);
+				throw new AssertionError("submitted without a free slot");
+			} catch (TimeoutException expected) {
+			}
+
+			// finished last to first, handed over first to last
+			gates.get("m3").countDown();
+			gates.get("m2").countDown();
+			requests[2].getAudio().get(5, TimeUnit.SECONDS);
+			assertFalse(requests[0].getAudio().isDone());
+			gates.get("m1").countDown();
+			assertEquals("m1", text(lookAhead.await(requests[0])));
+
+			// awaiting frees the slot
+			fourth.get(5, TimeUnit.SECONDS);
+			assertEquals("m2", text(lookAhead.await(requests[1])));
+			assertEquals("m3", text(lookAhead.await(requests[2])));
+			assertEquals(1, lookAhead.getInFlight());
+
+			// a dropped and a cleared request free their slots too
+			lookAhead.submit(requests[4]);
+			lookAhead.submit(requests[5]);
+			assertEquals(3, lookAhead.getInFlight());
+			lookAhead.release(requests[4]);
+			requests[5].cancel();
+			lookAhead.cancel(requests[5]);
+			gates.get("m4").countDown();
+			assertEquals("m4", text(lookAhead.await(requests[3])));
+			assertEquals(0, lookAhead.getInFlight());
+
+			// all slots are free again
+			final Future<?> free = submitter.submit(() -> {
+				for (int i = 0; i < 3; i++) {
+					lookAhead.submit(new SpeechRequest(provider, null, "m5"));
+				}
+				return null;
+			});
+			free.get(5, TimeUnit.SECONDS);
+			assertEquals(3, lookAhead.getInFlight());
+		} finally {
+			gates.values().forEach(CountDownLatch::countDown);
+			submitter.shutdownNow();
+			lookAhead.shutdown();
+			router.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelInterruptsProviderCall() throws Exception {
+		final FakeTTSProvider fake = new FakeTTSProvider("hanging").delay(TimeUnit.SECONDS.toMillis(30));
+		final TTSProvider hanging = fake.provider();
+
+		final ProviderRouter router = new ProviderRouter();
+		final LookAheadSynthesizer lookAhead = new LookAheadSynthesizer(2, null, router);
+		try {
+			final SpeechRequest request = new SpeechRequest(hanging, "a", "hallo");
+			lookAhead.submit(request);
+			assertTrue(fake.awaitStarted(1, 5, TimeUnit.SECONDS));
+			assertEquals(1, lookAhead.getInFlight());
+
+			request.cancel();
+			lookAhead.cancel(request);
+			assertTrue(fake.awaitInterrupted(5, TimeUnit.SECONDS));
+			assertTrue(request.getAudio().isCancelled());
+			assertEquals(0, lookAhead.getInFlight());
+		} finally {
+			lookAhead.shutdown();
+			router.shutdown();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import ttsbot.tts.MaryEngine;
+import ttsbot.tts.MaryTTSProvider;
+
+public class MaryEngineTest {
+
+	/**
+	 * Disconnecting shuts the providers down, mary must stay usable for the UI
+	 * and a reconnect.
+	 */
+	@Test
+	public void testProviderShutdownKeepsEngine() {
+		final MaryTTSProvider provider = new MaryTTSProvider();
+		provider.shutdown();
+		assertFalse(provider.getEngine().isShutDown());
+	}
+
+	/**
+	 * MaryTTS can not be started again after a shutdown, so the engine must
+	 * refuse instead of half starting.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testNoSynthesisAfterShutdown() throws Exception {
+		final MaryEngine engine = new MaryEngine();
+		engine.shutdown();
+		assertFalse(engine.isLoaded());
+		// ignored, no engine start in the background
+		engine.warmUp("de", "bits1-hsmm");
+		engine.synthesize("de", "bits1-hsmm", "Hallo");
+	}
+}
@@ -0,0 +1,85 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ttsbot.media.MediaLibrary;
+
+public class MediaLibraryTest {
+	private Path dir;
+	private MediaLibrary library;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("media");
+		writeWav(dir.resolve("Airhorn.wav"), 1000);
+		Files.write(dir.resolve("airhorn.mp3"), new byte[] { 1, 2, 3 });
+		writeWav(dir.resolve("beep.wav"), 100);
+		Files.write(dir.resolve("notes.txt"), new byte[] { 1 });
+
+		library = new MediaLibrary(dir, 64 * 1024);
+		library.start();
+	}
+
+	@After
+	public void tearDown() {
+		library.stop();
+		for (File f : dir.toFile().listFiles()) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+	private static void writeWav(Path path, int frames) throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		try (AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(new byte[frames * 2]), format,
+				frames)) {
+			AudioSystem.write(ais, AudioFileFormat.Type.WAVE, path.toFile());
+		}
+	}
+
+	@Test
+	public void testResolve() {
+		assertEquals(2, library.size());
+		// mp3 comes first in the extension order
+		assertEquals("airhorn.mp3", library.resolve("AIRHORN").getPath().getFileName().toString());
+		assertNull(library.resolve("airhorn").getClip());
+		assertNull(library.resolve("notes"));
+	}
+
+	@Test
+	public void testSmallWavIsPreloaded() {
+		assertNotNull(library.resolve("beep").getClip());
+		assertEquals(200, library.resolve("beep").getClip().size());
+	}
+
+	@Test
+	public void testWatchUpdatesIndex() throws Exception {
+		Files.delete(dir.resolve("airhorn.mp3"));
+		writeWav(dir.resolve("new.wav"), 10);
+
+		long deadline = System.currentTimeMillis() + 20_000;
+		while ((library.resolve("new") == null || library.resolve("airhorn").getClip() == null)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertNotNull(library.resolve("new"));
+		assertEquals("Airhorn.wav", library.resolve("airhorn").getPath().getFileName().toString());
+		assertNotNull(library.resolve("airhorn").getClip());
+	}
+}
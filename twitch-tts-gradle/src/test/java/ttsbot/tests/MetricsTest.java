@@ -0,0 +1,111 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import ttsbot.metrics.Counter;
+import ttsbot.metrics.Gauge;
+import ttsbot.metrics.Metrics;
+import ttsbot.metrics.MetricsHttpServer;
+import ttsbot.metrics.Timer;
+
+public class MetricsTest {
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testTimerPercentiles() {
+		final Timer timer = new Timer("synthesis_seconds", "provider", "google");
+		for (int i = 1; i <= 100; i++) {
+			timer.record(i * MILLI);
+		}
+		assertEquals(100, timer.getCount());
+		assertEquals(50.5, timer.getMeanMillis(), 0.01);
+		assertEquals(50, timer.getP50Millis(), 0.1);
+		assertEquals(99, timer.getP99Millis(), 0.1);
+		assertEquals(100, timer.getMaxMillis(), 0.1);
+	}
+
+	@Test
+	public void testRegistryReturnsSameMetric() {
+		final Metrics metrics = new Metrics(null);
+		final Counter counter = metrics.counter("chat_messages_total");
+		counter.increment();
+		assertSame(counter, metrics.counter("chat_messages_total"));
+		assertNotSame(metrics.timer("t", "stage", "a"), metrics.timer("t", "stage", "b"));
+
+		// source backed metrics replace the old registration
+		final Gauge old = metrics.gauge("depth", () -> 1);
+		final Gauge current = metrics.gauge("depth", () -> 2);
+		assertNotSame(old, current);
+		assertEquals(2, metrics.getMetrics().stream().filter(m -> m.getName().equals("depth"))
+				.mapToLong(m -> m.getValue()).sum());
+	}
+
+	@Test
+	public void testPrometheusFormat() throws Exception {
+		final Metrics metrics = new Metrics(null);
+		metrics.counter("chat_messages_total").add(3);
+		metrics.gauge("pipeline_queue_depth", () -> 7, "stage", "ingest");
+		metrics.timer("decode_seconds", "provider", "a\"b").record(2 * MILLI);
+		metrics.timer("decode_seconds", "provider", "mary").record(4 * MILLI);
+
+		final StringBuilder sb = new StringBuilder();
+		metrics.writePrometheus(sb);
+		final String text = sb.toString();
+
+		assertTrue(text, text.contains("# TYPE ttsbot_chat_messages_total counter\nttsbot_chat_messages_total{} 3\n"));
+		assertTrue(text, text.contains("ttsbot_pipeline_queue_depth{stage=\"ingest\"} 7\n"));
+		assertTrue(text, text.contains("ttsbot_decode_seconds{provider=\"a\\\"b\",quantile=\"0.5\"} 0.002\n"));
+		assertTrue(text, text.contains("ttsbot_decode_seconds_count{provider=\"mary\"} 1\n"));
+		// one type line per name
+		assertEquals(text.indexOf("# TYPE ttsbot_decode_seconds summary"),
+				text.lastIndexOf("# TYPE ttsbot_decode_seconds"));
+	}
+
+	@Test
+	public void testJmxAndHttp() throws Exception {
+		final MBeanServer server = MBeanServerFactory.newMBeanServer();
+		final Metrics metrics = new Metrics(server);
+		metrics.timer("parse_seconds").record(MILLI);
+		metrics.counter("chat_commands_total", "channel", "a,b").increment();
+
+		assertEquals(1L, server.getAttribute(new ObjectName("ttsbot:type=Timer,name=parse_seconds"), "Count"));
+		assertEquals(1L, server.getAttribute(
+				new ObjectName("ttsbot:type=Counter,name=chat_commands_total,channel=" + ObjectName.quote("a,b")),
+				"Count"));
+
+		final MetricsHttpServer http = new MetricsHttpServer(metrics, 0).start();
+		try {
+			HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + http.getPort() + "/metrics")
+					.openConnection();
+			assertEquals(200, c.getResponseCode());
+			assertEquals(MetricsHttpServer.CONTENT_TYPE, c.getContentType());
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = c.getInputStream()) {
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					body.write(buffer, 0, n);
+				}
+			}
+			assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("ttsbot_parse_seconds_count{} 1"));
+		} finally {
+			http.stop();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+import ttsbot.audio.PcmAudio;
+
+public class PcmAudioDecodeTest {
+	private static final AudioFormat PCM = new AudioFormat(24000, 16, 1, true, false);
+
+	private static byte[] wav(AudioFormat.Encoding encoding, int frames) throws Exception {
+		final byte[] samples = new byte[frames * 2];
+		for (int i = 0; i < samples.length; i += 2) {
+			samples[i + 1] = (byte) (i % 64);
+		}
+		AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(samples), PCM, frames);
+		if (encoding != null) {
+			ais = AudioSystem.getAudioInputStream(encoding, ais);
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AudioSystem.write(ais, AudioFileFormat.Type.WAVE, out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testPcmIsPassedThrough() throws Exception {
+		try (AudioInputStream ais = PcmAudio.openPcm(new ByteArrayInputStream(wav(null, 1000)))) {
+			assertSame(AudioFormat.Encoding.PCM_SIGNED, ais.getFormat().getEncoding());
+			assertEquals(24000, ais.getFormat().getSampleRate(), 0);
+		}
+		assertEquals(2000, PcmAudio.decode(new ByteArrayInputStream(wav(null, 1000))).size());
+	}
+
+	@Test
+	public void testCompressedIsDecodedTo16Bit() throws Exception {
+		final byte[] ulaw = wav(AudioFormat.Encoding.ULAW, 1000);
+		// one byte per sample on the wire
+		assertEquals(1000, ulaw.length, 100);
+
+		try (AudioInputStream ais = PcmAudio.openPcm(new ByteArrayInputStream(ulaw))) {
+			assertEquals(AudioFormat.Encoding.PCM_SIGNED, ais.getFormat().getEncoding());
+			assertEquals(16, ais.getFormat().getSampleSizeInBits());
+			// streamed, the first chunk is available without decoding the rest
+			assertEquals(64, ais.read(new byte[64]));
+		}
+		final PcmAudio pcm = PcmAudio.decode(new ByteArrayInputStream(ulaw));
+		assertEquals(2000, pcm.size());
+		assertEquals(41, pcm.getDurationMillis());
+	}
+
+	@Test(expected = UnsupportedAudioFileException.class)
+	public void testUnknownFormat() throws Exception {
+		PcmAudio.decode(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }));
+	}
+}
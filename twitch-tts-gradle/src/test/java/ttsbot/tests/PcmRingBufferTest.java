@@ -0,0 +1,67 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ttsbot.audio.PcmRingBuffer;
+
+public class PcmRingBufferTest {
+	@Test
+	public void testCapacityIsPowerOfTwo() {
+		assertEquals(8, new PcmRingBuffer(8).capacity());
+		assertEquals(16, new PcmRingBuffer(9).capacity());
+	}
+
+	@Test
+	public void testWrapAround() {
+		PcmRingBuffer ring = new PcmRingBuffer(8);
+		byte[] out = new byte[8];
+
+		assertEquals(6, ring.write(new byte[] { 1, 2, 3, 4, 5, 6 }, 0, 6));
+		assertEquals(4, ring.read(out, 0, 4));
+		// 2 bytes left, the next write wraps
+		assertEquals(6, ring.write(new byte[] { 7, 8, 9, 10, 11, 12, 13 }, 0, 7));
+		assertEquals(0, ring.free());
+		assertEquals(8, ring.read(out, 0, 8));
+		assertArrayEquals(new byte[] { 5, 6, 7, 8, 9, 10, 11, 12 }, out);
+		assertEquals(0, ring.available());
+		assertEquals(12, ring.getReadPosition());
+	}
+
+	@Test
+	public void testConcurrentTransfer() throws Exception {
+		final PcmRingBuffer ring = new PcmRingBuffer(64);
+		final int total = 100_000;
+
+		Thread writer = new Thread(() -> {
+			byte[] chunk = new byte[7];
+			int next = 0;
+			while (next < total) {
+				int len = Math.min(chunk.length, total - next);
+				for (int i = 0; i < len; i++) {
+					chunk[i] = (byte) (next + i);
+				}
+				int offset = 0;
+				while (offset < len) {
+					offset += ring.write(chunk, offset, len - offset);
+				}
+				next += len;
+			}
+		});
+		writer.start();
+
+		byte[] chunk = new byte[13];
+		int received = 0;
+		while (received < total) {
+			int n = ring.read(chunk, 0, chunk.length);
+			for (int i = 0; i < n; i++) {
+				assertEquals((byte) (received + i), chunk[i]);
+			}
+			received += n;
+		}
+		writer.join();
+		assertEquals(total, ring.getWritePosition());
+	}
+}
@@ -0,0 +1,73 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ttsbot.speech.BackpressurePolicy;
+import ttsbot.speech.PipelineStage;
+
+public class PipelineStageTest {
+	@Test
+	public void testDropOldest() {
+		PipelineStage<String> stage = new PipelineStage<>("test", 2, BackpressurePolicy.DROP_OLDEST, 0, s -> {
+		});
+		assertTrue(stage.offer("a"));
+		assertTrue(stage.offer("b"));
+		assertTrue(stage.offer("c"));
+		assertEquals(2, stage.getDepth());
+		assertEquals(1, stage.getDropped());
+		assertEquals(3, stage.getAccepted());
+	}
+
+	@Test
+	public void testDropNewest() {
+		PipelineStage<String> stage = new PipelineStage<>("test", 2, BackpressurePolicy.DROP_NEWEST, 0, s -> {
+		});
+		assertTrue(stage.offer("a"));
+		assertTrue(stage.offer("b"));
+		assertFalse(stage.offer("c"));
+		assertEquals(2, stage.getDepth());
+		assertEquals(1, stage.getDropped());
+	}
+
+	@Test
+	public void testBlockTimesOut() {
+		PipelineStage<String> stage = new PipelineStage<>("test", 1, BackpressurePolicy.BLOCK, 10, s -> {
+		});
+		assertTrue(stage.offer("a"));
+		assertFalse(stage.offer("b"));
+		assertEquals(1, stage.getDropped());
+	}
+
+	@Test
+	public void testWorkerSurvivesErrors() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		PipelineStage<String> stage = new PipelineStage<>("test", 2, BackpressurePolicy.BLOCK, 0, s -> {
+			if (s.equals("a")) {
+				throw new AssertionError("consumer bug");
+			}
+			done.countDown();
+		});
+		stage.start();
+		try {
+			assertTrue(stage.offer("a"));
+			assertTrue(stage.offer("b"));
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(1, stage.getFailed());
+		} finally {
+			stage.shutdown();
+		}
+	}
+
+	@Test
+	public void testParsePolicy() {
+		assertEquals(BackpressurePolicy.DROP_OLDEST, BackpressurePolicy.parse("drop-oldest", null));
+		assertEquals(BackpressurePolicy.BLOCK, BackpressurePolicy.parse("unknown", BackpressurePolicy.BLOCK));
+	}
+}
@@ -0,0 +1,107 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ttsbot.speech.CircuitBreaker;
+import ttsbot.speech.CircuitBreaker.State;
+import ttsbot.speech.ProviderRouter;
+import ttsbot.speech.SpeechRequest;
+import ttsbot.tts.TTSProvider;
+import ttsbot.util.Settings;
+
+public class ProviderRouterTest {
+	private ProviderRouter router;
+
+	@After
+	public void tearDown() {
+		if (router != null) {
+			router.shutdown();
+		}
+		// back to the defaults for other tests
+		Settings.set(ProviderRouter.HEDGE_ENABLED, "false");
+		Settings.set(ProviderRouter.HEDGE_DEFAULT_MILLIS, "1500");
+		Settings.set(ProviderRouter.BREAKER_MIN_CALLS, "5");
+		Settings.set(ProviderRouter.TIMEOUT, "10");
+	}
+
+	@Test
+	public void testFailedProviderFallsBack() throws Exception {
+		Settings.set(ProviderRouter.HEDGE_ENABLED, "false");
+		Settings.set(ProviderRouter.BREAKER_MIN_CALLS, "2");
+		router = new ProviderRouter();
+		final TTSProvider google = new FakeTTSProvider("google").failing().provider();
+		final TTSProvider mary = new FakeTTSProvider("mary").provider();
+		router.setProviders(Arrays.asList(google, mary));
+
+		assertSame(mary, router.synthesize(new SpeechRequest(google, "a", "hallo")).getProvider());
+		assertSame(mary, router.synthesize(new SpeechRequest(google, "a", "hallo")).getProvider());
+		assertEquals(State.OPEN, router.getState("google"));
+		// skipped while open
+		assertSame(mary, router.synthesize(new SpeechRequest(google, "a", "hallo")).getProvider());
+	}
+
+	@Test
+	public void testSlowProviderIsHedged() throws Exception {
+		Settings.set(ProviderRouter.HEDGE_ENABLED, "true");
+		Settings.set(ProviderRouter.HEDGE_DEFAULT_MILLIS, "50");
+		router = new ProviderRouter();
+		final TTSProvider google = new FakeTTSProvider("google").delay(2000).provider();
+		final TTSProvider mary = new FakeTTSProvider("mary").delay(10).provider();
+		router.setProviders(Arrays.asList(google, mary));
+
+		final long start = System.nanoTime();
+		assertSame(mary, router.synthesize(new SpeechRequest(google, "a", "hallo")).getProvider());
+		assertTrue(System.nanoTime() - start < 1_000_000_000L);
+		assertEquals(State.CLOSED, router.getState("google"));
+	}
+
+	@Test
+	public void testTimedOutCallIsInterrupted() throws Exception {
+		Settings.set(ProviderRouter.TIMEOUT, "1");
+		router = new ProviderRouter();
+		final FakeTTSProvider fake = new FakeTTSProvider("hanging").delay(4000);
+		final TTSProvider hanging = fake.provider();
+		router.setProviders(Collections.singletonList(hanging));
+
+		try {
+			router.synthesize(new SpeechRequest(hanging, "a", "hallo"));
+			fail("timeout expected");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		// the hung call does not keep its thread
+		assertTrue(fake.awaitInterrupted(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCircuitBreakerTrial() {
+		final CircuitBreaker breaker = new CircuitBreaker(4, 2, 0.5, 1000);
+		final long now = System.nanoTime();
+		breaker.onSuccess();
+		breaker.onFailure(now);
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire(now + 500_000_000L));
+
+		// one trial after the open time
+		assertTrue(breaker.tryAcquire(now + 1_000_000_000L));
+		assertFalse(breaker.tryAcquire(now + 1_000_000_000L));
+		breaker.onFailure(now + 1_000_000_000L);
+		assertEquals(State.OPEN, breaker.getState());
+
+		assertTrue(breaker.tryAcquire(now + 2_000_000_000L));
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+}
@@ -0,0 +1,76 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import ttsbot.speech.SpeechCoalescer;
+import ttsbot.speech.SpeechPriority;
+import ttsbot.speech.SpeechRequest;
+
+public class SpeechCoalescerTest {
+
+	@Test
+	public void testExactDuplicatesAreMerged() {
+		final SpeechCoalescer coalescer = new SpeechCoalescer(10_000, 0.8);
+		final SpeechRequest first = new SpeechRequest(null, "a", "GG EZ!");
+		assertNull(coalescer.coalesce(first));
+		assertSame(first, coalescer.coalesce(new SpeechRequest(null, "b", "gg  ez")));
+		assertSame(first, coalescer.coalesce(new SpeechRequest(null, "c", "gg ez ?!")));
+		assertEquals(3, first.getCount());
+
+		// other language is spoken separately
+		assertNull(coalescer.coalesce(new SpeechRequest(null, "d", "gg ez", "en", null)));
+		assertNull(coalescer.coalesce(new SpeechRequest(null, "e", "gg")));
+	}
+
+	@Test
+	public void testSimilarTextsAreMerged() {
+		final SpeechCoalescer coalescer = new SpeechCoalescer(10_000, 0.8);
+		final SpeechRequest first = new SpeechRequest(null, "a", "das ist ja der wahnsinn hahaha");
+		assertNull(coalescer.coalesce(first));
+		assertSame(first, coalescer.coalesce(new SpeechRequest(null, "b", "das ist ja der Wahnsinn hahahahaha")));
+		assertNull(coalescer.coalesce(new SpeechRequest(null, "c", "das ist ja ganz normal")));
+		assertEquals(2, first.getCount());
+		assertEquals(1, coalescer.getSimilarMerged());
+	}
+
+	@Test
+	public void testOnlySamePriorityIsMerged() {
+		final SpeechCoalescer coalescer = new SpeechCoalescer(10_000, 0.8);
+		final SpeechRequest viewer = new SpeechRequest(null, "a", "das ist ja der wahnsinn hahaha");
+		assertNull(coalescer.coalesce(viewer));
+
+		final SpeechRequest moderator = new SpeechRequest(null, "b", "das ist ja der wahnsinn hahaha");
+		moderator.setPriority(SpeechPriority.MODERATOR);
+		assertNull(coalescer.coalesce(moderator));
+		final SpeechRequest similar = new SpeechRequest(null, "c", "das ist ja der Wahnsinn hahahahaha");
+		similar.setPriority(SpeechPriority.MODERATOR);
+		assertSame(moderator, coalescer.coalesce(similar));
+
+		// typed into the UI, always spoken and never merged into
+		for (int i = 0; i < 2; i++) {
+			final SpeechRequest ui = new SpeechRequest(null, "ui", "das ist ja der wahnsinn hahaha");
+			ui.setPriority(SpeechPriority.IMMEDIATE);
+			assertNull(coalescer.coalesce(ui));
+		}
+		assertEquals(1, viewer.getCount());
+		assertEquals(2, coalescer.getPending());
+	}
+
+	@Test
+	public void testRemovedAndExpiredRequestsAreSpokenAgain() throws Exception {
+		final SpeechCoalescer coalescer = new SpeechCoalescer(50, 0.8);
+		final SpeechRequest first = new SpeechRequest(null, "a", "hype hype hype");
+		assertNull(coalescer.coalesce(first));
+		coalescer.remove(first);
+		final SpeechRequest second = new SpeechRequest(null, "a", "hype hype hype");
+		assertNull(coalescer.coalesce(second));
+
+		Thread.sleep(100);
+		assertNull(coalescer.coalesce(new SpeechRequest(null, "a", "hype hype hype")));
+		assertEquals(1, coalescer.getPending());
+	}
+}
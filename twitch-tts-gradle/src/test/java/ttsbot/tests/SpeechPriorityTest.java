@@ -0,0 +1,228 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ttsbot.cache.AudioCache;
+import ttsbot.speech.BackpressurePolicy;
+import ttsbot.speech.PipelineStage;
+import ttsbot.speech.SpeechPipeline;
+import ttsbot.speech.SpeechPriority;
+import ttsbot.speech.SpeechRequest;
+import ttsbot.speech.TextSegmenter;
+import ttsbot.tts.TTSProvider;
+import ttsbot.twitch.TwitchBot;
+import ttsbot.util.Settings;
+
+public class SpeechPriorityTest {
+
+	@After
+	public void tearDown() {
+		Settings.set(SpeechPipeline.PLAYBACK_ENABLED, "true");
+		Settings.set(AudioCache.ENABLED, "true");
+	}
+
+	private static PipelineStage<String> stage(int capacity, BackpressurePolicy policy, List<String> consumed,
+			CountDownLatch done) {
+		// lane by the first letter: a, b, c
+		return new PipelineStage<>("test", capacity, policy, 0, 3, s -> s.charAt(0) - 'a', s -> {
+			consumed.add(s);
+			done.countDown();
+		});
+	}
+
+	@Test
+	public void testHigherLanesFirstFifoWithinLane() throws Exception {
+		final List<String> consumed = new CopyOnWriteArrayList<>();
+		final CountDownLatch done = new CountDownLatch(5);
+		final PipelineStage<String> stage = stage(8, BackpressurePolicy.BLOCK, consumed, done);
+		stage.pause();
+		stage.start();
+		try {
+			for (String s : Arrays.asList("c1", "b1", "c2", "a1", "b2")) {
+				assertTrue(stage.offer(s));
+			}
+			assertEquals(5, stage.getDepth());
+			assertEquals(2, stage.getDepth(1));
+			Thread.sleep(50);
+			// nothing is taken while paused
+			assertTrue(consumed.isEmpty());
+
+			stage.resume();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("a1", "b1", "b2", "c1", "c2"), consumed);
+			assertFalse(stage.isPaused());
+		} finally {
+			stage.shutdown();
+		}
+	}
+
+	@Test
+	public void testLanesHaveTheirOwnCapacity() {
+		final List<String> discarded = new CopyOnWriteArrayList<>();
+		final PipelineStage<String> stage = stage(2, BackpressurePolicy.DROP_OLDEST, discarded, new CountDownLatch(0));
+		stage.setDiscardListener(discarded::add);
+		assertTrue(stage.offer("a1"));
+		for (int i = 1; i <= 5; i++) {
+			assertTrue(stage.offer("c" + i));
+		}
+		// the flood only drops its own lane
+		assertEquals(Arrays.asList("c1", "c2", "c3"), discarded);
+		assertEquals(1, stage.getDepth(0));
+		assertEquals(2, stage.getDepth(2));
+		assertTrue(stage.offer("b1"));
+		assertEquals(4, stage.clear());
+	}
+
+	@Test
+	public void testPausedPlayerDoesNotBlockChat() throws Exception {
+		Settings.set(SpeechPipeline.PLAYBACK_ENABLED, "false");
+		Settings.set(AudioCache.ENABLED, "false");
+		final SpeechPipeline pipeline = new SpeechPipeline();
+		final CountDownLatch played = new CountDownLatch(5);
+		pipeline.setPlaybackListener(r -> played.countDown());
+		pipeline.start();
+		try {
+			pipeline.pause();
+			final TTSProvider provider = new FakeTTSProvider("fake").provider();
+			// more than the playback lane holds
+			for (int i = 0; i < 5; i++) {
+				final SpeechRequest request = new SpeechRequest(provider, null, "ui " + i);
+				request.setPriority(SpeechPriority.IMMEDIATE);
+				assertTrue(pipeline.speak(request));
+			}
+
+			final CountDownLatch chat = new CountDownLatch(1);
+			assertTrue(pipeline.ingest(chat::countDown));
+			assertTrue(chat.await(3, TimeUnit.SECONDS));
+
+			pipeline.resume();
+			assertTrue(played.await(5, TimeUnit.SECONDS));
+		} finally {
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	public void testDuplicateKeepsItsLane() throws Exception {
+		Settings.set(SpeechPipeline.PLAYBACK_ENABLED, "false");
+		Settings.set(AudioCache.ENABLED, "false");
+		final SpeechPipeline pipeline = new SpeechPipeline();
+		final List<SpeechRequest> played = new CopyOnWriteArrayList<>();
+		final CountDownLatch done = new CountDownLatch(2);
+		pipeline.setPlaybackListener(r -> {
+			played.add(r);
+			done.countDown();
+		});
+		pipeline.start();
+		try {
+			pipeline.pause();
+			final TTSProvider provider = new FakeTTSProvider("fake").provider();
+			final SpeechRequest viewer = new SpeechRequest(provider, "viewer", "gg ez");
+			final SpeechRequest moderator = new SpeechRequest(provider, "mod", "gg ez");
+			moderator.setPriority(SpeechPriority.MODERATOR);
+			assertTrue(pipeline.speak(viewer));
+			assertTrue(pipeline.speak(moderator));
+
+			// both wait for the player, each in its own lane
+			final PipelineStage<?> playback = pipeline.getStages().get(3);
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (playback.getDepth() < 2 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, playback.getDepth(SpeechPriority.MODERATOR.ordinal()));
+			assertEquals(1, playback.getDepth(SpeechPriority.VIEWER.ordinal()));
+
+			pipeline.resume();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList(moderator, viewer), played);
+			assertEquals(1, viewer.getCount());
+		} finally {
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	public void testSegmentsAreNotInterrupted() throws Exception {
+		Settings.set(AudioCache.ENABLED, "false");
+		// enough slots for all segments and the next message
+		Settings.set(SpeechPipeline.LOOK_AHEAD, "6");
+		Settings.set(TextSegmenter.FIRST_MAX_CHARS + ".segmented", "10");
+		Settings.set(TextSegmenter.MAX_CHARS + ".segmented", "10");
+		final CountDownLatch gate = new CountDownLatch(1);
+		final List<String> spoken = new CopyOnWriteArrayList<>();
+		final CountDownLatch done = new CountDownLatch(4);
+		// no audio, so the provider plays itself and tells the order
+		final FakeTTSProvider fake = new FakeTTSProvider("segmented") //
+				.gates(text -> text.startsWith("eins") ? gate : null) //
+				.audio(text -> null) //
+				.player(text -> {
+					spoken.add(text);
+					done.countDown();
+				});
+		final TTSProvider provider = fake.provider();
+
+		final SpeechPipeline pipeline = new SpeechPipeline();
+		pipeline.start();
+		try {
+			assertTrue(pipeline.speak(new SpeechRequest(provider, "viewer", "eins eins. zwei zwei. drei drei.")));
+			assertTrue(fake.awaitStarted(1, 5, TimeUnit.SECONDS));
+			final PipelineStage<?> playback = pipeline.getStages().get(3);
+			final int viewerLane = SpeechPriority.VIEWER.ordinal();
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+			while (playback.getDepth(viewerLane) > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+
+			// arrives while the player waits for the first segment
+			final SpeechRequest moderator = new SpeechRequest(provider, "mod", "hallo");
+			moderator.setPriority(SpeechPriority.MODERATOR);
+			assertTrue(pipeline.speak(moderator));
+			final int moderatorLane = SpeechPriority.MODERATOR.ordinal();
+			while (playback.getDepth(moderatorLane) == 0 && System.nanoTime() < deadline + TimeUnit.SECONDS.toNanos(3)) {
+				Thread.sleep(10);
+			}
+
+			gate.countDown();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("eins eins.", "zwei zwei.", "drei drei.", "hallo"), spoken);
+		} finally {
+			gate.countDown();
+			pipeline.shutdown();
+			Settings.set(SpeechPipeline.LOOK_AHEAD, "3");
+			Settings.set(TextSegmenter.FIRST_MAX_CHARS + ".segmented", "120");
+			Settings.set(TextSegmenter.MAX_CHARS + ".segmented", "250");
+		}
+	}
+
+	@Test
+	public void testPriorityFromTwitchTags() {
+		final Map<String, String> tags = new HashMap<>();
+		assertEquals(SpeechPriority.VIEWER, TwitchBot.priorityOf(null, "viewer", "channel"));
+		assertEquals(SpeechPriority.BROADCASTER, TwitchBot.priorityOf(null, "Channel", "channel"));
+
+		tags.put("badges", "subscriber/12,premium/1");
+		assertEquals(SpeechPriority.SUBSCRIBER, TwitchBot.priorityOf(tags, "viewer", "channel"));
+		tags.put("badges", "moderator/1,subscriber/12");
+		assertEquals(SpeechPriority.MODERATOR, TwitchBot.priorityOf(tags, "viewer", "channel"));
+		tags.put("badges", "broadcaster/1");
+		assertEquals(SpeechPriority.BROADCASTER, TwitchBot.priorityOf(tags, "owner", "channel"));
+
+		tags.clear();
+		tags.put("mod", "1");
+		assertEquals(SpeechPriority.MODERATOR, TwitchBot.priorityOf(tags, "viewer", "channel"));
+		assertEquals(SpeechPriority.IMMEDIATE, SpeechPriority.max(SpeechPriority.VIEWER, SpeechPriority.IMMEDIATE));
+	}
+}
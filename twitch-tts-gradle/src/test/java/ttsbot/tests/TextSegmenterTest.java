@@ -0,0 +1,56 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ttsbot.speech.TextSegmenter;
+
+public class TextSegmenterTest {
+
+	@Test
+	public void testShortTextIsNotSplit() {
+		assertEquals(Arrays.asList("hallo welt. wie gehts?"), new TextSegmenter(30, 60).split(" hallo welt. wie gehts? "));
+	}
+
+	@Test
+	public void testSentencesArePacked() {
+		final List<String> segments = new TextSegmenter(20, 40)
+				.split("Erster Satz hier. Zweiter Satz! Dritter Satz? Vierter Satz. Fuenfter.");
+		// sentences stay whole
+		assertEquals(Arrays.asList("Erster Satz hier.", "Zweiter Satz! Dritter Satz?", "Vierter Satz. Fuenfter."),
+				segments);
+	}
+
+	@Test
+	public void testLongSentenceIsSplitAtClausesAndWords() {
+		final TextSegmenter segmenter = new TextSegmenter(15, 25);
+		final List<String> segments = segmenter
+				.split("eins zwei drei, vier fuenf sechs sieben acht neun zehn elf zwoelf, ende");
+		assertEquals("eins zwei drei,", segments.get(0));
+		for (String s : segments) {
+			assertTrue(s, s.length() <= 25);
+		}
+		assertEquals("eins zwei drei, vier fuenf sechs sieben acht neun zehn elf zwoelf, ende",
+				String.join(" ", segments));
+	}
+
+	@Test
+	public void testUnicodePunctuation() {
+		// ellipsis ends a sentence, en and em dash separate clauses
+		assertEquals(Arrays.asList("Ja\u2026", "eins zwei drei vier."),
+				new TextSegmenter(10, 30).split("Ja\u2026 eins zwei drei vier."));
+		assertEquals(Arrays.asList("eins zwei drei", "\u2013 vier fuenf", "\u2014 sechs"),
+				new TextSegmenter(15, 15).split("eins zwei drei \u2013 vier fuenf \u2014 sechs"));
+	}
+
+	@Test
+	public void testLongWordIsCut() {
+		final List<String> segments = new TextSegmenter(4, 6).split("aaaaaaaaaaaaaaaa");
+		assertEquals(Arrays.asList("aaaa", "aaaaaa", "aaaaaa"), segments);
+	}
+}
@@ -0,0 +1,72 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ttsbot.speech.SpeechRateLimiter;
+import ttsbot.speech.SpeechRateLimiter.Decision;
+import ttsbot.speech.TokenBucket;
+import ttsbot.util.Settings;
+
+public class TokenBucketTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testBurstAndRefill() {
+		final long now = System.nanoTime();
+		final TokenBucket bucket = new TokenBucket(2, 4);
+		assertTrue(bucket.tryAcquire(4, now));
+		assertFalse(bucket.tryAcquire(1, now));
+		assertFalse(bucket.isFull(now));
+
+		// 2 tokens per second
+		assertTrue(bucket.tryAcquire(1, now + SECOND / 2));
+		assertTrue(bucket.tryAcquire(1, now + SECOND));
+		assertFalse(bucket.tryAcquire(1, now + SECOND));
+		assertTrue(bucket.isFull(now + 3 * SECOND));
+	}
+
+	@Test
+	public void testRequestLargerThanBurstIsRejected() {
+		final long now = System.nanoTime();
+		final TokenBucket bucket = new TokenBucket(10, 5);
+		assertFalse(bucket.tryAcquire(6, now));
+		assertTrue(bucket.tryAcquire(5, now));
+	}
+
+	@Test
+	public void testUserLimit() {
+		final SpeechRateLimiter limiter = new SpeechRateLimiter(60, 2, 100);
+		assertEquals(Decision.ALLOWED, limiter.tryAcquire("viewer", "test", 10));
+		assertEquals(Decision.ALLOWED, limiter.tryAcquire("Viewer", "test", 10));
+		assertEquals(Decision.USER_LIMITED, limiter.tryAcquire("VIEWER", "test", 10));
+		// other users have their own budget
+		assertEquals(Decision.ALLOWED, limiter.tryAcquire("other", "test", 10));
+		assertEquals(1, limiter.getUserRejected());
+		assertEquals(2, limiter.getTrackedUsers());
+	}
+
+	@Test
+	public void testProviderRejectionKeepsUserBudget() {
+		Settings.set(SpeechRateLimiter.PROVIDER_CHARS_PER_SECOND + ".tiny", "1");
+		Settings.set(SpeechRateLimiter.PROVIDER_BURST + ".tiny", "5");
+		try {
+			final SpeechRateLimiter limiter = new SpeechRateLimiter(1, 1, 100);
+			for (int i = 0; i < 3; i++) {
+				assertEquals(Decision.PROVIDER_LIMITED, limiter.tryAcquire("viewer", "tiny", 10));
+			}
+			// the one message per minute is still available
+			assertEquals(Decision.ALLOWED, limiter.tryAcquire("viewer", "tiny", 5));
+			assertEquals(Decision.USER_LIMITED, limiter.tryAcquire("viewer", "tiny", 1));
+			assertEquals(3, limiter.getProviderRejected());
+		} finally {
+			Settings.set(SpeechRateLimiter.PROVIDER_CHARS_PER_SECOND + ".tiny", "100");
+			Settings.set(SpeechRateLimiter.PROVIDER_BURST + ".tiny", "1000");
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ttsbot.translate.TranslationBackend;
+import ttsbot.translate.Translator;
+
+public class TranslatorTest {
+	private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private Translator translator;
+
+	private final TranslationBackend backend = new TranslationBackend() {
+		@Override
+		public String getName() {
+			return "test";
+		}
+
+		@Override
+		public List<String> translate(String src, String dst, List<String> texts) throws Exception {
+			release.await(5, TimeUnit.SECONDS);
+			calls.add(texts);
+			List<String> result = new ArrayList<>();
+			for (String t : texts) {
+				result.add(dst + ":" + t);
+			}
+			return result;
+		}
+
+		@Override
+		public Set<String> loadLanguages() {
+			return new HashSet<>(Arrays.asList("de", "en"));
+		}
+	};
+
+	@After
+	public void tearDown() {
+		translator.shutdown();
+	}
+
+	@Test
+	public void testBatchingAndCache() throws Exception {
+		translator = new Translator(backend, 10, 16);
+		// the first call blocks, the others queue up meanwhile
+		CompletableFuture<String> first = translator.translate("de", "en", "eins");
+		Thread.sleep(100);
+		CompletableFuture<String> second = translator.translate("de", "en", "zwei");
+		CompletableFuture<String> third = translator.translate("de", "en", "drei");
+		CompletableFuture<String> same = translator.translate("DE", "en", "zwei");
+		release.countDown();
+
+		assertEquals("en:eins", first.get(5, TimeUnit.SECONDS));
+		assertEquals("en:zwei", second.get(5, TimeUnit.SECONDS));
+		assertEquals("en:drei", third.get(5, TimeUnit.SECONDS));
+		assertEquals("en:zwei", same.get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.size());
+		assertEquals(Arrays.asList("zwei", "drei"), calls.get(1));
+
+		assertEquals("en:drei", translator.translate("de", "en", "drei").get());
+		assertEquals(2, translator.getCalls());
+		assertEquals(1, translator.getCacheHits());
+	}
+
+	@Test
+	public void testSupportedLanguages() throws Exception {
+		release.countDown();
+		translator = new Translator(backend, 10, 16);
+		translator.translate("de", "en", "x").get(5, TimeUnit.SECONDS);
+		assertTrue(translator.isSupported("EN"));
+		assertFalse(translator.isSupported("xx"));
+	}
+
+	@Test
+	public void testTranslateAfterShutdown() throws Exception {
+		translator = new Translator(backend, 10, 16);
+		// blocks in the backend while the translator is shut down
+		CompletableFuture<String> pending = translator.translate("de", "en", "eins");
+		Thread.sleep(100);
+		translator.shutdown();
+		assertTrue(pending.isCompletedExceptionally());
+
+		// a disconnect does not end the translations for good
+		release.countDown();
+		assertEquals("en:zwei", translator.translate("de", "en", "zwei").get(5, TimeUnit.SECONDS));
+		assertEquals("en:eins", translator.translate("de", "en", "eins").get(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,123 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ttsbot.tts.VoiceCatalog;
+import ttsbot.tts.VoiceInfo;
+import ttsbot.util.Settings;
+
+public class VoiceCatalogTest {
+	private static final List<VoiceInfo> VOICES = Arrays.asList(
+			new VoiceInfo("de-DE-Wavenet-A", Arrays.asList("de-DE"), "FEMALE"),
+			new VoiceInfo("de-DE-Wavenet-B", Arrays.asList("de-DE"), "MALE"),
+			new VoiceInfo("en-US-Wavenet-C", Arrays.asList("en-US"), "FEMALE"));
+
+	private final AtomicReference<List<VoiceInfo>> voices = new AtomicReference<>(VOICES);
+	private final AtomicInteger loads = new AtomicInteger();
+	private final VoiceCatalog catalog = new VoiceCatalog("test", () -> {
+		loads.incrementAndGet();
+		return voices.get();
+	});
+
+	@After
+	public void tearDown() {
+		catalog.shutdown();
+		Settings.set(VoiceCatalog.REFRESH_MINUTES, "60");
+	}
+
+	@Test
+	public void testIndexes() {
+		Settings.set(VoiceCatalog.REFRESH_MINUTES, "0");
+		assertTrue(catalog.load());
+		assertEquals(3, catalog.size());
+		assertEquals(Arrays.asList("de-DE", "en-US"), catalog.getLanguages());
+
+		// full code and primary language, ignoring case
+		assertEquals(Arrays.asList("de-DE-Wavenet-A", "de-DE-Wavenet-B"), catalog.getVoiceNames("de"));
+		assertEquals(Arrays.asList("de-DE-Wavenet-A", "de-DE-Wavenet-B"), catalog.getVoiceNames("DE-de"));
+		assertEquals(Arrays.asList("en-US-Wavenet-C"), catalog.getVoiceNames("en"));
+		assertTrue(catalog.getVoiceNames("fr").isEmpty());
+		assertTrue(catalog.isKnownLanguage("en-us"));
+		assertFalse(catalog.isKnownLanguage("fr-FR"));
+
+		assertEquals(Arrays.asList("de-DE-Wavenet-A", "en-US-Wavenet-C"), catalog.getVoiceNamesByGender("female"));
+		assertEquals(Arrays.asList("de-DE-Wavenet-B"), catalog.getVoiceNamesByGender("MALE"));
+		assertTrue(catalog.getVoiceNamesByGender("NEUTRAL").isEmpty());
+
+		assertTrue(catalog.isKnownVoice("de-de-wavenet-b", "de"));
+		assertFalse(catalog.isKnownVoice("de-DE-Wavenet-B", "en"));
+
+		// loaded once, no refresh scheduled
+		catalog.load();
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testRefreshAfterInterval() throws Exception {
+		// 60 ms
+		Settings.set(VoiceCatalog.REFRESH_MINUTES, "0.001");
+		assertTrue(catalog.load());
+		assertFalse(catalog.isKnownLanguage("fr"));
+
+		voices.set(Arrays.asList(new VoiceInfo("fr-FR-Wavenet-A", Arrays.asList("fr-FR"), "FEMALE")));
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!catalog.isKnownLanguage("fr") && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(catalog.isKnownLanguage("fr"));
+		assertFalse(catalog.isKnownLanguage("de"));
+		assertEquals(1, catalog.size());
+	}
+
+	@Test
+	public void testRefreshStopsOnShutdown() throws Exception {
+		Settings.set(VoiceCatalog.REFRESH_MINUTES, "0.001");
+		assertTrue(catalog.load());
+		catalog.shutdown();
+		voices.set(Arrays.asList(new VoiceInfo("fr-FR-Wavenet-A", Arrays.asList("fr-FR"), "FEMALE")));
+		Thread.sleep(200);
+		assertFalse(catalog.isKnownLanguage("fr"));
+		assertEquals(3, catalog.size());
+
+		// used again, e.g. after a reconnect
+		assertTrue(catalog.load());
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!catalog.isKnownLanguage("fr") && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(catalog.isKnownLanguage("fr"));
+	}
+
+	@Test
+	public void testEmptyRefreshKeepsVoices() throws Exception {
+		Settings.set(VoiceCatalog.REFRESH_MINUTES, "0.001");
+		assertTrue(catalog.load());
+
+		voices.set(Collections.emptyList());
+		final int before = loads.get();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (loads.get() < before + 2 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(loads.get() >= before + 2);
+		assertEquals(3, catalog.size());
+		assertEquals(Arrays.asList("de-DE-Wavenet-A", "de-DE-Wavenet-B"), catalog.getVoiceNames("de"));
+
+		// as well as a missing list
+		voices.set(null);
+		catalog.refresh();
+		assertEquals(3, catalog.size());
+	}
+}
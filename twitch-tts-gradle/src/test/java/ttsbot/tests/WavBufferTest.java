@@ -0,0 +1,122 @@
+package ttsbot.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Test;
+
+import ttsbot.audio.AudioEngine;
+import ttsbot.audio.PcmAudio;
+import ttsbot.audio.PcmConverter;
+import ttsbot.audio.WavBuffer;
+
+public class WavBufferTest {
+
+	private static byte[] samples(int count) {
+		final byte[] data = new byte[count * 2];
+		for (int i = 0; i < count; i++) {
+			final int sample = i * 100 - 5000;
+			data[i * 2] = (byte) sample;
+			data[i * 2 + 1] = (byte) (sample >> 8);
+		}
+		return data;
+	}
+
+	private static byte[] wav(AudioFormat format, byte[] data) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format,
+				data.length / format.getFrameSize()), AudioFileFormat.Type.WAVE, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Splits like a rope ByteString, boundaries inside the header and samples.
+	 */
+	private static List<ByteBuffer> split(byte[] file, int... sizes) {
+		final List<ByteBuffer> buffers = new ArrayList<>();
+		int offset = 0;
+		for (int size : sizes) {
+			buffers.add(ByteBuffer.wrap(file, offset, size).slice().asReadOnlyBuffer());
+			offset += size;
+		}
+		buffers.add(ByteBuffer.wrap(file, offset, file.length - offset).slice().asReadOnlyBuffer());
+		return buffers;
+	}
+
+	private static byte[] drain(PcmConverter converter, int chunk) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[chunk];
+		int read;
+		while ((read = converter.read(buffer, 0, buffer.length)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testParseAcrossBuffers() throws Exception {
+		final AudioFormat format = new AudioFormat(24000, 16, 1, true, false);
+		final byte[] data = samples(1000);
+		final WavBuffer wav = WavBuffer.parse(split(wav(format, data), 7, 30, 101, 999));
+
+		assertNotNull(wav);
+		assertEquals(24000, wav.getFormat().getSampleRate(), 0);
+		assertEquals(1, wav.getFormat().getChannels());
+		assertEquals(1000, wav.getFrames());
+		assertEquals(41, wav.getDurationMillis());
+		assertArrayEquals(data, wav.toPcmAudio().getData());
+	}
+
+	@Test
+	public void testUnsupportedFormats() throws Exception {
+		final byte[] eightBit = wav(new AudioFormat(8000, 8, 1, true, false), new byte[100]);
+		assertNull(WavBuffer.parse(Arrays.asList(ByteBuffer.wrap(eightBit))));
+		assertNull(WavBuffer.parse(Arrays.asList(ByteBuffer.wrap(new byte[] { 'R', 'I', 'F', 'F', 1, 2, 3 }))));
+		assertNull(WavBuffer.wrap(new PcmAudio(new AudioFormat(8000, 16, 1, true, true), new byte[10])));
+	}
+
+	@Test
+	public void testSameFormatIsCopiedUnchanged() throws Exception {
+		final byte[] data = samples(2000);
+		final WavBuffer wav = WavBuffer.parse(split(wav(AudioEngine.OUTPUT_FORMAT, data), 45, 333));
+		final PcmConverter converter = new PcmConverter(wav, AudioEngine.OUTPUT_FORMAT);
+
+		assertEquals(data.length, converter.getOutputLength());
+		// odd chunk size, only whole frames are written
+		assertArrayEquals(data, drain(converter, 1001));
+		assertEquals(-1, converter.read(new byte[16], 0, 16));
+	}
+
+	@Test
+	public void testMonoIsUpMixedAndResampled() {
+		final byte[] data = samples(100);
+		final WavBuffer wav = WavBuffer.wrap(new PcmAudio(new AudioFormat(22050, 16, 1, true, false), data));
+		final byte[] out = drain(new PcmConverter(wav, AudioEngine.OUTPUT_FORMAT), 64);
+
+		// twice the frames, each 4 bytes
+		assertEquals(200 * 4, out.length);
+		for (int frame = 0; frame < 200; frame++) {
+			final short left = (short) ((out[frame * 4] & 0xff) | out[frame * 4 + 1] << 8);
+			final short right = (short) ((out[frame * 4 + 2] & 0xff) | out[frame * 4 + 3] << 8);
+			assertEquals(left, right);
+			// between two source samples the value is interpolated
+			final int source = Math.min(99, frame / 2);
+			final int expected = frame % 2 == 0 || source == 99 ? source * 100 - 5000 : source * 100 - 5000 + 50;
+			assertEquals("frame " + frame, expected, left);
+		}
+	}
+}